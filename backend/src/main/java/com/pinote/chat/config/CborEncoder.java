@@ -0,0 +1,45 @@
+package com.pinote.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spring's CBOR encoder only encodes single values outside of WebFlux's write path. This one
+ * writes a single value as one CBOR item, a {@code Flux} as one CBOR array, and streams a
+ * {@code Flux} as a CBOR sequence, one item per element flushed as it comes, for
+ * {@code application/cbor-seq}.
+ */
+class CborEncoder extends Jackson2CborEncoder {
+
+    CborEncoder(ObjectMapper mapper) {
+        super(mapper, MediaType.APPLICATION_CBOR, CodecConfig.APPLICATION_CBOR_SEQ);
+        setStreamingMediaTypes(List.of(CodecConfig.APPLICATION_CBOR_SEQ));
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+        if (input instanceof Mono<?> mono) {
+            return mono.map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints)).flux();
+        }
+        if (mimeType != null && CodecConfig.APPLICATION_CBOR_SEQ.isCompatibleWith(mimeType)) {
+            return Flux.from(input).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+        }
+        ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return Flux.from(input)
+                .collectList()
+                .map(list -> encodeValue(list, bufferFactory, listType, mimeType, hints))
+                .flux();
+    }
+}
@@ -0,0 +1,37 @@
+package com.pinote.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+/**
+ * CBOR next to JSON for clients that send {@code Accept: application/cbor}: the same objects,
+ * smaller and cheaper to encode on the Pi. Streams are offered as CBOR sequences next to SSE and
+ * NDJSON. JSON stays the default.
+ */
+@Configuration
+public class CodecConfig {
+
+    /** A stream of CBOR items back to back (RFC 8742), the binary counterpart of NDJSON. */
+    public static final String APPLICATION_CBOR_SEQ_VALUE = "application/cbor-seq";
+    public static final MediaType APPLICATION_CBOR_SEQ = MediaType.parseMediaType(APPLICATION_CBOR_SEQ_VALUE);
+
+    @Bean
+    public CodecCustomizer cborCodecCustomizer(ObjectMapper objectMapper) {
+        // Same settings and modules as the JSON mapper
+        ObjectMapper cbor = objectMapper.copyWith(new CBORFactory());
+        return configurer -> {
+            // Custom codecs come before the defaults, so JSON goes first again to stay the
+            // choice for Accept: */*
+            configurer.customCodecs().register(new Jackson2JsonEncoder(objectMapper));
+            configurer.customCodecs().register(new CborEncoder(cbor));
+            // Without explicit mime types the decoder would claim JSON's
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+        };
+    }
+}
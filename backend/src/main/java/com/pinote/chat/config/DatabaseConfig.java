@@ -1,6 +1,7 @@
 package com.pinote.chat.config;
 
 import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -8,6 +9,7 @@ import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
 import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
 
 @Configuration
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
 public class DatabaseConfig {
 
     @Bean
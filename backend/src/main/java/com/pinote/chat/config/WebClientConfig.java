@@ -12,12 +12,12 @@ import java.time.Duration;
 @Configuration
 public class WebClientConfig {
 
-    @Value("${app.ollama.base-url}")
-    private String ollamaBaseUrl;
-
     @Value("${app.ollama.timeout-seconds}")
     private int timeoutSeconds;
 
+    /**
+     * Shared client for all Ollama backends; OllamaBackendPool derives one per base URL.
+     */
     @Bean
     public WebClient ollamaWebClient() {
         HttpClient httpClient = HttpClient.create()
@@ -25,7 +25,6 @@ public class WebClientConfig {
                 .responseTimeout(Duration.ofSeconds(timeoutSeconds));
 
         return WebClient.builder()
-                .baseUrl(ollamaBaseUrl)
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .codecs(config -> config.defaultCodecs().maxInMemorySize(1024 * 1024))
                 .build();
@@ -1,52 +1,186 @@
 package com.pinote.chat.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pinote.chat.config.CodecConfig;
 import com.pinote.chat.model.ChatEvent;
 import com.pinote.chat.model.ChatRequest;
+import com.pinote.chat.model.ChatStreamEvent;
+import com.pinote.chat.model.SequencedChatEvent;
 import com.pinote.chat.service.ChatService;
+import com.pinote.chat.service.ChatSession;
+import com.pinote.chat.service.ChatSessionRegistry;
+import com.pinote.chat.service.TokenCoalescer;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/conversations/{conversationId}/chat")
 public class ChatController {
 
+    /** What the chat endpoints produce, preferred first. */
+    private static final List<MediaType> STREAM_TYPES = List.of(MediaType.TEXT_EVENT_STREAM,
+            CodecConfig.APPLICATION_CBOR_SEQ);
+
     private final ChatService chatService;
+    private final TokenCoalescer tokenCoalescer;
+    private final ChatSessionRegistry sessions;
     private final ObjectMapper objectMapper;
+    private final RequestedContentTypeResolver contentTypeResolver;
 
-    public ChatController(ChatService chatService, ObjectMapper objectMapper) {
+    public ChatController(ChatService chatService,
+                          TokenCoalescer tokenCoalescer,
+                          ChatSessionRegistry sessions,
+                          ObjectMapper objectMapper,
+                          RequestedContentTypeResolver contentTypeResolver) {
         this.chatService = chatService;
+        this.tokenCoalescer = tokenCoalescer;
+        this.sessions = sessions;
         this.objectMapper = objectMapper;
+        this.contentTypeResolver = contentTypeResolver;
     }
 
-    @PostMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<String>> chat(
+    /**
+     * Start a reply. The generation runs as a server-side session, so it completes and is
+     * saved even if this response is lost; see {@link #resume}.
+     * Tokens are merged into fewer, larger frames unless the client asks for
+     * {@code coalesce=false} to receive one event per token.
+     * Sent as SSE, or as a CBOR sequence of {@link ChatStreamEvent}s to clients that ask for
+     * {@code application/cbor-seq}.
+     */
+    @PostMapping(produces = {MediaType.TEXT_EVENT_STREAM_VALUE, CodecConfig.APPLICATION_CBOR_SEQ_VALUE})
+    public Flux<?> chat(
             @PathVariable UUID conversationId,
-            @RequestBody ChatRequest request) {
+            @RequestBody ChatRequest request,
+            @RequestParam(defaultValue = "true") boolean coalesce,
+            ServerWebExchange exchange) {
 
-        return chatService.chat(conversationId, request.content())
-                .map(this::toSse);
+        ChatSession session = sessions.start(conversationId,
+                stop -> chatService.chat(conversationId, request.content(), stop));
+        return encode(stream(session, 0, coalesce), exchange);
     }
 
-    private ServerSentEvent<String> toSse(ChatEvent event) {
-        try {
-            String eventType;
-            if (event instanceof ChatEvent.MessageStart) {
-                eventType = "message-start";
-            } else if (event instanceof ChatEvent.Token) {
-                eventType = "token";
-            } else if (event instanceof ChatEvent.MessageEnd) {
-                eventType = "message-end";
-            } else {
-                eventType = "error";
+    /**
+     * Continue a reply after a dropped connection. {@code Last-Event-ID} names the session and
+     * the last event received; without it, the conversation's latest session is replayed from the start.
+     */
+    @GetMapping(produces = {MediaType.TEXT_EVENT_STREAM_VALUE, CodecConfig.APPLICATION_CBOR_SEQ_VALUE})
+    public Flux<?> resume(
+            @PathVariable UUID conversationId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(defaultValue = "true") boolean coalesce,
+            ServerWebExchange exchange) {
+        return encode(resumeEvents(conversationId, lastEventId, coalesce), exchange);
+    }
+
+    /**
+     * As the first stream type the client accepts, in the order it prefers them; SSE for
+     * Accept: *&#47;*. The type is set on the response so the writer picked for it is the one
+     * these events are shaped for.
+     */
+    private Flux<?> encode(Flux<ChatStreamEvent> events, ServerWebExchange exchange) {
+        MediaType type = streamType(exchange);
+        exchange.getResponse().getHeaders().setContentType(type);
+        return type.equals(CodecConfig.APPLICATION_CBOR_SEQ) ? events : events.map(this::toSse);
+    }
+
+    private MediaType streamType(ServerWebExchange exchange) {
+        for (MediaType accepted : contentTypeResolver.resolveMediaTypes(exchange)) {
+            for (MediaType type : STREAM_TYPES) {
+                if (accepted.isCompatibleWith(type)) {
+                    return type;
+                }
             }
-            String data = objectMapper.writeValueAsString(event);
+        }
+        return MediaType.TEXT_EVENT_STREAM;
+    }
+
+    private Flux<ChatStreamEvent> resumeEvents(UUID conversationId, String lastEventId, boolean coalesce) {
+        ChatSession session = null;
+        long afterSeq = 0;
+        if (lastEventId != null) {
+            int slash = lastEventId.indexOf('/');
+            try {
+                session = sessions.get(UUID.fromString(lastEventId.substring(0, Math.max(slash, 0))));
+                afterSeq = Long.parseLong(lastEventId.substring(slash + 1));
+            } catch (IllegalArgumentException e) {
+                session = null;
+            }
+        } else {
+            session = sessions.latest(conversationId);
+        }
+        if (session == null || !session.getConversationId().equals(conversationId)) {
+            return Flux.just(toStreamEvent(null, new SequencedChatEvent(0,
+                    new ChatEvent.Error("SESSION_EXPIRED", "No resumable reply for this conversation"))));
+        }
+        return stream(session, afterSeq, coalesce);
+    }
+
+    private Flux<ChatStreamEvent> stream(ChatSession session, long afterSeq, boolean coalesce) {
+        Flux<SequencedChatEvent> events = session.stream(afterSeq);
+        if (coalesce) {
+            events = events.transform(tokenCoalescer::coalesce);
+        }
+        return events.map(event -> toStreamEvent(session, event));
+    }
+
+    /**
+     * Stop the reply of {@code session}, or every reply of the conversation in progress without it;
+     * each stream still ends with a message-end marked truncated.
+     */
+    @PostMapping("/stop")
+    public Mono<Map<String, Object>> stop(@PathVariable UUID conversationId,
+                                          @RequestParam(required = false) UUID session) {
+        List<ChatSession> targets;
+        if (session != null) {
+            ChatSession one = sessions.get(session);
+            targets = one != null && one.getConversationId().equals(conversationId) ? List.of(one) : List.of();
+        } else {
+            targets = sessions.running(conversationId);
+        }
+        boolean stopped = false;
+        for (ChatSession target : targets) {
+            stopped |= target.stop();
+        }
+        return Mono.just(Map.of("stopped", stopped));
+    }
+
+    private static ChatStreamEvent toStreamEvent(ChatSession session, SequencedChatEvent sequenced) {
+        ChatEvent event = sequenced.event();
+        String id = session != null ? session.getId() + "/" + sequenced.seq() : null;
+        String eventType;
+        if (event instanceof ChatEvent.MessageStart) {
+            eventType = "message-start";
+        } else if (event instanceof ChatEvent.Queued) {
+            eventType = "queued";
+        } else if (event instanceof ChatEvent.Token) {
+            eventType = "token";
+        } else if (event instanceof ChatEvent.Snapshot) {
+            eventType = "snapshot";
+        } else if (event instanceof ChatEvent.MessageEnd) {
+            eventType = "message-end";
+        } else if (event instanceof ChatEvent.Title) {
+            eventType = "title";
+        } else {
+            eventType = "error";
+        }
+        return new ChatStreamEvent(id, eventType, event);
+    }
+
+    private ServerSentEvent<String> toSse(ChatStreamEvent event) {
+        try {
+            String data = objectMapper.writeValueAsString(event.data());
             return ServerSentEvent.<String>builder()
-                    .event(eventType)
+                    .id(event.id())
+                    .event(event.event())
                     .data(data)
                     .build();
         } catch (Exception e) {
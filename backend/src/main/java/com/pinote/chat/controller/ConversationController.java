@@ -1,31 +1,81 @@
 package com.pinote.chat.controller;
 
+import com.pinote.chat.config.CodecConfig;
 import com.pinote.chat.model.Conversation;
 import com.pinote.chat.model.ConversationRequest;
 import com.pinote.chat.model.ConversationWithMessages;
+import com.pinote.chat.model.CursorPage;
+import com.pinote.chat.model.ExportRecord;
+import com.pinote.chat.model.ImportResult;
 import com.pinote.chat.model.Message;
+import com.pinote.chat.model.PageCursor;
+import com.pinote.chat.model.ScoreCursor;
+import com.pinote.chat.model.SearchHit;
 import com.pinote.chat.service.ConversationService;
+import com.pinote.chat.service.ConversationTransferService;
+import com.pinote.chat.service.ConversationVersions;
+import com.pinote.chat.service.SearchService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/conversations")
 public class ConversationController {
 
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int SEARCH_PAGE_SIZE = 20;
+
     private final ConversationService service;
+    private final SearchService searchService;
+    private final ConversationTransferService transferService;
+    private final ConversationVersions versions;
 
-    public ConversationController(ConversationService service) {
+    public ConversationController(ConversationService service,
+                                  SearchService searchService,
+                                  ConversationTransferService transferService,
+                                  ConversationVersions versions) {
         this.service = service;
+        this.searchService = searchService;
+        this.transferService = transferService;
+        this.versions = versions;
     }
 
     @GetMapping
-    public Flux<Conversation> list(
+    public Mono<ResponseEntity<List<Conversation>>> list(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        return service.listConversations(page, size);
+            @RequestParam(defaultValue = "20") int size,
+            ServerWebExchange exchange) {
+        return conditional(Mono.just(versions.listEtag()), exchange,
+                () -> service.listConversations(page, size).collectList());
+    }
+
+    /**
+     * Keyset-paginated variant, selected by the {@code cursor} parameter. Pass it empty for
+     * the first page, then the {@code nextCursor} of the previous page.
+     */
+    @GetMapping(params = "cursor")
+    public Mono<ResponseEntity<CursorPage<Conversation>>> listByCursor(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            ServerWebExchange exchange) {
+        PageCursor after = parseCursor(cursor);
+        return conditional(Mono.just(versions.listEtag()), exchange,
+                () -> service.listConversations(after, clampSize(size)));
     }
 
     @PostMapping
@@ -35,8 +85,35 @@ public class ConversationController {
     }
 
     @GetMapping("/{id}")
-    public Mono<ConversationWithMessages> get(@PathVariable UUID id) {
-        return service.getConversation(id);
+    public Mono<ResponseEntity<ConversationWithMessages>> get(@PathVariable UUID id, ServerWebExchange exchange) {
+        return conditional(versions.etag(id), exchange, () -> service.getConversation(id),
+                ConversationVersions::tagOf);
+    }
+
+    /**
+     * The conversation line followed by one line per message, streamed as they are read.
+     * Also served for {@code GET /{id}} with {@code Accept: application/x-ndjson}, or
+     * {@code application/cbor-seq} for the same records in CBOR, for conversations too long to
+     * fetch as one object.
+     */
+    @GetMapping(value = {"/{id}", "/{id}/export"},
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, CodecConfig.APPLICATION_CBOR_SEQ_VALUE})
+    public Flux<ExportRecord> export(@PathVariable UUID id) {
+        return transferService.export(id);
+    }
+
+    /** Every conversation as NDJSON or a CBOR sequence, each followed by its messages. */
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, CodecConfig.APPLICATION_CBOR_SEQ_VALUE})
+    public Flux<ExportRecord> exportAll() {
+        return transferService.exportAll();
+    }
+
+    /** Import NDJSON as produced by the export; conversations that already exist are skipped. */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ImportResult> importAll(@RequestBody Flux<ExportRecord> records) {
+        return transferService.importRecords(records)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
     }
 
     @PatchMapping("/{id}")
@@ -50,16 +127,124 @@ public class ConversationController {
         return service.deleteConversation(id);
     }
 
+    /**
+     * Conversations matching {@code q}, best match first. {@code mode} is keyword, semantic
+     * (by meaning, through message embeddings) or hybrid.
+     */
     @GetMapping("/search")
-    public Flux<Conversation> search(@RequestParam String q) {
-        return service.search(q);
+    public Flux<Conversation> search(@RequestParam String q,
+                                     @RequestParam(defaultValue = "keyword") String mode) {
+        return searchService.search(q, parseMode(mode), null, SEARCH_PAGE_SIZE)
+                .flatMapIterable(CursorPage::items)
+                .map(SearchHit::conversation);
+    }
+
+    /**
+     * Ranked hits with snippets and matching message ids, selected by the {@code cursor}
+     * parameter (empty for the first page).
+     */
+    @GetMapping(value = "/search", params = "cursor")
+    public Mono<CursorPage<SearchHit>> searchByCursor(
+            @RequestParam String q,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "keyword") String mode,
+            @RequestParam(defaultValue = "20") int size) {
+        SearchService.Mode searchMode = parseMode(mode);
+        ScoreCursor after = null;
+        if (!cursor.isBlank()) {
+            try {
+                after = ScoreCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
+        return searchService.search(q, searchMode, after, clampSize(size));
+    }
+
+    private SearchService.Mode parseMode(String mode) {
+        SearchService.Mode parsed;
+        try {
+            parsed = SearchService.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown search mode: " + mode);
+        }
+        if (parsed == SearchService.Mode.SEMANTIC && !searchService.semanticEnabled()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Semantic search is disabled");
+        }
+        return parsed;
     }
 
     @GetMapping("/{id}/messages")
-    public Flux<Message> messages(
+    public Mono<ResponseEntity<List<Message>>> messages(
             @PathVariable UUID id,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "50") int size) {
-        return service.getMessages(id, page, size);
+            @RequestParam(defaultValue = "50") int size,
+            ServerWebExchange exchange) {
+        return conditional(versions.etag(id), exchange, () -> service.getMessages(id, page, size).collectList());
+    }
+
+    /**
+     * Keyset-paginated variant, selected by the {@code cursor} parameter (empty for the first page).
+     * With {@code newestFirst}, pages run backwards from the latest message, as the chat view loads them.
+     */
+    @GetMapping(value = "/{id}/messages", params = "cursor")
+    public Mono<ResponseEntity<CursorPage<Message>>> messagesByCursor(
+            @PathVariable UUID id,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "false") boolean newestFirst,
+            @RequestParam(defaultValue = "50") int size,
+            ServerWebExchange exchange) {
+        PageCursor at = parseCursor(cursor);
+        return conditional(versions.etag(id), exchange,
+                () -> service.getMessages(id, at, newestFirst, clampSize(size)));
+    }
+
+    /**
+     * Answer 304 if the request's {@code If-None-Match} has {@code etag}, before {@code body}
+     * runs at all; otherwise the body with the tag. Without a tag (no such conversation) the body
+     * is returned as before. Clients are told to revalidate every time rather than reuse blindly,
+     * and that the tag covers both the JSON and the CBOR form of the resource.
+     */
+    private <T> Mono<ResponseEntity<T>> conditional(Mono<String> etag, ServerWebExchange exchange,
+                                                    Supplier<Mono<T>> body) {
+        return conditional(etag, exchange, body, null);
+    }
+
+    /**
+     * As above, but a body that is sent is tagged by {@code bodyTag} from what was actually read,
+     * so a body older than the current tag is never sent under it.
+     */
+    private <T> Mono<ResponseEntity<T>> conditional(Mono<String> etag, ServerWebExchange exchange,
+                                                    Supplier<Mono<T>> body, Function<T, String> bodyTag) {
+        return etag.map(Optional::of).defaultIfEmpty(Optional.empty()).flatMap(found -> {
+            if (found.isEmpty()) {
+                return body.get().map(ResponseEntity::ok);
+            }
+            String tag = found.get();
+            boolean notModified = exchange.checkNotModified(tag);
+            versions.recordConditional(notModified);
+            if (notModified) {
+                return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(tag).cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT).build());
+            }
+            return body.get().map(value -> ResponseEntity.ok()
+                    .eTag(bodyTag != null ? bodyTag.apply(value) : tag)
+                    .cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT).body(value));
+        });
+    }
+
+    private static PageCursor parseCursor(String cursor) {
+        if (cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    private static int clampSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
     }
 }
@@ -1,66 +1,66 @@
 package com.pinote.chat.controller;
 
-import com.pinote.chat.service.OllamaClient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import com.pinote.chat.model.DeviceHistory;
+import com.pinote.chat.model.DeviceSample;
+import com.pinote.chat.service.DeviceTelemetry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
-import java.time.Duration;
 import java.util.Map;
 
+/** Device state from the background sampler; requests never reach the monitoring agent. */
 @RestController
 @RequestMapping("/device")
 public class DeviceController {
 
-    private static final Logger log = LoggerFactory.getLogger(DeviceController.class);
+    private final DeviceTelemetry telemetry;
 
-    private final OllamaClient ollamaClient;
-    private final WebClient deviceWebClient;
-
-    public DeviceController(OllamaClient ollamaClient,
-                            @Value("${app.ollama.base-url}") String ollamaBaseUrl) {
-        this.ollamaClient = ollamaClient;
-        // Monitoring agent runs on the same host as Ollama, port 8085
-        String deviceHost = ollamaBaseUrl.replaceAll(":\\d+$", ":8085");
-        this.deviceWebClient = WebClient.builder()
-                .baseUrl(deviceHost)
-                .build();
+    public DeviceController(DeviceTelemetry telemetry) {
+        this.telemetry = telemetry;
     }
 
     @GetMapping("/stats")
-    public Mono<Map<String, Object>> getStats() {
-        Mono<Map> deviceStats = deviceWebClient.get()
-                .uri("/stats")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .timeout(Duration.ofSeconds(3))
-                .onErrorResume(e -> {
-                    log.debug("Device monitoring agent not available: {}", e.getMessage());
-                    return Mono.just(Map.of());
-                });
+    public Map<String, Object> getStats() {
+        DeviceSample sample = telemetry.latest();
+        boolean hasDeviceStats = sample != null && (sample.cpu() != null || sample.temperature() != null
+                || sample.memoryUsed() != null);
+        return Map.of(
+                "online", sample != null && sample.online() > 0,
+                "hasDeviceStats", hasDeviceStats,
+                "cpu", orUnknown(sample != null ? sample.cpu() : null),
+                "temperature", orUnknown(sample != null ? sample.temperature() : null),
+                "memoryUsed", orUnknown(sample != null ? sample.memoryUsed() : null),
+                "memoryTotal", orUnknown(sample != null ? sample.memoryTotal() : null)
+        );
+    }
 
-        Mono<Boolean> ollamaReachable = ollamaClient.isReachable();
+    /** Samples over the last {@code range}: 1m as taken, 1h and 24h averaged into buckets. */
+    @GetMapping("/history")
+    public DeviceHistory history(@RequestParam(defaultValue = "1h") String range) {
+        if (!telemetry.ranges().contains(range)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Unknown range: " + range + ", expected one of " + telemetry.ranges());
+        }
+        return telemetry.history(range);
+    }
 
-        return Mono.zip(deviceStats, ollamaReachable)
-                .map(tuple -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> stats = tuple.getT1();
-                    boolean connected = tuple.getT2();
+    /** The latest sample, then each new one as it is taken, shared by all clients. */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<DeviceSample>> stream() {
+        return telemetry.stream().map(sample -> ServerSentEvent.<DeviceSample>builder()
+                .event("sample")
+                .data(sample)
+                .build());
+    }
 
-                    boolean hasDeviceStats = !stats.isEmpty();
-                    return Map.of(
-                            "online", connected,
-                            "hasDeviceStats", hasDeviceStats,
-                            "cpu", stats.getOrDefault("cpu", -1),
-                            "temperature", stats.getOrDefault("temperature", -1),
-                            "memoryUsed", stats.getOrDefault("memoryUsed", -1),
-                            "memoryTotal", stats.getOrDefault("memoryTotal", -1)
-                    );
-                });
+    private static Object orUnknown(Double value) {
+        return value != null ? value : -1;
     }
 }
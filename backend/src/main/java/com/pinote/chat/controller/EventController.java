@@ -0,0 +1,64 @@
+package com.pinote.chat.controller;
+
+import com.pinote.chat.model.ConversationEvent;
+import com.pinote.chat.service.ConversationEventBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/events")
+public class EventController {
+
+    private final ConversationEventBus eventBus;
+    private final Duration heartbeat;
+
+    public EventController(ConversationEventBus eventBus,
+                           @Value("${app.events.heartbeat-seconds:30}") int heartbeatSeconds) {
+        this.eventBus = eventBus;
+        this.heartbeat = Duration.ofSeconds(heartbeatSeconds);
+    }
+
+    /**
+     * Conversation changes for this client. With {@code conversationId}, replies being
+     * generated for that conversation on another device are mirrored as token events.
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> events(@RequestParam(required = false) UUID conversationId) {
+        Flux<ServerSentEvent<Object>> events = eventBus.subscribe(conversationId).map(this::toSse);
+        // Comments keep proxies from closing an idle stream
+        Flux<ServerSentEvent<Object>> heartbeats = Flux.interval(heartbeat)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.builder().comment("ping").build());
+        return Flux.merge(events, heartbeats);
+    }
+
+    private ServerSentEvent<Object> toSse(ConversationEvent event) {
+        String eventType;
+        if (event instanceof ConversationEvent.Created) {
+            eventType = "conversation-created";
+        } else if (event instanceof ConversationEvent.Updated) {
+            eventType = "conversation-updated";
+        } else if (event instanceof ConversationEvent.Deleted) {
+            eventType = "conversation-deleted";
+        } else if (event instanceof ConversationEvent.MessageAdded) {
+            eventType = "message-added";
+        } else if (event instanceof ConversationEvent.Tokens) {
+            eventType = "tokens";
+        } else {
+            eventType = "resync";
+        }
+        return ServerSentEvent.builder()
+                .event(eventType)
+                .data((Object) event)
+                .build();
+    }
+}
@@ -1,6 +1,9 @@
 package com.pinote.chat.controller;
 
+import com.pinote.chat.service.ModelResidencyManager;
+import com.pinote.chat.service.OllamaBackendPool;
 import com.pinote.chat.service.OllamaClient;
+import com.pinote.chat.service.OllamaScheduler;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
@@ -15,9 +18,18 @@ import java.util.concurrent.atomic.AtomicReference;
 public class OllamaManagementController {
 
     private final OllamaClient ollamaClient;
+    private final OllamaScheduler scheduler;
+    private final OllamaBackendPool pool;
+    private final ModelResidencyManager residency;
 
-    public OllamaManagementController(OllamaClient ollamaClient) {
+    public OllamaManagementController(OllamaClient ollamaClient,
+                                      OllamaScheduler scheduler,
+                                      OllamaBackendPool pool,
+                                      ModelResidencyManager residency) {
         this.ollamaClient = ollamaClient;
+        this.scheduler = scheduler;
+        this.pool = pool;
+        this.residency = residency;
     }
 
     @PostMapping("/test")
@@ -38,9 +50,11 @@ public class OllamaManagementController {
                         ));
                     }
                     AtomicReference<StringBuilder> buffer = new AtomicReference<>(new StringBuilder());
-                    return ollamaClient.chatStream(java.util.List.of(
-                                    Map.of("role", "user", "content", prompt)
-                            ))
+                    String model = ollamaClient.getCurrentModel();
+                    java.util.List<Map<String, String>> messages = java.util.List.of(Map.of("role", "user", "content", prompt));
+                    // Never from the response cache: the probe is there to time a real round trip
+                    return scheduler.schedule(OllamaScheduler.Priority.PROBE, model, null,
+                                    backend -> ollamaClient.chatStream(backend, model, messages))
                             .filter(chunk -> chunk.message() != null && chunk.message().content() != null)
                             .doOnNext(chunk -> buffer.get().append(chunk.message().content()))
                             .then(Mono.fromSupplier(() -> {
@@ -71,7 +85,10 @@ public class OllamaManagementController {
                     return Map.of(
                             "connected", connected,
                             "currentModel", ollamaClient.getCurrentModel(),
-                            "runningModels", running.getOrDefault("models", java.util.List.of())
+                            "runningModels", running.getOrDefault("models", java.util.List.of()),
+                            "queue", Map.of("running", scheduler.running(), "waiting", scheduler.queued()),
+                            "backends", pool.status(),
+                            "residency", residency.status()
                     );
                 });
     }
@@ -82,26 +99,28 @@ public class OllamaManagementController {
     }
 
     @PostMapping(value = "/models/pull", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<String>> pullModel(@RequestBody Map<String, String> body) {
+    public Flux<ServerSentEvent<Object>> pullModel(@RequestBody Map<String, String> body) {
         String modelName = body.get("model");
         if (modelName == null || modelName.isBlank()) {
-            return Flux.just(ServerSentEvent.<String>builder()
+            return Flux.just(ServerSentEvent.builder()
                     .event("error")
-                    .data("{\"error\":\"model name is required\"}")
+                    .data((Object) Map.of("error", "model name is required"))
                     .build());
         }
         return ollamaClient.pullModel(modelName)
-                .map(data -> ServerSentEvent.<String>builder()
+                .map(progress -> ServerSentEvent.builder()
                         .event("progress")
-                        .data(data)
+                        .data((Object) progress)
                         .build())
-                .concatWith(Flux.just(ServerSentEvent.<String>builder()
+                // Load the freshly pulled model so its first chat is warm
+                .doOnComplete(() -> residency.preloadAsync(modelName))
+                .concatWith(Flux.just(ServerSentEvent.builder()
                         .event("done")
-                        .data("{\"status\":\"completed\"}")
+                        .data((Object) Map.of("status", "completed"))
                         .build()))
-                .onErrorResume(e -> Flux.just(ServerSentEvent.<String>builder()
+                .onErrorResume(e -> Flux.just(ServerSentEvent.builder()
                         .event("error")
-                        .data("{\"error\":\"" + e.getMessage() + "\"}")
+                        .data((Object) Map.of("error", e.getMessage() != null ? e.getMessage() : "Unknown error"))
                         .build()));
     }
 
@@ -114,7 +133,8 @@ public class OllamaManagementController {
         ollamaClient.setCurrentModel(modelName);
         return Mono.just(Map.of(
                 "success", true,
-                "model", modelName
+                "model", modelName,
+                "preloading", true
         ));
     }
 
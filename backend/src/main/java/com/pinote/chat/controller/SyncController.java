@@ -0,0 +1,43 @@
+package com.pinote.chat.controller;
+
+import com.pinote.chat.model.SyncPage;
+import com.pinote.chat.model.SyncToken;
+import com.pinote.chat.service.SyncService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/sync")
+public class SyncController {
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final SyncService syncService;
+
+    public SyncController(SyncService syncService) {
+        this.syncService = syncService;
+    }
+
+    /**
+     * Changes since {@code since}, the {@code nextToken} of the previous page; without it, everything.
+     * Clients keep the last token and start from it after reconnecting.
+     */
+    @GetMapping
+    public Mono<SyncPage> changes(@RequestParam(required = false) String since,
+                                  @RequestParam(defaultValue = "200") int size) {
+        SyncToken token = null;
+        if (since != null && !since.isBlank()) {
+            try {
+                token = SyncToken.decode(since);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid sync token");
+            }
+        }
+        return syncService.changes(token, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+    }
+}
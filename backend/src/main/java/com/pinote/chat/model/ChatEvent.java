@@ -6,9 +6,21 @@ public sealed interface ChatEvent {
 
     record MessageStart(UUID messageId, UUID conversationId) implements ChatEvent {}
 
+    record Queued(int position) implements ChatEvent {}
+
     record Token(String content) implements ChatEvent {}
 
-    record MessageEnd(UUID messageId, String title) implements ChatEvent {}
+    /** The reply so far, sent to a resuming client whose position has left the session buffer. */
+    record Snapshot(UUID messageId, UUID conversationId, String content) implements ChatEvent {}
+
+    /**
+     * {@code truncated} is set when the reply was stopped before the model finished;
+     * {@code stats} tells how it was generated, as stored with the message.
+     */
+    record MessageEnd(UUID messageId, boolean truncated, GenerationStats stats) implements ChatEvent {}
+
+    /** Sent after MessageEnd once a title has been generated for a new conversation. */
+    record Title(UUID conversationId, String title) implements ChatEvent {}
 
     record Error(String code, String message) implements ChatEvent {}
 }
@@ -0,0 +1,6 @@
+package com.pinote.chat.model;
+
+/**
+ * A chat event as sent in a binary stream: the same id, event type and data an SSE event carries.
+ */
+public record ChatStreamEvent(String id, String event, ChatEvent data) {}
@@ -1,6 +1,8 @@
 package com.pinote.chat.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.time.Instant;
@@ -16,6 +18,14 @@ public class Conversation {
     private Instant updatedAt;
     private int messageCount;
 
+    // Written only through ConversationStore.updateSummary
+    @JsonIgnore
+    @ReadOnlyProperty
+    private String summary;
+    @JsonIgnore
+    @ReadOnlyProperty
+    private Instant summarizedUntil;
+
     public Conversation() {}
 
     public static Conversation create(String title) {
@@ -37,4 +47,8 @@ public class Conversation {
     public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
     public int getMessageCount() { return messageCount; }
     public void setMessageCount(int messageCount) { this.messageCount = messageCount; }
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+    public Instant getSummarizedUntil() { return summarizedUntil; }
+    public void setSummarizedUntil(Instant summarizedUntil) { this.summarizedUntil = summarizedUntil; }
 }
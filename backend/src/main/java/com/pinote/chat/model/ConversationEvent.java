@@ -0,0 +1,23 @@
+package com.pinote.chat.model;
+
+import java.util.UUID;
+
+/**
+ * Change notifications pushed to every open client through {@code GET /events}.
+ */
+public sealed interface ConversationEvent {
+
+    record Created(Conversation conversation) implements ConversationEvent {}
+
+    record Updated(Conversation conversation) implements ConversationEvent {}
+
+    record Deleted(UUID conversationId) implements ConversationEvent {}
+
+    record MessageAdded(Message message) implements ConversationEvent {}
+
+    /** Text of an assistant reply still being generated, sent only to clients watching that conversation. */
+    record Tokens(UUID conversationId, UUID messageId, String content) implements ConversationEvent {}
+
+    /** Events were dropped because this client fell behind; it should reload what it shows. */
+    record Resync() implements ConversationEvent {}
+}
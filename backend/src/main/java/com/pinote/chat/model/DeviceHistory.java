@@ -0,0 +1,6 @@
+package com.pinote.chat.model;
+
+import java.util.List;
+
+/** Device samples over {@code range}, oldest first, each covering {@code resolutionMillis}. */
+public record DeviceHistory(String range, long resolutionMillis, List<DeviceSample> samples) {}
@@ -0,0 +1,19 @@
+package com.pinote.chat.model;
+
+import java.time.Instant;
+
+/**
+ * Device state at {@code at}, or averaged over the bucket starting there. {@code online} is the
+ * share of samples in which an Ollama backend was healthy (0 or 1 for a single sample);
+ * {@code temperatureMax} the hottest sample. {@code tokensPerSecond} is the generation speed of
+ * replies finished in the period, so slow generations can be lined up with throttling. Values
+ * the monitoring agent did not report, or periods without generations, are null.
+ */
+public record DeviceSample(Instant at,
+                           double online,
+                           Double cpu,
+                           Double temperature,
+                           Double temperatureMax,
+                           Double memoryUsed,
+                           Double memoryTotal,
+                           Double tokensPerSecond) {}
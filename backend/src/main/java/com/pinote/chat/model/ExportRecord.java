@@ -0,0 +1,59 @@
+package com.pinote.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One line of an NDJSON export: a conversation, followed by its messages oldest first.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = ExportRecord.ConversationRecord.class, name = "conversation"),
+        @JsonSubTypes.Type(value = ExportRecord.MessageRecord.class, name = "message")
+})
+public sealed interface ExportRecord {
+
+    record ConversationRecord(UUID id, String title, Instant createdAt, Instant updatedAt) implements ExportRecord {
+
+        public static ConversationRecord of(Conversation c) {
+            return new ConversationRecord(c.getId(), c.getTitle(), c.getCreatedAt(), c.getUpdatedAt());
+        }
+
+        /** The conversation without messages; they are counted as they are imported. */
+        public Conversation toConversation() {
+            Conversation c = new Conversation();
+            c.setId(id != null ? id : UUID.randomUUID());
+            c.setTitle(title != null && !title.isBlank() ? title : "New Conversation");
+            c.setCreatedAt(createdAt != null ? createdAt : Instant.now());
+            c.setUpdatedAt(updatedAt != null ? updatedAt : c.getCreatedAt());
+            return c;
+        }
+    }
+
+    /** {@code stats} is left out for messages without generation stats. */
+    record MessageRecord(UUID id, UUID conversationId, String role, String content,
+                         Instant createdAt, boolean truncated,
+                         @JsonInclude(JsonInclude.Include.NON_NULL) GenerationStats stats) implements ExportRecord {
+
+        public static MessageRecord of(Message m) {
+            return new MessageRecord(m.getId(), m.getConversationId(), m.getRole(), m.getContent(),
+                    m.getCreatedAt(), m.isTruncated(), m.getStats());
+        }
+
+        public Message toMessage() {
+            Message m = new Message();
+            m.setId(id != null ? id : UUID.randomUUID());
+            m.setConversationId(conversationId);
+            m.setRole(role);
+            m.setContent(content != null ? content : "");
+            m.setCreatedAt(createdAt != null ? createdAt : Instant.now());
+            m.setTruncated(truncated);
+            m.setStats(stats);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.pinote.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * How an assistant reply was generated. The counts and the load, prompt and eval times are
+ * reported by Ollama; first token and total are measured from the start of the turn, queueing
+ * included. A reply that joined an identical request in flight only has the measured times.
+ */
+public record GenerationStats(
+        String model,
+        String backend,
+        Integer promptTokens,
+        Integer completionTokens,
+        Long firstTokenMillis,
+        Long totalMillis,
+        Long loadMillis,
+        Long promptEvalMillis,
+        Long evalMillis
+) {
+    public static GenerationStats of(String model, String backend, OllamaChatChunk done,
+                                     Long firstTokenMillis, long totalMillis) {
+        if (done == null) {
+            return new GenerationStats(model, backend, null, null, firstTokenMillis, totalMillis, null, null, null);
+        }
+        return new GenerationStats(model, backend, done.promptEvalCount(), done.evalCount(), firstTokenMillis,
+                totalMillis, millis(done.loadDuration()), millis(done.promptEvalDuration()),
+                millis(done.evalDuration()));
+    }
+
+    /** Generation speed, completion tokens over eval time; null if Ollama did not report them. */
+    @JsonProperty
+    public Double tokensPerSecond() {
+        if (completionTokens == null || evalMillis == null || evalMillis <= 0) {
+            return null;
+        }
+        return completionTokens * 1000.0 / evalMillis;
+    }
+
+    private static Long millis(Long nanos) {
+        return nanos != null ? nanos / 1_000_000 : null;
+    }
+}
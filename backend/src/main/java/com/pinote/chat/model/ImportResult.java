@@ -0,0 +1,4 @@
+package com.pinote.chat.model;
+
+/** Outcome of an import: conversations added, conversations skipped because they already exist, messages added. */
+public record ImportResult(int conversations, int skipped, long messages) {}
@@ -1,6 +1,8 @@
 package com.pinote.chat.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Embedded;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.time.Instant;
@@ -15,6 +17,11 @@ public class Message {
     private String role;
     private String content;
     private Instant createdAt;
+    private boolean truncated;
+    /** Set on assistant replies generated here; stored in the {@code stats_*} columns. */
+    @Embedded(onEmpty = Embedded.OnEmpty.USE_NULL, prefix = "stats_")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private GenerationStats stats;
 
     public Message() {}
 
@@ -37,4 +44,8 @@ public class Message {
     public void setContent(String content) { this.content = content; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public boolean isTruncated() { return truncated; }
+    public void setTruncated(boolean truncated) { this.truncated = truncated; }
+    public GenerationStats getStats() { return stats; }
+    public void setStats(GenerationStats stats) { this.stats = stats; }
 }
@@ -1,11 +1,19 @@
 package com.pinote.chat.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
+/** One line of a streamed chat reply; the durations (nanoseconds) and counts come with the final one. */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record OllamaChatChunk(
         OllamaMessage message,
-        boolean done
+        boolean done,
+        @JsonProperty("total_duration") Long totalDuration,
+        @JsonProperty("load_duration") Long loadDuration,
+        @JsonProperty("prompt_eval_count") Integer promptEvalCount,
+        @JsonProperty("prompt_eval_duration") Long promptEvalDuration,
+        @JsonProperty("eval_count") Integer evalCount,
+        @JsonProperty("eval_duration") Long evalDuration
 ) {
     @JsonIgnoreProperties(ignoreUnknown = true)
     public record OllamaMessage(String role, String content) {}
@@ -0,0 +1,14 @@
+package com.pinote.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OllamaPullProgress(
+        String status,
+        String digest,
+        Long total,
+        Long completed,
+        String error
+) {}
@@ -0,0 +1,28 @@
+package com.pinote.chat.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a relevance-ranked list: the score and id of the last row returned.
+ * Clients only see it as an opaque token.
+ */
+public record ScoreCursor(double score, UUID id) {
+
+    public String encode() {
+        String raw = Double.toString(score) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @throws IllegalArgumentException if {@code token} was not produced by {@link #encode()} */
+    public static ScoreCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            return new ScoreCursor(Double.parseDouble(raw.substring(0, colon)), UUID.fromString(raw.substring(colon + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
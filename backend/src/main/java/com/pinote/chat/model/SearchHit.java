@@ -0,0 +1,11 @@
+package com.pinote.chat.model;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A conversation matching a search. {@code snippet} is an excerpt of its best-matching message
+ * with the matched words wrapped in {@code <mark>} tags, or null if only the title matched.
+ * {@code messageIds} lists its best-matching messages, best first.
+ */
+public record SearchHit(Conversation conversation, double score, String snippet, List<UUID> messageIds) {}
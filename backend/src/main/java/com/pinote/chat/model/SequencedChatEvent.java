@@ -0,0 +1,6 @@
+package com.pinote.chat.model;
+
+/**
+ * A chat event with its position in the session's stream, used as the SSE event id.
+ */
+public record SequencedChatEvent(long seq, ChatEvent event) {}
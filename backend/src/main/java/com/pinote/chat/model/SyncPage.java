@@ -0,0 +1,17 @@
+package com.pinote.chat.model;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of the change feed. Clients first drop everything if {@code reset} is set, then the
+ * {@code deleted} conversations with their messages, then store the rest, replacing rows with the
+ * same id. {@code nextToken} is passed as {@code since} for the next page; while {@code hasMore},
+ * the client should fetch it right away.
+ */
+public record SyncPage(List<Conversation> conversations,
+                       List<Message> messages,
+                       List<UUID> deleted,
+                       String nextToken,
+                       boolean hasMore,
+                       boolean reset) {}
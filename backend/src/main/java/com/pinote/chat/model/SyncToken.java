@@ -0,0 +1,31 @@
+package com.pinote.chat.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in the change feed of one store: everything up to ({@code position}, {@code kind},
+ * {@code id}) has been delivered. {@code store} names the storage mode that issued it, so a token
+ * is never applied to a different store. Clients only see it as an opaque token.
+ */
+public record SyncToken(String store, long position, int kind, UUID id) {
+
+    public static final UUID NONE = new UUID(0, 0);
+
+    public String encode() {
+        String raw = store + ":" + position + ":" + kind + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @throws IllegalArgumentException if {@code token} was not produced by {@link #encode()} */
+    public static SyncToken decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 4);
+            return new SyncToken(parts[0], Long.parseLong(parts[1]), Integer.parseInt(parts[2]),
+                    UUID.fromString(parts[3]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid sync token", e);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.pinote.chat.repository;
 
 import com.pinote.chat.model.Conversation;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.util.UUID;
 
 public interface ConversationRepository extends ReactiveCrudRepository<Conversation, UUID> {
@@ -12,13 +15,38 @@ public interface ConversationRepository extends ReactiveCrudRepository<Conversat
     @Query("SELECT * FROM conversations ORDER BY updated_at DESC LIMIT :size OFFSET :offset")
     Flux<Conversation> findAllPaged(int size, long offset);
 
+    @Query("SELECT * FROM conversations ORDER BY updated_at DESC, id DESC LIMIT :size")
+    Flux<Conversation> findFirstByUpdated(int size);
+
+    /** The conversations after ({@code updatedAt}, {@code id}) in most-recently-updated order. */
+    @Query("""
+        SELECT * FROM conversations
+        WHERE (updated_at, id) < (:updatedAt, :id)
+        ORDER BY updated_at DESC, id DESC
+        LIMIT :size
+    """)
+    Flux<Conversation> findAfterByUpdated(Instant updatedAt, UUID id, int size);
+
+    @Query("UPDATE conversations SET title = :title, updated_at = NOW(), change_xid = pg_current_xact_id()::text::bigint WHERE id = :id RETURNING *")
+    Mono<Conversation> updateTitle(UUID id, String title);
+
     @Query("""
-        SELECT DISTINCT c.* FROM conversations c
-        JOIN messages m ON m.conversation_id = c.id
-        WHERE to_tsvector('simple', m.content) @@ plainto_tsquery('simple', :query)
-           OR c.title ILIKE '%' || :query || '%'
-        ORDER BY c.updated_at DESC
-        LIMIT :limit
+        UPDATE conversations SET message_count = message_count + :count, updated_at = NOW(),
+            change_xid = pg_current_xact_id()::text::bigint
+        WHERE id = :id
+        RETURNING *
     """)
-    Flux<Conversation> searchByContent(String query, int limit);
+    Mono<Conversation> incrementMessageCount(UUID id, int count);
+
+    @Modifying
+    @Query("""
+        INSERT INTO conversations (id, title, created_at, updated_at, message_count)
+        VALUES (:id, :title, :createdAt, :updatedAt, 0)
+        ON CONFLICT (id) DO NOTHING
+    """)
+    Mono<Integer> insertIfAbsent(UUID id, String title, Instant createdAt, Instant updatedAt);
+
+    @Modifying
+    @Query("UPDATE conversations SET summary = :summary, summarized_until = :summarizedUntil WHERE id = :id")
+    Mono<Integer> updateSummary(UUID id, String summary, Instant summarizedUntil);
 }
@@ -1,7 +1,6 @@
 package com.pinote.chat.repository;
 
 import com.pinote.chat.model.Message;
-import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
@@ -12,10 +11,6 @@ import java.util.UUID;
 
 public interface MessageRepository extends ReactiveCrudRepository<Message, UUID> {
 
-    @Modifying
-    @Query("INSERT INTO messages (id, conversation_id, role, content, created_at) VALUES (:id, :conversationId, :role, :content, :createdAt)")
-    Mono<Void> insertMessage(UUID id, UUID conversationId, String role, String content, Instant createdAt);
-
     @Query("SELECT * FROM messages WHERE conversation_id = :conversationId ORDER BY created_at ASC")
     Flux<Message> findByConversationIdOrderByCreatedAtAsc(UUID conversationId);
 
@@ -26,6 +21,36 @@ public interface MessageRepository extends ReactiveCrudRepository<Message, UUID>
     """)
     Flux<Message> findByConversationIdPaged(UUID conversationId, int size, long offset);
 
+    @Query("""
+        SELECT * FROM messages WHERE conversation_id = :conversationId
+        ORDER BY created_at ASC, id ASC
+        LIMIT :size
+    """)
+    Flux<Message> findOldest(UUID conversationId, int size);
+
+    @Query("""
+        SELECT * FROM messages
+        WHERE conversation_id = :conversationId AND (created_at, id) > (:createdAt, :id)
+        ORDER BY created_at ASC, id ASC
+        LIMIT :size
+    """)
+    Flux<Message> findAfter(UUID conversationId, Instant createdAt, UUID id, int size);
+
+    @Query("""
+        SELECT * FROM messages WHERE conversation_id = :conversationId
+        ORDER BY created_at DESC, id DESC
+        LIMIT :size
+    """)
+    Flux<Message> findNewest(UUID conversationId, int size);
+
+    @Query("""
+        SELECT * FROM messages
+        WHERE conversation_id = :conversationId AND (created_at, id) < (:createdAt, :id)
+        ORDER BY created_at DESC, id DESC
+        LIMIT :size
+    """)
+    Flux<Message> findBefore(UUID conversationId, Instant createdAt, UUID id, int size);
+
     @Query("SELECT COUNT(*) FROM messages WHERE conversation_id = :conversationId")
     Mono<Long> countByConversationId(UUID conversationId);
 
@@ -0,0 +1,308 @@
+package com.pinote.chat.search;
+
+import com.pinote.chat.model.ConversationEvent;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.service.ConversationEventBus;
+import com.pinote.chat.service.OllamaClient;
+import com.pinote.chat.service.OllamaScheduler;
+import com.pinote.chat.storage.ConversationStore;
+import com.pinote.chat.storage.MessageStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a {@link VectorIndex} of message embeddings in step with the message history.
+ * <p>
+ * New messages are queued as they are added; at startup, and after the event bus reports
+ * dropped events, every conversation is streamed through once for messages the index lacks, so
+ * indexing catches up after a restart. The queue holds each message id at most once, and the
+ * text is read when its batch is embedded. Batches are embedded at background priority, and
+ * only while the inference scheduler is idle, so indexing never holds a slot a chat reply
+ * could use. Failed batches are retried with backoff. The index is saved periodically and on shutdown.
+ */
+@Component
+public class SemanticIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(SemanticIndexer.class);
+
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+
+    private final OllamaClient ollamaClient;
+    private final OllamaScheduler scheduler;
+    private final ConversationStore conversationStore;
+    private final MessageStore messageStore;
+    private final ConversationEventBus eventBus;
+    private final boolean enabled;
+    private final String model;
+    private final Path indexFile;
+    private final int batchSize;
+    private final int maxChars;
+    private final Duration pollInterval;
+    private final Duration saveInterval;
+    private final int nprobe;
+    private final int trainMin;
+    private final Timer queryTimer;
+    private final Timer embedTimer;
+
+    /** Index writes all run on this thread. */
+    private final Scheduler indexThread = Schedulers.newSingle("semantic-index");
+    private final ConcurrentLinkedDeque<Queued> pending = new ConcurrentLinkedDeque<>();
+    /** Ids in {@code pending} or being embedded. */
+    private final Set<UUID> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean catchingUp = new AtomicBoolean();
+    private volatile boolean catchUpAgain;
+    private final Disposable.Composite subscriptions = Disposables.composite();
+    private volatile VectorIndex index;
+    private volatile boolean dirty;
+    private volatile int failures;
+    private volatile long retryAt;
+
+    public SemanticIndexer(OllamaClient ollamaClient,
+                           OllamaScheduler scheduler,
+                           ConversationStore conversationStore,
+                           MessageStore messageStore,
+                           ConversationEventBus eventBus,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.search.semantic.enabled:false}") boolean enabled,
+                           @Value("${app.search.semantic.model:nomic-embed-text}") String model,
+                           @Value("${app.search.semantic.index-file:./data/semantic.idx}") String indexFile,
+                           @Value("${app.search.semantic.batch-size:16}") int batchSize,
+                           @Value("${app.search.semantic.max-chars:2000}") int maxChars,
+                           @Value("${app.search.semantic.poll-seconds:2}") long pollSeconds,
+                           @Value("${app.search.semantic.save-seconds:60}") long saveSeconds,
+                           @Value("${app.search.semantic.nprobe:8}") int nprobe,
+                           @Value("${app.search.semantic.train-min:1024}") int trainMin) {
+        this.ollamaClient = ollamaClient;
+        this.scheduler = scheduler;
+        this.conversationStore = conversationStore;
+        this.messageStore = messageStore;
+        this.eventBus = eventBus;
+        this.enabled = enabled;
+        this.model = model;
+        this.indexFile = Path.of(indexFile);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxChars = maxChars;
+        this.pollInterval = Duration.ofSeconds(Math.max(1, pollSeconds));
+        this.saveInterval = Duration.ofSeconds(Math.max(1, saveSeconds));
+        this.nprobe = Math.max(1, nprobe);
+        this.trainMin = trainMin;
+        this.index = new VectorIndex(model, trainMin);
+
+        this.queryTimer = Timer.builder("search.semantic.query")
+                .description("Time to answer a semantic query, embedding included")
+                .register(meterRegistry);
+        this.embedTimer = Timer.builder("search.semantic.embed")
+                .description("Time to embed one batch of messages")
+                .register(meterRegistry);
+        Gauge.builder("search.semantic.vectors", this, s -> s.index.size())
+                .register(meterRegistry);
+        Gauge.builder("search.semantic.vector.bytes", this, s -> s.index.bytesPerVector())
+                .description("Estimated memory per indexed message")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("search.semantic.pending", pending, ConcurrentLinkedDeque::size)
+                .register(meterRegistry);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            index = VectorIndex.load(indexFile, model, trainMin);
+            log.info("Loaded {} message vectors from {}", index.size(), indexFile);
+        } catch (IOException e) {
+            log.warn("Could not read semantic index {}, rebuilding: {}", indexFile, e.getMessage());
+        }
+
+        subscriptions.add(eventBus.subscribe(null)
+                .publishOn(indexThread)
+                .subscribe(this::onEvent));
+        catchUp();
+        subscriptions.add(Flux.interval(pollInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> drain())
+                .subscribe());
+        subscriptions.add(Flux.interval(saveInterval)
+                .onBackpressureDrop()
+                .filter(tick -> dirty)
+                .concatMap(tick -> Mono.fromRunnable(this::save).subscribeOn(indexThread))
+                .subscribe());
+    }
+
+    @PreDestroy
+    void stop() {
+        subscriptions.dispose();
+        if (enabled) {
+            Mono.fromRunnable(this::save).subscribeOn(indexThread).block(Duration.ofSeconds(30));
+        }
+        indexThread.dispose();
+    }
+
+    /** The {@code k} messages closest in meaning to {@code text}, best first. */
+    public Mono<List<VectorIndex.Match>> query(String text, int k) {
+        Timer.Sample sample = Timer.start();
+        return scheduler.schedule(OllamaScheduler.Priority.INTERACTIVE, model, null,
+                        backend -> ollamaClient.embed(backend, model, List.of(truncate(text))))
+                .next()
+                .map(vectors -> index.search(vectors.get(0), k, nprobe))
+                .doFinally(signal -> sample.stop(queryTimer));
+    }
+
+    private void onEvent(ConversationEvent event) {
+        if (event instanceof ConversationEvent.MessageAdded added) {
+            enqueue(added.message());
+        } else if (event instanceof ConversationEvent.Deleted deleted) {
+            pending.removeIf(q -> {
+                boolean gone = q.conversationId().equals(deleted.conversationId());
+                if (gone) {
+                    queued.remove(q.messageId());
+                }
+                return gone;
+            });
+            index.removeConversation(deleted.conversationId());
+            dirty = true;
+        } else if (event instanceof ConversationEvent.Resync) {
+            catchUp();
+        }
+    }
+
+    /** Queue a message unless it has no text, is indexed or is queued already; true if it was queued. */
+    private boolean enqueue(Message message) {
+        if (message.getContent() == null || message.getContent().isBlank() || index.contains(message.getId())
+                || !queued.add(message.getId())) {
+            return false;
+        }
+        pending.addLast(new Queued(message.getId(), message.getConversationId()));
+        return true;
+    }
+
+    /**
+     * Queue every stored message the index does not have yet, reading one conversation at a time.
+     * A request while a catch-up runs makes it run once more when done, not twice at once.
+     */
+    private void catchUp() {
+        if (!catchingUp.compareAndSet(false, true)) {
+            catchUpAgain = true;
+            return;
+        }
+        catchUpAgain = false;
+        // streamAll keeps its order while conversations are updated, so none is skipped
+        subscriptions.add(conversationStore.streamAll()
+                .concatMap(conv -> messageStore.stream(conv.getId()))
+                .filter(this::enqueue)
+                .count()
+                .doOnNext(n -> {
+                    if (n > 0) {
+                        log.info("Queued {} messages for semantic indexing", n);
+                    }
+                })
+                .doOnError(e -> log.warn("Semantic index catch-up failed: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> {
+                    catchingUp.set(false);
+                    if (catchUpAgain && signal != SignalType.CANCEL) {
+                        catchUp();
+                    }
+                })
+                .subscribe());
+    }
+
+    /** Embed and index one batch, unless the queue is empty, inference is busy, or a retry is not due. */
+    private Mono<Void> drain() {
+        if (pending.isEmpty() || scheduler.running() > 0 || scheduler.queued() > 0
+                || System.currentTimeMillis() < retryAt) {
+            return Mono.empty();
+        }
+        List<Queued> batch = new ArrayList<>(batchSize);
+        for (Queued q; batch.size() < batchSize && (q = pending.pollFirst()) != null; ) {
+            batch.add(q);
+        }
+        // Messages deleted since they were queued drop out here
+        return Flux.fromIterable(batch)
+                .concatMap(q -> messageStore.findById(q.conversationId(), q.messageId())
+                        .switchIfEmpty(Mono.fromRunnable(() -> queued.remove(q.messageId()))))
+                .collectList()
+                .flatMap(messages -> messages.isEmpty() ? Mono.empty() : embed(messages))
+                .onErrorResume(e -> {
+                    // Back to the head of the queue, oldest first
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        if (queued.contains(batch.get(i).messageId())) {
+                            pending.addFirst(batch.get(i));
+                        }
+                    }
+                    failures++;
+                    long backoff = Math.min(MAX_BACKOFF.toMillis(), pollInterval.toMillis() << Math.min(failures, 16));
+                    retryAt = System.currentTimeMillis() + backoff;
+                    log.warn("Embedding {} messages failed, retrying in {} ms: {}", batch.size(), backoff, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> embed(List<Message> messages) {
+        List<String> texts = messages.stream().map(m -> truncate(m.getContent())).toList();
+        Timer.Sample sample = Timer.start();
+        return scheduler.schedule(OllamaScheduler.Priority.BACKGROUND, model, null,
+                        backend -> ollamaClient.embed(backend, model, texts))
+                .next()
+                .doOnNext(vectors -> sample.stop(embedTimer))
+                .publishOn(indexThread)
+                .doOnNext(vectors -> {
+                    for (int i = 0; i < messages.size(); i++) {
+                        Message m = messages.get(i);
+                        index.add(m.getId(), m.getConversationId(), vectors.get(i));
+                        queued.remove(m.getId());
+                    }
+                    dirty = true;
+                    failures = 0;
+                })
+                .then();
+    }
+
+    private void save() {
+        dirty = false;
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            dirty = true;
+            log.warn("Could not save semantic index to {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private String truncate(String text) {
+        return text.length() <= maxChars ? text : text.substring(0, maxChars);
+    }
+
+    private record Queued(UUID messageId, UUID conversationId) {}
+}
@@ -0,0 +1,519 @@
+package com.pinote.chat.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory nearest-neighbour index of message embeddings by cosine similarity.
+ * <p>
+ * Vectors are normalized and quantized to int8 with one float scale each, so a vector costs
+ * about one byte per dimension. Until {@code trainMin} vectors are stored, queries compare
+ * against all of them. From then on the index is an inverted file: vectors are clustered around
+ * about sqrt(n) k-means centroids, and a query only scans the {@code nprobe} clusters nearest
+ * to it. The clustering is retrained whenever the index has grown fourfold.
+ * <p>
+ * Not thread-safe for concurrent writers: one thread adds and removes, any number query.
+ */
+public class VectorIndex {
+
+    private static final int MAGIC = 0x504E5649;
+    private static final int VERSION = 1;
+    private static final int KMEANS_ITERATIONS = 10;
+    private static final int SAMPLES_PER_CENTROID = 64;
+    private static final int MAX_CENTROIDS = 4096;
+    /** Rough per-vector cost of the id map entry, beyond the arrays. */
+    private static final int MAP_ENTRY_BYTES = 80;
+
+    /** A stored message and its cosine similarity to the query. */
+    public record Match(UUID messageId, UUID conversationId, float score) {}
+
+    private final String model;
+    private final int trainMin;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int dims;
+    private int size;
+    private int removed;
+    private byte[] codes = new byte[0];
+    private float[] scales = new float[0];
+    private long[] ids = new long[0];
+    private long[] conversationIds = new long[0];
+    private int[] clusterOf = new int[0];
+    private final Map<UUID, Integer> slots = new HashMap<>();
+
+    private float[][] centroids;
+    private List<int[]> members = List.of();
+    private int trainedAt;
+
+    public VectorIndex(String model, int trainMin) {
+        this.model = model;
+        this.trainMin = trainMin;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dims;
+    }
+
+    public int clusters() {
+        float[][] current = centroids;
+        return current != null ? current.length : 0;
+    }
+
+    /** Estimated memory per stored vector: code, scale, ids, cluster and its map entry. */
+    public int bytesPerVector() {
+        return dims + Float.BYTES + 4 * Long.BYTES + 2 * Integer.BYTES + MAP_ENTRY_BYTES;
+    }
+
+    public boolean contains(UUID messageId) {
+        lock.readLock().lock();
+        try {
+            return slots.containsKey(messageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add or replace the vector of a message; a replaced vector moves to the cluster nearest its
+     * new value. Vectors of another dimension than the first are rejected.
+     */
+    public void add(UUID messageId, UUID conversationId, float[] vector) {
+        if (dims != 0 && vector.length != dims) {
+            throw new IllegalArgumentException("Expected " + dims + " dimensions, got " + vector.length);
+        }
+        float[] unit = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if (dims == 0) {
+                dims = vector.length;
+            }
+            Integer existing = slots.get(messageId);
+            int slot = existing != null ? existing : append(messageId, conversationId);
+            quantize(unit, slot);
+            if (centroids != null) {
+                int cluster = nearest(centroids, unit);
+                int previous = clusterOf[slot];
+                if (cluster != previous) {
+                    if (previous >= 0) {
+                        members.set(previous, removeInt(members.get(previous), slot));
+                    }
+                    clusterOf[slot] = cluster;
+                    members.set(cluster, appendInt(members.get(cluster), slot));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        int live = size();
+        if (live >= trainMin && (centroids == null || live >= 4 * trainedAt)) {
+            train();
+        }
+    }
+
+    /** Drop all vectors of a conversation; the space is reclaimed on the next {@link #save}. */
+    public void removeConversation(UUID conversationId) {
+        long msb = conversationId.getMostSignificantBits();
+        long lsb = conversationId.getLeastSignificantBits();
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                if (conversationIds[2 * slot] == msb && conversationIds[2 * slot + 1] == lsb && !Float.isNaN(scales[slot])) {
+                    scales[slot] = Float.NaN;
+                    slots.remove(new UUID(ids[2 * slot], ids[2 * slot + 1]));
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** The {@code k} stored vectors most similar to {@code query}, best first. */
+    public List<Match> search(float[] query, int k, int nprobe) {
+        if (query.length != dims || k <= 0) {
+            return List.of();
+        }
+        float[] unit = normalize(query);
+        PriorityQueue<Match> best = new PriorityQueue<>(Comparator.comparingDouble(Match::score));
+        lock.readLock().lock();
+        try {
+            if (centroids == null) {
+                for (int slot = 0; slot < size; slot++) {
+                    offer(best, k, slot, unit);
+                }
+            } else {
+                for (int cluster : nearestClusters(unit, Math.min(nprobe, centroids.length))) {
+                    for (int slot : members.get(cluster)) {
+                        offer(best, k, slot, unit);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(Comparator.comparingDouble(Match::score).reversed());
+        return matches;
+    }
+
+    private void offer(PriorityQueue<Match> best, int k, int slot, float[] query) {
+        float scale = scales[slot];
+        if (Float.isNaN(scale)) {
+            return;
+        }
+        int base = slot * dims;
+        float dot = 0;
+        for (int i = 0; i < dims; i++) {
+            dot += codes[base + i] * query[i];
+        }
+        float score = dot * scale;
+        if (best.size() < k) {
+            best.add(match(slot, score));
+        } else if (score > best.peek().score()) {
+            best.poll();
+            best.add(match(slot, score));
+        }
+    }
+
+    private Match match(int slot, float score) {
+        return new Match(new UUID(ids[2 * slot], ids[2 * slot + 1]),
+                new UUID(conversationIds[2 * slot], conversationIds[2 * slot + 1]), score);
+    }
+
+    private int[] nearestClusters(float[] unit, int n) {
+        Integer[] order = new Integer[centroids.length];
+        float[] similarity = new float[centroids.length];
+        for (int c = 0; c < centroids.length; c++) {
+            order[c] = c;
+            similarity[c] = dot(centroids[c], unit);
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(similarity[b], similarity[a]));
+        int[] nearest = new int[n];
+        for (int i = 0; i < n; i++) {
+            nearest[i] = order[i];
+        }
+        return nearest;
+    }
+
+    // ---- Storage ----
+
+    private int append(UUID messageId, UUID conversationId) {
+        if (size == scales.length) {
+            int capacity = Math.max(64, size * 2);
+            codes = Arrays.copyOf(codes, capacity * dims);
+            scales = Arrays.copyOf(scales, capacity);
+            ids = Arrays.copyOf(ids, capacity * 2);
+            conversationIds = Arrays.copyOf(conversationIds, capacity * 2);
+            clusterOf = Arrays.copyOf(clusterOf, capacity);
+        }
+        int slot = size++;
+        ids[2 * slot] = messageId.getMostSignificantBits();
+        ids[2 * slot + 1] = messageId.getLeastSignificantBits();
+        conversationIds[2 * slot] = conversationId.getMostSignificantBits();
+        conversationIds[2 * slot + 1] = conversationId.getLeastSignificantBits();
+        clusterOf[slot] = -1;
+        slots.put(messageId, slot);
+        return slot;
+    }
+
+    private void quantize(float[] unit, int slot) {
+        float max = 0;
+        for (float v : unit) {
+            max = Math.max(max, Math.abs(v));
+        }
+        float scale = max > 0 ? max / 127f : 1f;
+        int base = slot * dims;
+        for (int i = 0; i < dims; i++) {
+            codes[base + i] = (byte) Math.round(unit[i] / scale);
+        }
+        scales[slot] = scale;
+    }
+
+    private float[] dequantize(int slot) {
+        float[] vector = new float[dims];
+        int base = slot * dims;
+        for (int i = 0; i < dims; i++) {
+            vector[i] = codes[base + i] * scales[slot];
+        }
+        return vector;
+    }
+
+    // ---- Clustering ----
+
+    /**
+     * Spherical k-means over a sample of the stored vectors, then assignment of all of them.
+     * Runs under the read lock, so queries continue; the result is swapped in under the write lock.
+     */
+    private void train() {
+        float[][] trained;
+        int[] assignment;
+        List<int[]> lists;
+        int liveCount;
+        lock.readLock().lock();
+        try {
+            List<Integer> live = new ArrayList<>(slots.values());
+            liveCount = live.size();
+            int k = Math.min(MAX_CENTROIDS, Math.max(1, (int) Math.sqrt(liveCount)));
+            Collections.shuffle(live, new Random(liveCount));
+            List<Integer> sample = live.subList(0, Math.min(live.size(), k * SAMPLES_PER_CENTROID));
+
+            trained = new float[k][];
+            for (int c = 0; c < k; c++) {
+                trained[c] = dequantize(sample.get(c));
+            }
+            for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+                float[][] sums = new float[k][dims];
+                for (int slot : sample) {
+                    float[] vector = dequantize(slot);
+                    float[] sum = sums[nearest(trained, vector)];
+                    for (int i = 0; i < dims; i++) {
+                        sum[i] += vector[i];
+                    }
+                }
+                for (int c = 0; c < k; c++) {
+                    // An empty cluster keeps its old centroid
+                    if (norm(sums[c]) > 0) {
+                        trained[c] = normalize(sums[c]);
+                    }
+                }
+            }
+
+            assignment = new int[size];
+            Arrays.fill(assignment, -1);
+            List<List<Integer>> grouped = new ArrayList<>(k);
+            for (int c = 0; c < k; c++) {
+                grouped.add(new ArrayList<>());
+            }
+            for (int slot : live) {
+                int cluster = nearest(trained, dequantize(slot));
+                assignment[slot] = cluster;
+                grouped.get(cluster).add(slot);
+            }
+            lists = new ArrayList<>(k);
+            for (List<Integer> group : grouped) {
+                lists.add(group.stream().mapToInt(Integer::intValue).toArray());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            System.arraycopy(assignment, 0, clusterOf, 0, assignment.length);
+            centroids = trained;
+            members = lists;
+            trainedAt = liveCount;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int nearest(float[][] centroids, float[] vector) {
+        int best = 0;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            float similarity = dot(centroids[c], vector);
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // ---- Persistence ----
+
+    /**
+     * Write the index to {@code file} through a temporary file, dropping removed vectors first.
+     */
+    public void save(Path file) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (removed > 0) {
+                compact();
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(model);
+                out.writeInt(dims);
+                out.writeInt(size);
+                out.writeInt(trainedAt);
+                out.writeInt(centroids != null ? centroids.length : 0);
+                if (centroids != null) {
+                    for (float[] centroid : centroids) {
+                        for (float v : centroid) {
+                            out.writeFloat(v);
+                        }
+                    }
+                }
+                for (int slot = 0; slot < size; slot++) {
+                    out.writeLong(ids[2 * slot]);
+                    out.writeLong(ids[2 * slot + 1]);
+                    out.writeLong(conversationIds[2 * slot]);
+                    out.writeLong(conversationIds[2 * slot + 1]);
+                    out.writeFloat(scales[slot]);
+                    out.writeInt(clusterOf[slot]);
+                    out.write(codes, slot * dims, dims);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read an index saved by {@link #save}. Returns an empty index if the file is missing
+     * or was built with another embedding model.
+     */
+    public static VectorIndex load(Path file, String model, int trainMin) throws IOException {
+        VectorIndex index = new VectorIndex(model, trainMin);
+        if (!Files.exists(file)) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(model)) {
+                return index;
+            }
+            int dims = in.readInt();
+            int count = in.readInt();
+            index.dims = dims;
+            index.trainedAt = in.readInt();
+            int clusters = in.readInt();
+            if (clusters > 0) {
+                index.centroids = new float[clusters][dims];
+                for (float[] centroid : index.centroids) {
+                    for (int i = 0; i < dims; i++) {
+                        centroid[i] = in.readFloat();
+                    }
+                }
+            }
+            index.codes = new byte[count * dims];
+            index.scales = new float[count];
+            index.ids = new long[count * 2];
+            index.conversationIds = new long[count * 2];
+            index.clusterOf = new int[count];
+            for (int slot = 0; slot < count; slot++) {
+                index.ids[2 * slot] = in.readLong();
+                index.ids[2 * slot + 1] = in.readLong();
+                index.conversationIds[2 * slot] = in.readLong();
+                index.conversationIds[2 * slot + 1] = in.readLong();
+                index.scales[slot] = in.readFloat();
+                index.clusterOf[slot] = in.readInt();
+                in.readFully(index.codes, slot * dims, dims);
+                index.slots.put(new UUID(index.ids[2 * slot], index.ids[2 * slot + 1]), slot);
+            }
+            index.size = count;
+            index.rebuildMembers();
+        }
+        return index;
+    }
+
+    /** Close the gaps left by removed vectors. Caller holds the write lock. */
+    private void compact() {
+        int to = 0;
+        slots.clear();
+        for (int from = 0; from < size; from++) {
+            if (Float.isNaN(scales[from])) {
+                continue;
+            }
+            if (to != from) {
+                System.arraycopy(codes, from * dims, codes, to * dims, dims);
+                scales[to] = scales[from];
+                ids[2 * to] = ids[2 * from];
+                ids[2 * to + 1] = ids[2 * from + 1];
+                conversationIds[2 * to] = conversationIds[2 * from];
+                conversationIds[2 * to + 1] = conversationIds[2 * from + 1];
+                clusterOf[to] = clusterOf[from];
+            }
+            slots.put(new UUID(ids[2 * to], ids[2 * to + 1]), to);
+            to++;
+        }
+        size = to;
+        removed = 0;
+        rebuildMembers();
+    }
+
+    private void rebuildMembers() {
+        if (centroids == null) {
+            members = List.of();
+            return;
+        }
+        List<List<Integer>> grouped = new ArrayList<>(centroids.length);
+        for (int c = 0; c < centroids.length; c++) {
+            grouped.add(new ArrayList<>());
+        }
+        for (int slot = 0; slot < size; slot++) {
+            if (clusterOf[slot] >= 0) {
+                grouped.get(clusterOf[slot]).add(slot);
+            }
+        }
+        List<int[]> lists = new ArrayList<>(centroids.length);
+        for (List<Integer> group : grouped) {
+            lists.add(group.stream().mapToInt(Integer::intValue).toArray());
+        }
+        members = lists;
+    }
+
+    // ---- Vector math ----
+
+    private static float[] normalize(float[] vector) {
+        float norm = norm(vector);
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = norm > 0 ? vector[i] / norm : 0;
+        }
+        return unit;
+    }
+
+    private static float norm(float[] vector) {
+        return (float) Math.sqrt(dot(vector, vector));
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static int[] appendInt(int[] array, int value) {
+        int[] grown = Arrays.copyOf(array, array.length + 1);
+        grown[array.length] = value;
+        return grown;
+    }
+
+    private static int[] removeInt(int[] array, int value) {
+        return Arrays.stream(array).filter(v -> v != value).toArray();
+    }
+}
@@ -0,0 +1,257 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.storage.MessageStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind for chat messages. When enabled, message inserts and their counter updates from
+ * all conversations are collected and written by one {@link MessageStore#appendAll} call, and so
+ * one commit, once {@code batch-size} messages are pending or the oldest has waited {@code max-delay-ms}.
+ * At most {@code max-pending} messages are queued; beyond that, up to {@code max-waiting} more
+ * wait for a flush to make room, and further writes fail with {@link StorageBusyException}.
+ * Each caller completes when its batch has committed, with the conversation row as updated.
+ * If a batch fails, its messages are retried one by one so a single bad row fails alone.
+ * When disabled, every message is written on its own.
+ */
+@Component
+public class BatchedMessageWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchedMessageWriter.class);
+
+    private final MessageStore messageStore;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxDelayMillis;
+    private final int maxPending;
+    private final int maxWaiting;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+
+    private final List<Pending> queue = new ArrayList<>();
+    private final ArrayDeque<Pending> blocked = new ArrayDeque<>();
+    private final List<FlushWaiter> afterFlush = new ArrayList<>();
+    private List<Pending> inFlight = List.of();
+    private Disposable scheduledFlush;
+    private boolean flushing;
+
+    public BatchedMessageWriter(MessageStore messageStore,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.storage.write-behind.enabled:false}") boolean enabled,
+                                @Value("${app.storage.write-behind.batch-size:32}") int batchSize,
+                                @Value("${app.storage.write-behind.max-delay-ms:25}") long maxDelayMillis,
+                                @Value("${app.storage.write-behind.max-pending:512}") int maxPending,
+                                @Value("${app.storage.write-behind.max-waiting:512}") int maxWaiting) {
+        this.messageStore = messageStore;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxPending = Math.max(this.batchSize, maxPending);
+        this.maxWaiting = Math.max(0, maxWaiting);
+
+        this.flushTimer = Timer.builder("chat.writer.flush")
+                .description("Time to write one batch of messages")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("chat.writer.flush.size")
+                .description("Messages written per batch")
+                .register(meterRegistry);
+        Gauge.builder("chat.writer.pending", this, BatchedMessageWriter::pending)
+                .register(meterRegistry);
+    }
+
+    /** Insert {@code message} (its id must be set) and count it on its conversation. */
+    public Mono<Conversation> write(Message message) {
+        if (!enabled) {
+            return insertOne(message);
+        }
+        return Mono.create(sink -> enqueue(new Pending(message, sink)));
+    }
+
+    /**
+     * Complete once nothing written for {@code conversationId} is still pending, flushing
+     * right away if needed. Called before reading a conversation so reads see every write.
+     * Writes to other conversations do not hold it up.
+     */
+    public Mono<Void> flush(UUID conversationId) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.create(sink -> {
+            boolean pending;
+            synchronized (this) {
+                pending = isPending(conversationId) || isPending(inFlight, conversationId);
+                if (pending) {
+                    afterFlush.add(new FlushWaiter(conversationId, sink::success));
+                }
+            }
+            if (pending) {
+                flushNow();
+            } else {
+                sink.success();
+            }
+        });
+    }
+
+    public synchronized int pending() {
+        return queue.size() + blocked.size() + inFlight.size();
+    }
+
+    /** Whether a write for the conversation is queued or waiting for room; the caller holds the lock. */
+    private boolean isPending(UUID conversationId) {
+        return isPending(queue, conversationId) || isPending(blocked, conversationId);
+    }
+
+    private static boolean isPending(Iterable<Pending> entries, UUID conversationId) {
+        for (Pending p : entries) {
+            if (p.message.getConversationId().equals(conversationId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        // Drain everything, including writers that were waiting for room
+        for (int i = 0; i < 1000 && pending() > 0; i++) {
+            flushNow();
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (pending() > 0) {
+            log.warn("Shutting down with {} unwritten messages", pending());
+        }
+    }
+
+    private void enqueue(Pending entry) {
+        boolean flush;
+        boolean rejected = false;
+        synchronized (this) {
+            if (queue.size() >= maxPending && blocked.size() >= maxWaiting) {
+                rejected = true;
+                flush = true;
+            } else if (queue.size() >= maxPending) {
+                blocked.addLast(entry);
+                flush = true;
+            } else {
+                queue.add(entry);
+                flush = queue.size() >= batchSize;
+                if (!flush && scheduledFlush == null) {
+                    scheduledFlush = Schedulers.parallel().schedule(this::flushNow, maxDelayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        if (rejected) {
+            log.warn("Rejecting message write: {} queued and {} waiting", maxPending, maxWaiting);
+            entry.sink.error(new StorageBusyException("Message storage is busy, try again shortly"));
+        }
+        if (flush) {
+            flushNow();
+        }
+    }
+
+    private void flushNow() {
+        List<Pending> batch;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.dispose();
+                scheduledFlush = null;
+            }
+            if (flushing || queue.isEmpty()) {
+                return;
+            }
+            flushing = true;
+            int n = Math.min(batchSize, queue.size());
+            batch = new ArrayList<>(queue.subList(0, n));
+            queue.subList(0, n).clear();
+            inFlight = batch;
+            // Writers that were waiting for room move into the queue
+            while (!blocked.isEmpty() && queue.size() < maxPending) {
+                queue.add(blocked.pollFirst());
+            }
+        }
+
+        Timer.Sample sample = Timer.start();
+        messageStore.appendAll(batch.stream().map(Pending::message).toList())
+                .onErrorResume(e -> {
+                    log.warn("Batch of {} messages failed, writing them one by one: {}", batch.size(), e.getMessage());
+                    return Flux.fromIterable(batch)
+                            .concatMap(p -> insertOne(p.message)
+                                    .doOnNext(conv -> p.sink.success(conv))
+                                    .doOnError(p.sink::error)
+                                    .onErrorResume(err -> Mono.empty()))
+                            .then(Mono.empty());
+                })
+                .doFinally(signal -> {
+                    sample.stop(flushTimer);
+                    flushSize.record(batch.size());
+                    afterBatch();
+                })
+                .subscribe(updated -> {
+                    for (Pending p : batch) {
+                        p.sink.success(updated.get(p.message.getConversationId()));
+                    }
+                });
+    }
+
+    /** Release flush waiters whose conversation has nothing left pending, then keep flushing if needed. */
+    private void afterBatch() {
+        List<Runnable> waiters = new ArrayList<>();
+        boolean more;
+        synchronized (this) {
+            flushing = false;
+            inFlight = List.of();
+            for (Iterator<FlushWaiter> it = afterFlush.iterator(); it.hasNext(); ) {
+                FlushWaiter waiter = it.next();
+                if (!isPending(waiter.conversationId)) {
+                    it.remove();
+                    waiters.add(waiter.done);
+                }
+            }
+            more = queue.size() >= batchSize || (!queue.isEmpty() && !afterFlush.isEmpty());
+            if (!more && !queue.isEmpty() && scheduledFlush == null) {
+                scheduledFlush = Schedulers.parallel().schedule(this::flushNow, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        waiters.forEach(Runnable::run);
+        if (more) {
+            flushNow();
+        }
+    }
+
+    private Mono<Conversation> insertOne(Message m) {
+        return messageStore.append(m);
+    }
+
+    private record Pending(Message message, MonoSink<Conversation> sink) {}
+
+    private record FlushWaiter(UUID conversationId, Runnable done) {}
+}
@@ -1,8 +1,12 @@
 package com.pinote.chat.service;
 
 import com.pinote.chat.model.ChatEvent;
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.ConversationEvent;
+import com.pinote.chat.model.GenerationStats;
 import com.pinote.chat.model.Message;
-import com.pinote.chat.repository.MessageRepository;
+import com.pinote.chat.model.OllamaChatChunk;
+import com.pinote.chat.storage.MessageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -10,6 +14,9 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Service
@@ -18,83 +25,164 @@ public class ChatService {
     private static final Logger log = LoggerFactory.getLogger(ChatService.class);
 
     private final OllamaClient ollamaClient;
-    private final MessageRepository messageRepo;
+    private final MessageStore messageStore;
     private final ConversationService conversationService;
     private final TitleGenerationService titleService;
+    private final ContextWindowBuilder contextBuilder;
+    private final ConversationHistoryCache historyCache;
+    private final OllamaScheduler scheduler;
+    private final OllamaResponseCache responseCache;
+    private final ConversationEventBus eventBus;
+    private final InferenceMetrics metrics;
 
     public ChatService(OllamaClient ollamaClient,
-                       MessageRepository messageRepo,
+                       MessageStore messageStore,
                        ConversationService conversationService,
-                       TitleGenerationService titleService) {
+                       TitleGenerationService titleService,
+                       ContextWindowBuilder contextBuilder,
+                       ConversationHistoryCache historyCache,
+                       OllamaScheduler scheduler,
+                       OllamaResponseCache responseCache,
+                       ConversationEventBus eventBus,
+                       InferenceMetrics metrics) {
         this.ollamaClient = ollamaClient;
-        this.messageRepo = messageRepo;
+        this.messageStore = messageStore;
         this.conversationService = conversationService;
         this.titleService = titleService;
+        this.contextBuilder = contextBuilder;
+        this.historyCache = historyCache;
+        this.scheduler = scheduler;
+        this.responseCache = responseCache;
+        this.eventBus = eventBus;
+        this.metrics = metrics;
     }
 
-    public Flux<ChatEvent> chat(UUID conversationId, String userContent) {
-        // Save user message first
+    /**
+     * Generate a reply to {@code userContent}. When {@code stop} emits, the upstream request is
+     * cancelled, and the partial reply is saved as truncated and ended with a normal MessageEnd.
+     * A reply stopped before its first token is not saved.
+     */
+    public Flux<ChatEvent> chat(UUID conversationId, String userContent, Mono<?> stop) {
+        long startedAt = System.nanoTime();
+        // Save user message first, counting it in the same statement
         Message userMsg = Message.create(conversationId, "user", userContent);
+        userMsg.setId(UUID.randomUUID());
 
-        return messageRepo.save(userMsg)
-                .flatMap(saved -> conversationService.incrementMessageCount(conversationId).thenReturn(saved))
-                .flatMapMany(savedUserMsg -> {
-                    // Build message history for Ollama
-                    return messageRepo.findByConversationIdOrderByCreatedAtAsc(conversationId)
-                            .collectList()
-                            .flatMapMany(history -> streamFromOllama(conversationId, history, userContent));
+        return conversationService.addMessage(userMsg)
+                .flatMapMany(conversation -> {
+                    // Build the budgeted message window for Ollama
+                    return loadHistory(conversation)
+                            .map(history -> contextBuilder.build(conversation, history, ollamaClient.getCurrentModel()))
+                            .flatMapMany(ollamaMessages ->
+                                    streamFromOllama(conversationId, ollamaMessages, userContent, startedAt, stop));
                 });
     }
 
-    private Flux<ChatEvent> streamFromOllama(UUID conversationId,
-                                              List<Message> history,
-                                              String userContent) {
-        // Convert to Ollama message format
-        List<Map<String, String>> ollamaMessages = new ArrayList<>();
-        for (Message msg : history) {
-            ollamaMessages.add(Map.of("role", msg.getRole(), "content", msg.getContent()));
+    private Mono<List<Message>> loadHistory(Conversation conversation) {
+        List<Message> cached = historyCache.getMessages(conversation.getId());
+        if (cached != null) {
+            return Mono.just(cached);
         }
+        long stamp = historyCache.stamp(conversation.getId());
+        return messageStore.findByConversationId(conversation.getId())
+                .collectList()
+                .doOnNext(history -> historyCache.put(conversation.getId(), conversation, history, stamp));
+    }
 
+    private Flux<ChatEvent> streamFromOllama(UUID conversationId,
+                                              List<Map<String, String>> ollamaMessages,
+                                              String userContent,
+                                              long startedAt,
+                                              Mono<?> stop) {
         UUID assistantMsgId = UUID.randomUUID();
         AtomicReference<StringBuilder> contentBuffer = new AtomicReference<>(new StringBuilder());
+        // What the stats are made of; backend and final chunk stay null for a reply that joined another request
+        AtomicLong firstTokenAt = new AtomicLong();
+        AtomicReference<String> backendUrl = new AtomicReference<>();
+        AtomicReference<OllamaChatChunk> doneChunk = new AtomicReference<>();
+        AtomicBoolean stopped = new AtomicBoolean();
 
         // Start event
         Flux<ChatEvent> startEvent = Flux.just(
                 new ChatEvent.MessageStart(assistantMsgId, conversationId)
         );
 
-        // Stream tokens from Ollama
-        Flux<ChatEvent> tokenStream = ollamaClient.chatStream(ollamaMessages)
-                .filter(chunk -> chunk.message() != null && chunk.message().content() != null)
-                .map(chunk -> {
-                    String token = chunk.message().content();
-                    contentBuffer.get().append(token);
-                    return (ChatEvent) new ChatEvent.Token(token);
-                });
+        // Stream tokens from Ollama once a slot is free, reporting queue position meanwhile.
+        // The conversation id keeps follow-up turns on the backend that already has its context warm.
+        // An identical request in flight is shared; a finished one is not replayed, so asking again
+        // gets a fresh reply.
+        String model = ollamaClient.getCurrentModel();
+        Flux<ChatEvent> tokenStream = responseCache.share(
+                        OllamaResponseCache.key(model, null, ollamaMessages),
+                        () -> scheduler.schedule(OllamaScheduler.Priority.INTERACTIVE, model, conversationId,
+                                backend -> ollamaClient.chatStream(backend, model, ollamaMessages)
+                                        .doFirst(() -> backendUrl.set(backend.getBaseUrl()))
+                                        .doOnNext(chunk -> {
+                                            if (chunk.done()) {
+                                                doneChunk.set(chunk);
+                                            }
+                                        })
+                                        .filter(chunk -> chunk.message() != null && chunk.message().content() != null)
+                                        .map(chunk -> (ChatEvent) new ChatEvent.Token(chunk.message().content())),
+                                ChatEvent.Queued::new))
+                .doOnNext(event -> {
+                    if (event instanceof ChatEvent.Token token) {
+                        firstTokenAt.compareAndSet(0, System.nanoTime());
+                        contentBuffer.get().append(token.content());
+                        // Mirror the reply to other devices watching this conversation
+                        eventBus.publish(new ConversationEvent.Tokens(conversationId, assistantMsgId, token.content()));
+                    }
+                })
+                // Cancelling on stop aborts the Ollama request and frees the scheduler slot
+                .takeUntilOther(stop.doOnNext(v -> stopped.set(true)));
 
-        // On complete: save assistant message, generate title if first exchange
-        // Use explicit INSERT to avoid Spring Data treating pre-set ID as UPDATE
-        Flux<ChatEvent> endEvent = Mono.defer(() -> {
+        // On complete: save and count the assistant message in one statement, then end the turn;
+        // the returned row tells whether the conversation still needs a title
+        Flux<ChatEvent> endEvent = Flux.defer(() -> {
             String fullContent = contentBuffer.get().toString();
+            boolean truncated = stopped.get();
+            if (truncated && fullContent.isEmpty()) {
+                // Stopped before the first token: nothing to save, or to send as history later
+                return Flux.just(new ChatEvent.MessageEnd(assistantMsgId, true, null));
+            }
 
-            return messageRepo.insertMessage(assistantMsgId, conversationId, "assistant", fullContent, java.time.Instant.now())
-                    .then(conversationService.incrementMessageCount(conversationId))
-                    .then(conversationService.getConversation(conversationId))
-                    .flatMap(convWithMsgs -> {
-                        if (convWithMsgs.conversation().getMessageCount() <= 2
-                                && "New Conversation".equals(convWithMsgs.conversation().getTitle())) {
-                            return titleService.generateTitleAsync(conversationId, userContent, fullContent)
-                                    .map(title -> (ChatEvent) new ChatEvent.MessageEnd(assistantMsgId, title))
-                                    .defaultIfEmpty(new ChatEvent.MessageEnd(assistantMsgId, null));
+            Message assistantMsg = Message.create(conversationId, "assistant", fullContent);
+            assistantMsg.setId(assistantMsgId);
+            assistantMsg.setTruncated(truncated);
+            long endedAt = System.nanoTime();
+            Long firstTokenMillis = firstTokenAt.get() != 0
+                    ? TimeUnit.NANOSECONDS.toMillis(firstTokenAt.get() - startedAt) : null;
+            GenerationStats stats = GenerationStats.of(model, backendUrl.get(), doneChunk.get(),
+                    firstTokenMillis, TimeUnit.NANOSECONDS.toMillis(endedAt - startedAt));
+            assistantMsg.setStats(stats);
+            metrics.recordReply(stats);
+
+            return conversationService.addMessage(assistantMsg)
+                    .flatMapMany(conversation -> {
+                        Flux<ChatEvent> end = Flux.just(new ChatEvent.MessageEnd(assistantMsgId, truncated, stats));
+                        if (conversation.getMessageCount() <= 2
+                                && "New Conversation".equals(conversation.getTitle())) {
+                            return end.concatWith(generateTitle(conversationId, userContent, fullContent));
                         }
-                        return Mono.just((ChatEvent) new ChatEvent.MessageEnd(assistantMsgId, null));
+                        return end;
                     });
-        }).flux();
+        });
 
         return Flux.concat(startEvent, tokenStream, endEvent)
                 .onErrorResume(e -> {
                     log.error("Chat stream error: {}", e.getMessage());
-                    return Flux.just(new ChatEvent.Error("STREAM_ERROR", e.getMessage()));
+                    String code = e instanceof OllamaBusyException || e instanceof StorageBusyException ? "BUSY" : "STREAM_ERROR";
+                    return Flux.just(new ChatEvent.Error(code, e.getMessage()));
                 });
     }
+
+    /**
+     * Generate the title as detached work, so it completes even if the client has gone,
+     * and report it on the stream as a title event if the client is still there.
+     */
+    private Flux<ChatEvent> generateTitle(UUID conversationId, String userContent, String assistantContent) {
+        Mono<String> title = titleService.generateTitleAsync(conversationId, userContent, assistantContent).cache();
+        title.subscribe();
+        return title.map(t -> (ChatEvent) new ChatEvent.Title(conversationId, t)).flux();
+    }
 }
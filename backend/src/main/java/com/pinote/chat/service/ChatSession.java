@@ -0,0 +1,102 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.ChatEvent;
+import com.pinote.chat.model.SequencedChatEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One chat generation, running independently of the clients watching it.
+ * Events are numbered and the last {@code capacity} of them are kept, so a client that
+ * lost its connection can continue after the last event it saw.
+ */
+public class ChatSession {
+
+    private static final Sinks.EmitFailureHandler RETRY_EMIT =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    private final UUID id = UUID.randomUUID();
+    private final UUID conversationId;
+    private final int capacity;
+    private final Sinks.Many<SequencedChatEvent> events;
+    private final Sinks.One<Boolean> stop = Sinks.one();
+    private final StringBuilder content = new StringBuilder();
+    private UUID messageId;
+    private long lastSeq;
+    private volatile Instant finishedAt;
+    private Disposable generation;
+
+    ChatSession(UUID conversationId, int capacity) {
+        this.conversationId = conversationId;
+        this.capacity = capacity;
+        this.events = Sinks.many().replay().limit(capacity);
+    }
+
+    public UUID getId() { return id; }
+    public UUID getConversationId() { return conversationId; }
+    public Instant getFinishedAt() { return finishedAt; }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    /** Subscribe to the generation; it runs to completion whether or not anyone is watching. */
+    void start(Flux<ChatEvent> source, Runnable onFinish) {
+        generation = source
+                .doFinally(signal -> {
+                    finishedAt = Instant.now();
+                    events.emitComplete(RETRY_EMIT);
+                    onFinish.run();
+                })
+                .subscribe(this::append,
+                        e -> append(new ChatEvent.Error("STREAM_ERROR", e.getMessage())));
+    }
+
+    /** Emits when {@link #stop} is called; the generation ends its reply early on it. */
+    Mono<Boolean> stopSignal() {
+        return stop.asMono();
+    }
+
+    /** Ask the generation to end its reply early; false if it has finished or was asked already. */
+    public boolean stop() {
+        return !isFinished() && stop.tryEmitValue(Boolean.TRUE).isSuccess();
+    }
+
+    /** Stop the generation; used when the session is discarded before it finishes. */
+    void cancel() {
+        if (generation != null) {
+            generation.dispose();
+        }
+    }
+
+    /**
+     * Events after {@code afterSeq} (0 for all), then live events until the generation ends.
+     * If some of them have already left the buffer, the client gets a snapshot of the reply so far instead.
+     */
+    public synchronized Flux<SequencedChatEvent> stream(long afterSeq) {
+        long oldestRetained = Math.max(1, lastSeq - capacity + 1);
+        if (afterSeq + 1 >= oldestRetained) {
+            return events.asFlux().filter(e -> e.seq() > afterSeq);
+        }
+        long snapshotSeq = lastSeq;
+        SequencedChatEvent snapshot = new SequencedChatEvent(snapshotSeq,
+                new ChatEvent.Snapshot(messageId, conversationId, content.toString()));
+        return Flux.just(snapshot)
+                .concatWith(events.asFlux().filter(e -> e.seq() > snapshotSeq));
+    }
+
+    private synchronized void append(ChatEvent event) {
+        if (event instanceof ChatEvent.MessageStart start) {
+            messageId = start.messageId();
+        } else if (event instanceof ChatEvent.Token token) {
+            content.append(token.content());
+        }
+        events.emitNext(new SequencedChatEvent(++lastSeq, event), RETRY_EMIT);
+    }
+}
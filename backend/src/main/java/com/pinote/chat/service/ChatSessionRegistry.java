@@ -0,0 +1,74 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.ChatEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Chat sessions that are still running or finished recently enough to be resumed.
+ * A finished session is dropped after {@code retain-seconds}, whether or not a client came back for it.
+ */
+@Component
+public class ChatSessionRegistry {
+
+    private final int bufferSize;
+    private final Duration retention;
+    private final Map<UUID, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final Map<UUID, ChatSession> latestByConversation = new ConcurrentHashMap<>();
+
+    public ChatSessionRegistry(@Value("${app.chat.session.buffer-size:2048}") int bufferSize,
+                               @Value("${app.chat.session.retain-seconds:300}") long retainSeconds) {
+        this.bufferSize = bufferSize;
+        this.retention = Duration.ofSeconds(retainSeconds);
+    }
+
+    /** Start a session running {@code generation}, which is given the session's stop signal. */
+    public ChatSession start(UUID conversationId, Function<Mono<Boolean>, Flux<ChatEvent>> generation) {
+        ChatSession session = new ChatSession(conversationId, bufferSize);
+        sessions.put(session.getId(), session);
+        latestByConversation.put(conversationId, session);
+        session.start(generation.apply(session.stopSignal()),
+                () -> Mono.delay(retention).subscribe(tick -> remove(session)));
+        return session;
+    }
+
+    public ChatSession get(UUID sessionId) {
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    /** The most recent session of a conversation, running or recently finished. */
+    public ChatSession latest(UUID conversationId) {
+        return latestByConversation.get(conversationId);
+    }
+
+    /** Sessions of a conversation that are still generating. */
+    public List<ChatSession> running(UUID conversationId) {
+        return sessions.values().stream()
+                .filter(session -> session.getConversationId().equals(conversationId) && !session.isFinished())
+                .toList();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void remove(ChatSession session) {
+        sessions.remove(session.getId());
+        latestByConversation.remove(session.getConversationId(), session);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sessions.values().forEach(ChatSession::cancel);
+    }
+}
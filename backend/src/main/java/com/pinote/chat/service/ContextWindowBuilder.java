@@ -0,0 +1,106 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the Ollama message list for a turn: the newest messages that fit the model's
+ * token budget, preceded by the rolling summary of everything older.
+ * Turns past the budget that the summary does not cover yet stay in the window, over budget,
+ * and trigger a background refresh; they leave the window once a summary includes them.
+ */
+@Component
+public class ContextWindowBuilder {
+
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final ConversationSummaryService summaryService;
+    private final int defaultBudget;
+    private final int summaryBatchTokens;
+    private final Map<String, Integer> modelBudgets = new HashMap<>();
+
+    public ContextWindowBuilder(ConversationSummaryService summaryService,
+                                @Value("${app.chat.context.default-budget:2048}") int defaultBudget,
+                                @Value("${app.chat.context.model-budgets:}") String modelBudgets,
+                                @Value("${app.chat.context.summary-batch-tokens:256}") int summaryBatchTokens) {
+        this.summaryService = summaryService;
+        this.defaultBudget = defaultBudget;
+        this.summaryBatchTokens = summaryBatchTokens;
+        // Format: model=tokens,model=tokens
+        for (String entry : modelBudgets.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq > 0) {
+                this.modelBudgets.put(entry.substring(0, eq).strip(), Integer.parseInt(entry.substring(eq + 1).strip()));
+            }
+        }
+    }
+
+    /**
+     * @param history full conversation history, oldest first, ending with the current user message
+     */
+    public List<Map<String, String>> build(Conversation conversation, List<Message> history, String model) {
+        String summary = conversation.getSummary();
+        int budget = modelBudgets.getOrDefault(model, defaultBudget);
+        if (summary != null) {
+            budget -= estimateTokens(summary) + MESSAGE_OVERHEAD_TOKENS;
+        }
+
+        // Walk back from the newest message; the current user message is always kept
+        int start = history.size();
+        int used = 0;
+        while (start > 0) {
+            int cost = estimateTokens(history.get(start - 1).getContent()) + MESSAGE_OVERHEAD_TOKENS;
+            if (start < history.size() && used + cost > budget) {
+                break;
+            }
+            used += cost;
+            start--;
+        }
+
+        // Messages are oldest first, so the ones the summary does not cover are a run ending at start
+        int fitted = start;
+        int unsummarizedTokens = 0;
+        while (start > 0 && (conversation.getSummarizedUntil() == null
+                || history.get(start - 1).getCreatedAt().isAfter(conversation.getSummarizedUntil()))) {
+            start--;
+            unsummarizedTokens += estimateTokens(history.get(start).getContent());
+        }
+        // Batch them so long chats don't pay a summary generation every turn
+        if (start < fitted && (summary == null || unsummarizedTokens >= summaryBatchTokens)) {
+            summaryService.refreshAsync(conversation.getId(), summary, history.subList(start, fitted));
+        }
+
+        List<Map<String, String>> messages = new ArrayList<>(history.size() - start + 1);
+        if (start > 0 && summary != null) {
+            messages.add(Map.of("role", "system", "content", "Summary of the earlier conversation:\n" + summary));
+        }
+        for (Message msg : history.subList(start, history.size())) {
+            messages.add(Map.of("role", msg.getRole(), "content", msg.getContent()));
+        }
+        return messages;
+    }
+
+    /**
+     * Cheap token estimate without a tokenizer: about four ASCII characters per token,
+     * and one token per non-ASCII character (Hangul, CJK), which errs on the safe side.
+     */
+    static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+}
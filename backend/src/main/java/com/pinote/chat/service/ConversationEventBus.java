@@ -0,0 +1,158 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.ConversationEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process fan-out of conversation changes to connected clients.
+ * Each subscriber has its own queue of at most {@code buffer-size} events. While it waits,
+ * updates to the same conversation replace each other and mirrored tokens of the same
+ * reply are merged. If the queue still overflows, mirrored tokens are dropped first. Otherwise
+ * the queue is replaced by a single {@link ConversationEvent.Resync}, so a slow client costs
+ * bounded memory and never holds back the publishers.
+ */
+@Component
+public class ConversationEventBus {
+
+    private final int bufferSize;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public ConversationEventBus(@Value("${app.events.buffer-size:256}") int bufferSize) {
+        this.bufferSize = Math.max(2, bufferSize);
+    }
+
+    public void publish(ConversationEvent event) {
+        for (Listener listener : listeners) {
+            listener.offer(event);
+        }
+    }
+
+    /**
+     * Events for one client. Mirrored tokens are included only for {@code watchedConversationId},
+     * which may be null.
+     */
+    public Flux<ConversationEvent> subscribe(UUID watchedConversationId) {
+        return Flux.create(sink -> {
+            Listener listener = new Listener(sink, watchedConversationId);
+            listeners.add(listener);
+            sink.onRequest(n -> listener.drain());
+            sink.onDispose(() -> listeners.remove(listener));
+        });
+    }
+
+    public int subscriberCount() {
+        return listeners.size();
+    }
+
+    private final class Listener {
+        private final FluxSink<ConversationEvent> sink;
+        private final UUID watchedConversationId;
+        // Events, with the mirrored tokens of a reply gathered into a TokenRun until sent
+        private final ArrayDeque<Object> queue = new ArrayDeque<>();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        Listener(FluxSink<ConversationEvent> sink, UUID watchedConversationId) {
+            this.sink = sink;
+            this.watchedConversationId = watchedConversationId;
+        }
+
+        void offer(ConversationEvent event) {
+            if (event instanceof ConversationEvent.Tokens tokens
+                    && !tokens.conversationId().equals(watchedConversationId)) {
+                return;
+            }
+            synchronized (this) {
+                enqueue(event);
+            }
+            drain();
+        }
+
+        private void enqueue(ConversationEvent event) {
+            if (event instanceof ConversationEvent.Updated updated && replacePendingUpdate(updated)) {
+                return;
+            }
+            if (event instanceof ConversationEvent.Tokens tokens
+                    && queue.peekLast() instanceof TokenRun last
+                    && last.messageId.equals(tokens.messageId())) {
+                last.content.append(tokens.content());
+                return;
+            }
+            if (queue.size() >= bufferSize) {
+                if (event instanceof ConversationEvent.Tokens) {
+                    return;
+                }
+                queue.removeIf(TokenRun.class::isInstance);
+                if (queue.size() >= bufferSize) {
+                    queue.clear();
+                    queue.addLast(new ConversationEvent.Resync());
+                    return;
+                }
+            }
+            if (queue.peekLast() instanceof ConversationEvent.Resync) {
+                // The client reloads everything anyway
+                return;
+            }
+            queue.addLast(event instanceof ConversationEvent.Tokens tokens ? new TokenRun(tokens) : event);
+        }
+
+        private boolean replacePendingUpdate(ConversationEvent.Updated updated) {
+            Iterator<Object> it = queue.descendingIterator();
+            while (it.hasNext()) {
+                if (it.next() instanceof ConversationEvent.Updated pending
+                        && Objects.equals(pending.conversation().getId(), updated.conversation().getId())) {
+                    it.remove();
+                    queue.addLast(updated);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (true) {
+                    ConversationEvent next;
+                    synchronized (this) {
+                        if (sink.isCancelled() || sink.requestedFromDownstream() == 0 || queue.isEmpty()) {
+                            break;
+                        }
+                        Object queued = queue.pollFirst();
+                        next = queued instanceof TokenRun run ? run.toEvent() : (ConversationEvent) queued;
+                    }
+                    sink.next(next);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+
+    /** Mirrored tokens of one reply waiting to be sent, appended to in place. */
+    private static final class TokenRun {
+        final UUID conversationId;
+        final UUID messageId;
+        final StringBuilder content;
+
+        TokenRun(ConversationEvent.Tokens first) {
+            this.conversationId = first.conversationId();
+            this.messageId = first.messageId();
+            this.content = new StringBuilder(first.content());
+        }
+
+        ConversationEvent.Tokens toEvent() {
+            return new ConversationEvent.Tokens(conversationId, messageId, content.toString());
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.ConversationWithMessages;
+import com.pinote.chat.model.Message;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * LRU cache of recent conversation histories, bounded by the estimated heap size of the
+ * cached messages rather than by entry count. ChatService keeps entries current as it
+ * writes messages; anything else that changes a conversation invalidates its entry.
+ * <p>
+ * A history is loaded outside the lock, so a write can land between the load and the
+ * {@link #put}. Every write bumps a stamp for its conversation, cached or not, and a put whose
+ * {@link #stamp} is no longer current is dropped instead of caching the older history.
+ */
+@Component
+public class ConversationHistoryCache {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+    private static final long MESSAGE_OVERHEAD_BYTES = 160;
+    /** Write stamps are kept per stripe of conversations, so they take fixed memory. */
+    private static final int STAMP_STRIPES = 1024;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ConversationHistoryCache(@Value("${app.cache.history.max-bytes:16777216}") long maxBytes,
+                                    MeterRegistry meterRegistry) {
+        this.maxBytes = maxBytes;
+        // One huge conversation should not flush everything else out
+        this.maxEntryBytes = maxBytes / 4;
+
+        Gauge.builder("chat.history.cache.bytes", this, ConversationHistoryCache::totalBytes)
+                .description("Estimated heap used by cached conversation histories")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.history.cache.entries", this, ConversationHistoryCache::size)
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.history.cache.requests", this, ConversationHistoryCache::hits)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.history.cache.requests", this, ConversationHistoryCache::misses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.history.cache.evictions", this, ConversationHistoryCache::evictions)
+                .register(meterRegistry);
+    }
+
+    /** Cached history, oldest first, or null on a miss. */
+    public synchronized List<Message> getMessages(UUID conversationId) {
+        Entry entry = entries.get(conversationId);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return List.copyOf(entry.messages);
+    }
+
+    /** Cached conversation with its full history, or null unless both are cached. */
+    public synchronized ConversationWithMessages getConversation(UUID conversationId) {
+        Entry entry = entries.get(conversationId);
+        if (entry == null || entry.conversation == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ConversationWithMessages(copy(entry.conversation), List.copyOf(entry.messages));
+    }
+
+    /** Take before loading a history from the store, and pass to {@link #put}. */
+    public synchronized long stamp(UUID conversationId) {
+        return stamps[stripe(conversationId)];
+    }
+
+    /**
+     * Store a complete history loaded from the database, unless the conversation was written
+     * since {@code stamp} was taken; the history may then be missing that write.
+     */
+    public synchronized void put(UUID conversationId, Conversation conversation, List<Message> messages, long stamp) {
+        if (stamps[stripe(conversationId)] != stamp) {
+            return;
+        }
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (Message msg : messages) {
+            bytes += sizeOf(msg);
+        }
+        remove(conversationId);
+        if (bytes > maxEntryBytes) {
+            return;
+        }
+        Entry entry = new Entry(conversation != null ? copy(conversation) : null, new ArrayList<>(messages), bytes);
+        entries.put(conversationId, entry);
+        totalBytes += bytes;
+        evictToLimit();
+    }
+
+    /** Append a message just written; ignored unless the history is already cached. */
+    public synchronized void append(Message message) {
+        written(message.getConversationId());
+        Entry entry = entries.get(message.getConversationId());
+        if (entry == null) {
+            return;
+        }
+        entry.messages.add(message);
+        long bytes = sizeOf(message);
+        entry.bytes += bytes;
+        totalBytes += bytes;
+        if (entry.bytes > maxEntryBytes) {
+            remove(message.getConversationId());
+        }
+        evictToLimit();
+    }
+
+    /** Refresh the cached conversation row after a write that returned it. */
+    public synchronized void updateConversation(Conversation conversation) {
+        written(conversation.getId());
+        Entry entry = entries.get(conversation.getId());
+        if (entry != null) {
+            entry.conversation = copy(conversation);
+        }
+    }
+
+    public synchronized void invalidate(UUID conversationId) {
+        written(conversationId);
+        remove(conversationId);
+    }
+
+    public synchronized long totalBytes() { return totalBytes; }
+    public synchronized int size() { return entries.size(); }
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+    public synchronized long evictions() { return evictions; }
+
+    private void written(UUID conversationId) {
+        stamps[stripe(conversationId)]++;
+    }
+
+    private static int stripe(UUID conversationId) {
+        return Math.floorMod(conversationId.hashCode(), STAMP_STRIPES);
+    }
+
+    private void remove(UUID conversationId) {
+        Entry removed = entries.remove(conversationId);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    private void evictToLimit() {
+        Iterator<Map.Entry<UUID, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(Message message) {
+        String content = message.getContent();
+        return MESSAGE_OVERHEAD_BYTES + (content != null ? 2L * content.length() : 0);
+    }
+
+    private static Conversation copy(Conversation source) {
+        Conversation c = new Conversation();
+        c.setId(source.getId());
+        c.setTitle(source.getTitle());
+        c.setCreatedAt(source.getCreatedAt());
+        c.setUpdatedAt(source.getUpdatedAt());
+        c.setMessageCount(source.getMessageCount());
+        c.setSummary(source.getSummary());
+        c.setSummarizedUntil(source.getSummarizedUntil());
+        return c;
+    }
+
+    private static final class Entry {
+        private Conversation conversation;
+        private final List<Message> messages;
+        private long bytes;
+
+        Entry(Conversation conversation, List<Message> messages, long bytes) {
+            this.conversation = conversation;
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+    }
+}
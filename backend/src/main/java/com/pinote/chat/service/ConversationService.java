@@ -1,73 +1,157 @@
 package com.pinote.chat.service;
 
 import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.ConversationEvent;
 import com.pinote.chat.model.ConversationWithMessages;
+import com.pinote.chat.model.CursorPage;
 import com.pinote.chat.model.Message;
-import com.pinote.chat.repository.ConversationRepository;
-import com.pinote.chat.repository.MessageRepository;
+import com.pinote.chat.model.PageCursor;
+import com.pinote.chat.storage.ConversationStore;
+import com.pinote.chat.storage.MessageStore;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Service
 public class ConversationService {
 
-    private final ConversationRepository conversationRepo;
-    private final MessageRepository messageRepo;
+    private final ConversationStore conversationStore;
+    private final MessageStore messageStore;
+    private final ConversationHistoryCache historyCache;
+    private final ConversationEventBus eventBus;
+    private final BatchedMessageWriter messageWriter;
+    private final ConversationVersions versions;
 
-    public ConversationService(ConversationRepository conversationRepo,
-                               MessageRepository messageRepo) {
-        this.conversationRepo = conversationRepo;
-        this.messageRepo = messageRepo;
+    public ConversationService(ConversationStore conversationStore,
+                               MessageStore messageStore,
+                               ConversationHistoryCache historyCache,
+                               ConversationEventBus eventBus,
+                               BatchedMessageWriter messageWriter,
+                               ConversationVersions versions) {
+        this.conversationStore = conversationStore;
+        this.messageStore = messageStore;
+        this.historyCache = historyCache;
+        this.eventBus = eventBus;
+        this.messageWriter = messageWriter;
+        this.versions = versions;
     }
 
     public Flux<Conversation> listConversations(int page, int size) {
-        return conversationRepo.findAllPaged(size, (long) page * size);
+        return conversationStore.findAllPaged(size, (long) page * size);
+    }
+
+    /**
+     * Conversations in most-recently-updated order, continuing after {@code cursor}
+     * (null for the first page).
+     */
+    public Mono<CursorPage<Conversation>> listConversations(PageCursor cursor, int size) {
+        Flux<Conversation> rows = cursor == null
+                ? conversationStore.findFirstByUpdated(size + 1)
+                : conversationStore.findAfterByUpdated(cursor.at(), cursor.id(), size + 1);
+        return toPage(rows, size, conv -> new PageCursor(conv.getUpdatedAt(), conv.getId()));
     }
 
     public Mono<Conversation> createConversation(String title) {
-        return conversationRepo.save(Conversation.create(title));
+        return conversationStore.create(Conversation.create(title))
+                .doOnNext(versions::changed)
+                .doOnNext(conv -> eventBus.publish(new ConversationEvent.Created(conv)));
     }
 
     public Mono<ConversationWithMessages> getConversation(UUID id) {
-        return conversationRepo.findById(id)
-                .flatMap(conv ->
-                    messageRepo.findByConversationIdOrderByCreatedAtAsc(id)
-                            .collectList()
-                            .map(msgs -> new ConversationWithMessages(conv, msgs))
-                );
+        return messageWriter.flush(id).then(Mono.defer(() -> {
+            ConversationWithMessages cached = historyCache.getConversation(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long stamp = historyCache.stamp(id);
+            return conversationStore.findById(id)
+                    .flatMap(conv ->
+                        messageStore.findByConversationId(id)
+                                .collectList()
+                                .doOnNext(msgs -> historyCache.put(id, conv, msgs, stamp))
+                                .map(msgs -> new ConversationWithMessages(conv, msgs))
+                    );
+        }));
     }
 
     public Mono<Conversation> updateTitle(UUID id, String title) {
-        return conversationRepo.findById(id)
-                .flatMap(conv -> {
-                    conv.setTitle(title);
-                    conv.setUpdatedAt(Instant.now());
-                    return conversationRepo.save(conv);
-                });
+        return conversationStore.updateTitle(id, title)
+                .doOnNext(historyCache::updateConversation)
+                .doOnNext(versions::changed)
+                .doOnNext(conv -> eventBus.publish(new ConversationEvent.Updated(conv)));
     }
 
     public Mono<Void> deleteConversation(UUID id) {
-        return conversationRepo.deleteById(id);
+        return conversationStore.deleteById(id)
+                .doOnSuccess(v -> {
+                    historyCache.invalidate(id);
+                    versions.deleted(id);
+                    eventBus.publish(new ConversationEvent.Deleted(id));
+                });
     }
 
-    public Flux<Conversation> search(String query) {
-        return conversationRepo.searchByContent(query, 20);
+    /**
+     * Store a message and count it in a single statement, possibly batched with others
+     * (see {@link BatchedMessageWriter}). The message needs its id set.
+     * Returns the conversation as updated by the same statement.
+     */
+    public Mono<Conversation> addMessage(Message message) {
+        return messageWriter.write(message)
+                .doOnNext(conv -> {
+                    historyCache.append(message);
+                    historyCache.updateConversation(conv);
+                    versions.changed(conv);
+                    eventBus.publish(new ConversationEvent.MessageAdded(message));
+                    eventBus.publish(new ConversationEvent.Updated(conv));
+                });
     }
 
-    public Mono<Conversation> incrementMessageCount(UUID id) {
-        return conversationRepo.findById(id)
-                .flatMap(conv -> {
-                    conv.setMessageCount(conv.getMessageCount() + 1);
-                    conv.setUpdatedAt(Instant.now());
-                    return conversationRepo.save(conv);
-                });
+    /**
+     * Messages oldest first continuing after {@code cursor}, or with {@code newestFirst}
+     * newest first continuing before it. A null cursor starts at the respective end.
+     */
+    public Mono<CursorPage<Message>> getMessages(UUID conversationId, PageCursor cursor,
+                                                 boolean newestFirst, int size) {
+        Flux<Message> rows;
+        if (newestFirst) {
+            rows = cursor == null
+                    ? messageStore.findNewest(conversationId, size + 1)
+                    : messageStore.findBefore(conversationId, cursor.at(), cursor.id(), size + 1);
+        } else {
+            rows = cursor == null
+                    ? messageStore.findOldest(conversationId, size + 1)
+                    : messageStore.findAfter(conversationId, cursor.at(), cursor.id(), size + 1);
+        }
+        return messageWriter.flush(conversationId)
+                .then(toPage(rows, size, msg -> new PageCursor(msg.getCreatedAt(), msg.getId())));
+    }
+
+    /** One more row than {@code size} is fetched to tell whether another page follows. */
+    private static <T> Mono<CursorPage<T>> toPage(Flux<T> rows, int size, Function<T, PageCursor> cursorOf) {
+        return rows.collectList().map(items -> {
+            if (items.size() <= size) {
+                return new CursorPage<>(items, null);
+            }
+            List<T> page = items.subList(0, size);
+            return new CursorPage<>(page, cursorOf.apply(page.get(size - 1)).encode());
+        });
     }
 
     public Flux<Message> getMessages(UUID conversationId, int page, int size) {
-        return messageRepo.findByConversationIdPaged(conversationId, size, (long) page * size);
+        return messageWriter.flush(conversationId).thenMany(Flux.defer(() -> {
+            List<Message> cached = historyCache.getMessages(conversationId);
+            if (cached != null) {
+                long offset = (long) page * size;
+                if (offset >= cached.size()) {
+                    return Flux.empty();
+                }
+                return Flux.fromIterable(cached.subList((int) offset, (int) Math.min(cached.size(), offset + size)));
+            }
+            return messageStore.findByConversationIdPaged(conversationId, size, (long) page * size);
+        }));
     }
 }
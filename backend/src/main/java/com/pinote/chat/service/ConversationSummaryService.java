@@ -0,0 +1,96 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Message;
+import com.pinote.chat.storage.ConversationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Folds turns that fell out of the context window into the conversation's rolling summary.
+ * Runs in the background; at most one refresh per conversation is in flight.
+ */
+@Service
+public class ConversationSummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationSummaryService.class);
+
+    private static final int MAX_MESSAGE_CHARS = 800;
+    private static final int MAX_PROMPT_CHARS = 6000;
+
+    private final OllamaClient ollamaClient;
+    private final ConversationStore conversationStore;
+    private final OllamaScheduler scheduler;
+    private final OllamaResponseCache responseCache;
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummaryService(OllamaClient ollamaClient,
+                                      ConversationStore conversationStore,
+                                      OllamaScheduler scheduler,
+                                      OllamaResponseCache responseCache) {
+        this.ollamaClient = ollamaClient;
+        this.conversationStore = conversationStore;
+        this.scheduler = scheduler;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Start a background refresh that merges {@code newMessages} (oldest first) into
+     * {@code previousSummary}. Ignored if a refresh for this conversation is already running.
+     */
+    public void refreshAsync(UUID conversationId, String previousSummary, List<Message> newMessages) {
+        if (newMessages.isEmpty() || !inFlight.add(conversationId)) {
+            return;
+        }
+        Message last = newMessages.get(newMessages.size() - 1);
+
+        String prompt = buildPrompt(previousSummary, newMessages);
+        String model = ollamaClient.getCurrentModel();
+        responseCache.fetch(
+                        OllamaResponseCache.key(model, null, List.of(Map.of("role", "user", "content", prompt))),
+                        () -> scheduler.schedule(OllamaScheduler.Priority.BACKGROUND, model, conversationId,
+                                backend -> ollamaClient.generate(backend, model, prompt)),
+                        text -> text,
+                        text -> text)
+                .next()
+                .map(String::strip)
+                .filter(summary -> !summary.isBlank())
+                .flatMap(summary -> conversationStore.updateSummary(conversationId, summary, last.getCreatedAt()))
+                .doFinally(signal -> inFlight.remove(conversationId))
+                .subscribe(
+                        updated -> log.debug("Summary refreshed for {} up to {}", conversationId, last.getCreatedAt()),
+                        e -> log.warn("Summary refresh failed for {}: {}", conversationId, e.getMessage())
+                );
+    }
+
+    private String buildPrompt(String previousSummary, List<Message> newMessages) {
+        StringBuilder prompt = new StringBuilder(
+                "Update the summary of this conversation. Keep facts, names, decisions and open questions. " +
+                "Answer with the summary only, under 150 words, in the conversation's language.\n\n");
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            prompt.append("Current summary:\n").append(previousSummary).append("\n\n");
+        }
+        prompt.append("New messages:\n");
+        for (Message msg : newMessages) {
+            if (prompt.length() >= MAX_PROMPT_CHARS) {
+                break;
+            }
+            prompt.append(msg.getRole()).append(": ")
+                    .append(truncate(msg.getContent(), MAX_MESSAGE_CHARS))
+                    .append('\n');
+        }
+        prompt.append("\nUpdated summary:");
+        return prompt.toString();
+    }
+
+    private String truncate(String text, int maxLen) {
+        return text.length() <= maxLen ? text : text.substring(0, maxLen) + "...";
+    }
+}
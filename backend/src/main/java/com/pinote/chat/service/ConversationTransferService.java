@@ -0,0 +1,134 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.ConversationEvent;
+import com.pinote.chat.model.ExportRecord;
+import com.pinote.chat.model.ImportResult;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.storage.ConversationStore;
+import com.pinote.chat.storage.MessageStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Export and import of conversations as a stream of {@link ExportRecord}s: each conversation
+ * followed by its messages. Both directions hold only a bounded number of rows in memory,
+ * however long a conversation is.
+ */
+@Service
+public class ConversationTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationTransferService.class);
+
+    private static final Set<String> ROLES = Set.of("user", "assistant", "system");
+    private static final ImportResult NOTHING = new ImportResult(0, 0, 0);
+
+    private final ConversationStore conversationStore;
+    private final MessageStore messageStore;
+    private final BatchedMessageWriter messageWriter;
+    private final ConversationEventBus eventBus;
+    private final ConversationVersions versions;
+    private final int batchSize;
+
+    public ConversationTransferService(ConversationStore conversationStore,
+                                       MessageStore messageStore,
+                                       BatchedMessageWriter messageWriter,
+                                       ConversationEventBus eventBus,
+                                       ConversationVersions versions,
+                                       @Value("${app.storage.import.batch-size:100}") int batchSize) {
+        this.conversationStore = conversationStore;
+        this.messageStore = messageStore;
+        this.messageWriter = messageWriter;
+        this.eventBus = eventBus;
+        this.versions = versions;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** One conversation and its messages; empty if it does not exist. */
+    public Flux<ExportRecord> export(UUID id) {
+        return messageWriter.flush(id)
+                .then(conversationStore.findById(id))
+                .flatMapMany(this::records);
+    }
+
+    /** Every conversation, each followed by its messages. */
+    public Flux<ExportRecord> exportAll() {
+        return conversationStore.streamAll().concatMap(conv -> messageWriter.flush(conv.getId())
+                .thenMany(records(conv)), 1);
+    }
+
+    private Flux<ExportRecord> records(Conversation conv) {
+        return Flux.concat(
+                Mono.just(ExportRecord.ConversationRecord.of(conv)),
+                messageStore.stream(conv.getId()).map(ExportRecord.MessageRecord::of));
+    }
+
+    /**
+     * Import records as written by {@link #exportAll}. Conversations whose id already exists
+     * are skipped with their messages, so an import can be repeated. Messages are inserted in
+     * batches of {@code batch-size}. Malformed input fails with {@link IllegalArgumentException};
+     * conversations imported before that point are kept.
+     */
+    public Mono<ImportResult> importRecords(Flux<ExportRecord> records) {
+        return records
+                .windowUntil(r -> r instanceof ExportRecord.ConversationRecord, true)
+                .concatMap(window -> window.switchOnFirst((first, all) -> {
+                    if (!first.hasValue()) {
+                        return all.then(Mono.just(NOTHING));
+                    }
+                    if (!(first.get() instanceof ExportRecord.ConversationRecord record)) {
+                        return Mono.error(new IllegalArgumentException("Messages must follow their conversation"));
+                    }
+                    return importConversation(record.toConversation(), all.skip(1));
+                }).next())
+                .reduce(NOTHING, (a, b) -> new ImportResult(a.conversations() + b.conversations(),
+                        a.skipped() + b.skipped(), a.messages() + b.messages()))
+                .doOnNext(result -> {
+                    log.info("Imported {} conversations with {} messages, skipped {} existing",
+                            result.conversations(), result.messages(), result.skipped());
+                    if (result.conversations() > 0) {
+                        versions.reset();
+                        // Clients reload their lists, background indexers catch up
+                        eventBus.publish(new ConversationEvent.Resync());
+                    }
+                })
+                // Whatever was imported before the failure
+                .doOnError(e -> versions.reset());
+    }
+
+    private Mono<ImportResult> importConversation(Conversation conv, Flux<ExportRecord> rest) {
+        Flux<Message> messages = rest.map(r -> toMessage(r, conv.getId()));
+        return conversationStore.insertIfAbsent(conv).flatMap(inserted -> {
+            if (!inserted) {
+                return messages.then(Mono.just(new ImportResult(0, 1, 0)));
+            }
+            return messages.buffer(batchSize)
+                    .concatMap(messageStore::importAll)
+                    .reduce(0L, Long::sum)
+                    .map(n -> new ImportResult(1, 0, n));
+        });
+    }
+
+    private static Message toMessage(ExportRecord record, UUID conversationId) {
+        if (!(record instanceof ExportRecord.MessageRecord m)) {
+            throw new IllegalArgumentException("Expected a message");
+        }
+        if (m.conversationId() != null && !m.conversationId().equals(conversationId)) {
+            throw new IllegalArgumentException("Message " + m.id() + " follows conversation " + conversationId
+                    + " but belongs to " + m.conversationId());
+        }
+        if (!ROLES.contains(m.role())) {
+            throw new IllegalArgumentException("Message " + m.id() + " has unknown role " + m.role());
+        }
+        Message message = m.toMessage();
+        message.setConversationId(conversationId);
+        return message;
+    }
+}
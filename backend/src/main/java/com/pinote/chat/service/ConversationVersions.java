@@ -0,0 +1,122 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.ConversationWithMessages;
+import com.pinote.chat.storage.ConversationStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * ETags for conversation reads, so an unchanged conversation or list is answered with 304
+ * before any message rows are loaded. A conversation's tag comes from its {@code updated_at}
+ * and {@code message_count}, kept in a bounded LRU map that every write path updates; a miss
+ * costs one lookup of the conversation row. The list tag is a counter bumped by every change,
+ * prefixed with the start time so tags from before a restart never match.
+ */
+@Component
+public class ConversationVersions {
+
+    private final ConversationStore conversationStore;
+    private final int maxEntries;
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private final LinkedHashMap<UUID, String> tags = new LinkedHashMap<>(64, 0.75f, true);
+    private final Counter notModified;
+    private final Counter modified;
+    private long listVersion;
+
+    public ConversationVersions(ConversationStore conversationStore,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.cache.versions.max-entries:4096}") int maxEntries) {
+        this.conversationStore = conversationStore;
+        this.maxEntries = Math.max(16, maxEntries);
+
+        this.notModified = Counter.builder("chat.etag.requests")
+                .tag("result", "not_modified")
+                .register(meterRegistry);
+        this.modified = Counter.builder("chat.etag.requests")
+                .tag("result", "modified")
+                .register(meterRegistry);
+    }
+
+    /** Tag of a conversation, or empty if it does not exist. */
+    public Mono<String> etag(UUID id) {
+        String tag;
+        synchronized (this) {
+            tag = tags.get(id);
+        }
+        if (tag != null) {
+            return Mono.just(tag);
+        }
+        return conversationStore.findById(id).map(conv -> {
+            String loaded = tagOf(conv);
+            synchronized (this) {
+                // A write that landed meanwhile has the newer tag
+                tags.putIfAbsent(id, loaded);
+                trim();
+                return tags.get(id);
+            }
+        });
+    }
+
+    public synchronized String listEtag() {
+        return "\"l-" + epoch + "-" + listVersion + "\"";
+    }
+
+    /** Record the state of a conversation after a write. */
+    public synchronized void changed(Conversation conversation) {
+        tags.put(conversation.getId(), tagOf(conversation));
+        trim();
+        listVersion++;
+    }
+
+    public synchronized void deleted(UUID id) {
+        tags.remove(id);
+        listVersion++;
+    }
+
+    /** Forget everything, after writes that bypass the per-conversation paths such as an import. */
+    public synchronized void reset() {
+        tags.clear();
+        listVersion++;
+    }
+
+    /** Count a conditional request for the metrics. */
+    public void recordConditional(boolean wasNotModified) {
+        (wasNotModified ? notModified : modified).increment();
+    }
+
+    private void trim() {
+        while (tags.size() > maxEntries) {
+            Map.Entry<UUID, String> eldest = tags.entrySet().iterator().next();
+            tags.remove(eldest.getKey());
+        }
+    }
+
+    /**
+     * Tag of a conversation as read, counting the messages it came with rather than trusting its
+     * row: a history that missed a write gets an older tag than the current one.
+     */
+    public static String tagOf(ConversationWithMessages read) {
+        return tagOf(read.conversation(), read.messages().size());
+    }
+
+    private static String tagOf(Conversation conv) {
+        return tagOf(conv, conv.getMessageCount());
+    }
+
+    private static String tagOf(Conversation conv, int messageCount) {
+        Instant updated = conv.getUpdatedAt();
+        String at = updated != null
+                ? Long.toHexString(updated.getEpochSecond()) + "." + Integer.toHexString(updated.getNano())
+                : "0";
+        return "\"c-" + at + "-" + messageCount + "\"";
+    }
+}
@@ -0,0 +1,144 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.DeviceHistory;
+import com.pinote.chat.model.DeviceSample;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Samples the device once per {@code sample-seconds} in the background, however many clients
+ * are watching: the monitoring agent's stats, whether an Ollama backend is healthy (as last seen
+ * by the pool's refresh) and the generation speed since the previous sample. Samples are kept
+ * at full rate for the last minute, and averaged into 15-second and 5-minute buckets for the
+ * last hour and day; all dashboards share one live stream of them.
+ */
+@Component
+public class DeviceTelemetry {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceTelemetry.class);
+
+    private static final Duration AGENT_TIMEOUT = Duration.ofSeconds(3);
+
+    private final OllamaBackendPool pool;
+    private final InferenceMetrics inferenceMetrics;
+    private final WebClient agent;
+    private final Duration interval;
+    private final Map<String, TelemetryRing> ranges = new LinkedHashMap<>();
+    /** Replays the latest sample to each new subscriber, so none is missed between the two. */
+    private final Sinks.Many<DeviceSample> live = Sinks.many().replay().latest();
+    private volatile DeviceSample latest;
+    private Disposable sampler;
+
+    public DeviceTelemetry(OllamaBackendPool pool,
+                           InferenceMetrics inferenceMetrics,
+                           @Value("${app.ollama.base-url}") String ollamaBaseUrl,
+                           @Value("${app.device.sample-seconds:5}") int sampleSeconds) {
+        this.pool = pool;
+        this.inferenceMetrics = inferenceMetrics;
+        // Monitoring agent runs on the same host as Ollama, port 8085
+        this.agent = WebClient.builder()
+                .baseUrl(ollamaBaseUrl.replaceAll(":\\d+$", ":8085"))
+                .build();
+        this.interval = Duration.ofSeconds(Math.max(1, sampleSeconds));
+
+        long sampleMillis = interval.toMillis();
+        ranges.put("1m", ring(Duration.ofMinutes(1), 0, sampleMillis));
+        ranges.put("1h", ring(Duration.ofHours(1), Math.max(15_000, sampleMillis), sampleMillis));
+        ranges.put("24h", ring(Duration.ofDays(1), Math.max(300_000, sampleMillis), sampleMillis));
+    }
+
+    private static TelemetryRing ring(Duration range, long bucketMillis, long sampleMillis) {
+        long step = bucketMillis > 0 ? bucketMillis : sampleMillis;
+        return new TelemetryRing((int) Math.max(1, range.toMillis() / step), bucketMillis);
+    }
+
+    @PostConstruct
+    void start() {
+        sampler = Flux.interval(Duration.ZERO, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> sample())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sampler != null) {
+            sampler.dispose();
+        }
+    }
+
+    /** The most recent sample, or null before the first one. */
+    public DeviceSample latest() {
+        return latest;
+    }
+
+    /** The latest sample, then each new one. A client too slow to take one misses it. */
+    public Flux<DeviceSample> stream() {
+        return live.asFlux().onBackpressureLatest();
+    }
+
+    public Set<String> ranges() {
+        return ranges.keySet();
+    }
+
+    /** Samples over {@code range}, one of {@link #ranges()}. */
+    public DeviceHistory history(String range) {
+        TelemetryRing ring = ranges.get(range);
+        if (ring == null) {
+            throw new IllegalArgumentException("Unknown range: " + range);
+        }
+        long resolution = ring.bucketMillis() > 0 ? ring.bucketMillis() : interval.toMillis();
+        return new DeviceHistory(range, resolution, ring.samples());
+    }
+
+    private Mono<Void> sample() {
+        return agent.get()
+                .uri("/stats")
+                .retrieve()
+                .bodyToMono(Map.class)
+                .timeout(AGENT_TIMEOUT.compareTo(interval) < 0 ? AGENT_TIMEOUT : interval)
+                .onErrorResume(e -> {
+                    log.debug("Device monitoring agent not available: {}", e.getMessage());
+                    return Mono.just(Map.of());
+                })
+                .doOnNext(this::record)
+                .then();
+    }
+
+    private void record(Map<?, ?> stats) {
+        double[] sample = new double[TelemetryRing.FIELDS];
+        boolean online = pool.backends().stream().anyMatch(OllamaBackend::isHealthy);
+        sample[TelemetryRing.ONLINE] = online ? 1 : 0;
+        sample[TelemetryRing.CPU] = number(stats.get("cpu"));
+        sample[TelemetryRing.TEMPERATURE] = number(stats.get("temperature"));
+        sample[TelemetryRing.TEMPERATURE_MAX] = sample[TelemetryRing.TEMPERATURE];
+        sample[TelemetryRing.MEMORY_USED] = number(stats.get("memoryUsed"));
+        sample[TelemetryRing.MEMORY_TOTAL] = number(stats.get("memoryTotal"));
+        sample[TelemetryRing.TOKENS_PER_SECOND] = inferenceMetrics.drainTokensPerSecond();
+
+        long now = System.currentTimeMillis();
+        for (TelemetryRing ring : ranges.values()) {
+            ring.add(now, sample);
+        }
+        latest = TelemetryRing.toSample(now, sample, 0);
+        live.tryEmitNext(latest);
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number n && n.doubleValue() >= 0 ? n.doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,138 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.GenerationStats;
+import com.pinote.chat.model.OllamaChatChunk;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histograms of inference performance, tagged by model and backend. {@code ollama.inference.*}
+ * is what one backend did for one request: the times and counts Ollama reports with its final
+ * chunk, plus first token and the gaps between tokens as seen by the client. {@code chat.reply.*}
+ * is what the user saw for a chat turn, queueing included; replies that joined an identical
+ * request in flight are tagged with backend {@code shared}.
+ */
+@Component
+public class InferenceMetrics {
+
+    private static final Duration MAX_EXPECTED = Duration.ofMinutes(5);
+
+    private record Key(String model, String backend) {}
+
+    private final MeterRegistry registry;
+    private final Map<Key, Meters> meters = new ConcurrentHashMap<>();
+    // Generated tokens and eval time since the last drainTokensPerSecond
+    private long pendingTokens;
+    private long pendingEvalNanos;
+
+    public InferenceMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Time from sending the request to the first token from the backend. */
+    public void recordFirstToken(String model, OllamaBackend backend, long nanos) {
+        meters(model, backend.getBaseUrl()).firstToken.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordInterToken(String model, OllamaBackend backend, long nanos) {
+        meters(model, backend.getBaseUrl()).interToken.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** The durations and counts of a final chunk; fields Ollama left out are skipped. */
+    public void recordDone(String model, OllamaBackend backend, OllamaChatChunk done) {
+        Meters m = meters(model, backend.getBaseUrl());
+        record(m.total, done.totalDuration());
+        record(m.load, done.loadDuration());
+        record(m.promptEval, done.promptEvalDuration());
+        record(m.eval, done.evalDuration());
+        if (done.promptEvalCount() != null) {
+            m.promptTokens.record(done.promptEvalCount());
+        }
+        if (done.evalCount() != null) {
+            m.completionTokens.record(done.evalCount());
+            if (done.evalDuration() != null && done.evalDuration() > 0) {
+                m.tokensPerSecond.record(done.evalCount() * 1e9 / done.evalDuration());
+                synchronized (this) {
+                    pendingTokens += done.evalCount();
+                    pendingEvalNanos += done.evalDuration();
+                }
+            }
+        }
+    }
+
+    /** Generation speed over everything finished since the last call, or NaN if nothing was. */
+    public synchronized double drainTokensPerSecond() {
+        double speed = pendingEvalNanos > 0 ? pendingTokens * 1e9 / pendingEvalNanos : Double.NaN;
+        pendingTokens = 0;
+        pendingEvalNanos = 0;
+        return speed;
+    }
+
+    /** A finished chat turn, from its stats. */
+    public void recordReply(GenerationStats stats) {
+        Meters m = meters(stats.model(), stats.backend() != null ? stats.backend() : "shared");
+        if (stats.firstTokenMillis() != null) {
+            m.replyFirstToken.record(stats.firstTokenMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (stats.totalMillis() != null) {
+            m.replyDuration.record(stats.totalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void record(Timer timer, Long nanos) {
+        if (nanos != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Meters meters(String model, String backend) {
+        return meters.computeIfAbsent(new Key(String.valueOf(model), backend), this::register);
+    }
+
+    private Meters register(Key key) {
+        return new Meters(
+                timer("ollama.inference.first_token", "Time to the first token from the backend", key),
+                timer("ollama.inference.inter_token", "Time between consecutive tokens", key),
+                timer("ollama.inference.total", "Total request time reported by Ollama", key),
+                timer("ollama.inference.load", "Model load time reported by Ollama", key),
+                timer("ollama.inference.prompt_eval", "Prompt evaluation time reported by Ollama", key),
+                timer("ollama.inference.eval", "Generation time reported by Ollama", key),
+                summary("ollama.inference.prompt_tokens", "Prompt tokens evaluated", "tokens", 131072, key),
+                summary("ollama.inference.completion_tokens", "Tokens generated", "tokens", 131072, key),
+                summary("ollama.inference.tokens_per_second", "Generation speed", null, 1000, key),
+                timer("chat.reply.first_token", "Time from a chat turn to its first token", key),
+                timer("chat.reply.duration", "Time from a chat turn to its last token", key));
+    }
+
+    private Timer timer(String name, String description, Key key) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("model", key.model())
+                .tag("backend", key.backend())
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry);
+    }
+
+    private DistributionSummary summary(String name, String description, String unit, double max, Key key) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(unit)
+                .tag("model", key.model())
+                .tag("backend", key.backend())
+                .publishPercentileHistogram()
+                .maximumExpectedValue(max)
+                .register(registry);
+    }
+
+    private record Meters(Timer firstToken, Timer interToken, Timer total, Timer load, Timer promptEval,
+                          Timer eval, DistributionSummary promptTokens, DistributionSummary completionTokens,
+                          DistributionSummary tokensPerSecond, Timer replyFirstToken, Timer replyDuration) {}
+}
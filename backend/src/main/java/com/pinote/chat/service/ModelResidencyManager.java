@@ -0,0 +1,321 @@
+package com.pinote.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the models people are using resident on the Ollama backends.
+ * The active model is preloaded when it is switched to or pulled, so the first chat does not
+ * pay the load; preloads queue in the scheduler at background priority. {@code keep_alive}
+ * grows with a model's recent traffic. When the models resident on a backend exceed
+ * {@code memory-budget-mb}, idle ones are unloaded, least recently used first; the active
+ * model is never unloaded.
+ */
+@Component
+public class ModelResidencyManager {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelResidencyManager.class);
+
+    private static final long TRAFFIC_WINDOW_MILLIS = Duration.ofHours(1).toMillis();
+    private static final int MAX_TRACKED_REQUESTS = 1000;
+    private static final long COLD_LOAD_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final OllamaBackendPool pool;
+    private final OllamaScheduler scheduler;
+    private final long minKeepAliveMinutes;
+    private final long maxKeepAliveMinutes;
+    private final int busyRequestsPerHour;
+    private final long memoryBudgetBytes;
+    private final long idleUnloadMillis;
+    private final Duration checkInterval;
+    private final Map<String, ArrayDeque<Long>> recentRequests = new ConcurrentHashMap<>();
+    private final Map<String, LoadStats> loads = new ConcurrentHashMap<>();
+    private final Set<String> preloading = ConcurrentHashMap.newKeySet();
+    private volatile String activeModel;
+    private Disposable checker;
+
+    public ModelResidencyManager(OllamaBackendPool pool,
+                                 OllamaScheduler scheduler,
+                                 @Value("${app.ollama.model}") String activeModel,
+                                 @Value("${app.ollama.residency.min-keep-alive-minutes:5}") long minKeepAliveMinutes,
+                                 @Value("${app.ollama.residency.max-keep-alive-minutes:60}") long maxKeepAliveMinutes,
+                                 @Value("${app.ollama.residency.busy-requests-per-hour:20}") int busyRequestsPerHour,
+                                 @Value("${app.ollama.residency.memory-budget-mb:0}") long memoryBudgetMb,
+                                 @Value("${app.ollama.residency.idle-unload-minutes:10}") long idleUnloadMinutes,
+                                 @Value("${app.ollama.refresh-seconds:10}") int checkSeconds) {
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.activeModel = activeModel;
+        this.minKeepAliveMinutes = minKeepAliveMinutes;
+        this.maxKeepAliveMinutes = Math.max(minKeepAliveMinutes, maxKeepAliveMinutes);
+        this.busyRequestsPerHour = Math.max(1, busyRequestsPerHour);
+        this.memoryBudgetBytes = memoryBudgetMb * 1024 * 1024;
+        this.idleUnloadMillis = Duration.ofMinutes(idleUnloadMinutes).toMillis();
+        this.checkInterval = Duration.ofSeconds(checkSeconds);
+    }
+
+    @PostConstruct
+    void start() {
+        preloadAsync(activeModel);
+        if (memoryBudgetBytes > 0) {
+            checker = Flux.interval(checkInterval, checkInterval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> enforceMemoryBudget())
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (checker != null) {
+            checker.dispose();
+        }
+    }
+
+    /** Note an inference request for {@code model}. */
+    public void recordUse(String model) {
+        ArrayDeque<Long> requests = recentRequests.computeIfAbsent(model, m -> new ArrayDeque<>());
+        long now = System.currentTimeMillis();
+        synchronized (requests) {
+            requests.addLast(now);
+            trim(requests, now);
+        }
+    }
+
+    /**
+     * {@code keep_alive} for a request: the minimum for a model nobody is using,
+     * growing linearly to the maximum at {@code busy-requests-per-hour}.
+     */
+    public String keepAlive(String model) {
+        int perHour = requestsLastHour(model);
+        long minutes = minKeepAliveMinutes
+                + (maxKeepAliveMinutes - minKeepAliveMinutes) * Math.min(perHour, busyRequestsPerHour) / busyRequestsPerHour;
+        return minutes + "m";
+    }
+
+    /** Record the load time Ollama reported for a request or preload, in nanoseconds. */
+    public void recordLoad(OllamaBackend backend, String model, Long loadDurationNanos) {
+        if (loadDurationNanos == null) {
+            return;
+        }
+        LoadStats stats = loads.computeIfAbsent(backend.getBaseUrl() + "|" + model, k -> new LoadStats());
+        synchronized (stats) {
+            stats.lastLoadMillis = loadDurationNanos / 1_000_000;
+            if (loadDurationNanos >= COLD_LOAD_NANOS) {
+                stats.coldLoads++;
+                stats.lastColdLoadMillis = stats.lastLoadMillis;
+                stats.lastColdLoadAt = Instant.now();
+            }
+        }
+    }
+
+    /** Make {@code model} the active one and start loading it on every healthy backend. */
+    public void activate(String model) {
+        activeModel = model;
+        preloadAsync(model);
+    }
+
+    public void preloadAsync(String model) {
+        preload(model).subscribe();
+    }
+
+    /** Load {@code model} on every healthy backend that does not already have it resident. */
+    public Mono<Void> preload(String model) {
+        return Flux.fromIterable(pool.backends())
+                .filter(backend -> backend.isHealthy() && !backend.hasModelLoaded(model))
+                .flatMap(backend -> preload(backend, model))
+                .then();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Void> preload(OllamaBackend backend, String model) {
+        String key = backend.getBaseUrl() + "|" + model;
+        if (!preloading.add(key)) {
+            return Mono.empty();
+        }
+        log.info("Preloading model {} on {}", model, backend);
+        // A generate request without a prompt only loads the model
+        return scheduler.scheduleOn(backend, OllamaScheduler.Priority.BACKGROUND, model, b -> b.getClient().post()
+                        .uri("/api/generate")
+                        .bodyValue(Map.of("model", model, "keep_alive", keepAlive(model)))
+                        .retrieve()
+                        .bodyToMono(Map.class))
+                .doOnNext(resp -> {
+                    Object loadDuration = resp.get("load_duration");
+                    if (loadDuration instanceof Number n) {
+                        recordLoad(backend, model, n.longValue());
+                    }
+                    backend.noteModelUsed(model);
+                    log.info("Model {} resident on {}", model, backend);
+                })
+                .onErrorResume(e -> {
+                    log.warn("Preloading {} on {} failed: {}", model, backend, e.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> preloading.remove(key))
+                .then();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("activeModel", activeModel);
+        status.put("memoryBudgetBytes", memoryBudgetBytes);
+
+        List<Map<String, Object>> models = new ArrayList<>();
+        for (String model : recentRequests.keySet()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("model", model);
+            entry.put("requestsLastHour", requestsLastHour(model));
+            entry.put("keepAlive", keepAlive(model));
+            long lastUsed = lastUsedMillis(model);
+            entry.put("lastUsedAt", lastUsed > 0 ? Instant.ofEpochMilli(lastUsed) : null);
+            models.add(entry);
+        }
+        status.put("models", models);
+
+        List<Map<String, Object>> backends = new ArrayList<>();
+        for (OllamaBackend backend : pool.backends()) {
+            List<Map<String, Object>> resident = new ArrayList<>();
+            for (Map<String, Object> running : backend.getRunningModels()) {
+                Object name = running.get("name");
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("model", name);
+                entry.put("size", running.get("size"));
+                entry.put("expiresAt", running.get("expires_at"));
+                LoadStats stats = loads.get(backend.getBaseUrl() + "|" + name);
+                if (stats != null) {
+                    synchronized (stats) {
+                        entry.put("lastLoadMs", stats.lastLoadMillis);
+                        entry.put("lastColdLoadMs", stats.lastColdLoadMillis);
+                        entry.put("lastColdLoadAt", stats.lastColdLoadAt);
+                        entry.put("coldLoads", stats.coldLoads);
+                    }
+                }
+                resident.add(entry);
+            }
+            List<String> loading = preloading.stream()
+                    .filter(key -> key.startsWith(backend.getBaseUrl() + "|"))
+                    .map(key -> key.substring(backend.getBaseUrl().length() + 1))
+                    .toList();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("url", backend.getBaseUrl());
+            entry.put("residentBytes", residentBytes(backend));
+            entry.put("resident", resident);
+            entry.put("preloading", loading);
+            backends.add(entry);
+        }
+        status.put("backends", backends);
+        return status;
+    }
+
+    private Mono<Void> enforceMemoryBudget() {
+        return Flux.fromIterable(pool.backends())
+                .filter(OllamaBackend::isHealthy)
+                .concatMap(this::enforceMemoryBudget)
+                .then();
+    }
+
+    private Mono<Void> enforceMemoryBudget(OllamaBackend backend) {
+        long resident = residentBytes(backend);
+        if (resident <= memoryBudgetBytes) {
+            return Mono.empty();
+        }
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> victims = new ArrayList<>();
+        List<Map<String, Object>> idle = backend.getRunningModels().stream()
+                .filter(m -> !String.valueOf(m.get("name")).equals(activeModel))
+                .filter(m -> now - lastUsedMillis(String.valueOf(m.get("name"))) >= idleUnloadMillis)
+                .sorted(Comparator.comparingLong(m -> lastUsedMillis(String.valueOf(m.get("name")))))
+                .toList();
+        for (Map<String, Object> m : idle) {
+            if (resident <= memoryBudgetBytes) {
+                break;
+            }
+            victims.add(m);
+            resident -= sizeOf(m);
+        }
+        return Flux.fromIterable(victims)
+                .concatMap(m -> unload(backend, String.valueOf(m.get("name"))))
+                .then();
+    }
+
+    private Mono<Void> unload(OllamaBackend backend, String model) {
+        log.info("Unloading idle model {} from {} to stay within the memory budget", model, backend);
+        return backend.getClient().post()
+                .uri("/api/generate")
+                .bodyValue(Map.of("model", model, "keep_alive", 0))
+                .retrieve()
+                .toBodilessEntity()
+                .onErrorResume(e -> {
+                    log.warn("Unloading {} from {} failed: {}", model, backend, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private int requestsLastHour(String model) {
+        ArrayDeque<Long> requests = recentRequests.get(model);
+        if (requests == null) {
+            return 0;
+        }
+        synchronized (requests) {
+            trim(requests, System.currentTimeMillis());
+            return requests.size();
+        }
+    }
+
+    private long lastUsedMillis(String model) {
+        ArrayDeque<Long> requests = recentRequests.get(model);
+        if (requests == null) {
+            return 0;
+        }
+        synchronized (requests) {
+            Long last = requests.peekLast();
+            return last != null ? last : 0;
+        }
+    }
+
+    private static long residentBytes(OllamaBackend backend) {
+        long total = 0;
+        for (Map<String, Object> m : backend.getRunningModels()) {
+            total += sizeOf(m);
+        }
+        return total;
+    }
+
+    private static long sizeOf(Map<String, Object> runningModel) {
+        return runningModel.get("size") instanceof Number n ? n.longValue() : 0;
+    }
+
+    private static void trim(ArrayDeque<Long> requests, long now) {
+        while (!requests.isEmpty()
+                && (now - requests.peekFirst() > TRAFFIC_WINDOW_MILLIS || requests.size() > MAX_TRACKED_REQUESTS)) {
+            requests.pollFirst();
+        }
+    }
+
+    private static final class LoadStats {
+        long lastLoadMillis;
+        long lastColdLoadMillis;
+        Instant lastColdLoadAt;
+        long coldLoads;
+    }
+}
@@ -0,0 +1,148 @@
+package com.pinote.chat.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental NDJSON decoder working on raw bytes.
+ * Records are framed on '\n' and fed to Jackson's non-blocking parser, so an object
+ * split across two network buffers is reassembled instead of dropped, and no
+ * intermediate String is built per line.
+ * Not thread-safe: use one instance per response body.
+ */
+public final class NdjsonDecoder<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(NdjsonDecoder.class);
+
+    private static final byte NEWLINE = '\n';
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader reader;
+
+    private JsonParser parser;
+    private ByteArrayFeeder feeder;
+    private TokenBuffer tokens;
+    private int depth;
+    private boolean skipLine;
+    private byte[] scratch = new byte[4096];
+
+    public NdjsonDecoder(ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.reader = objectMapper.readerFor(type);
+        resetParser();
+    }
+
+    /**
+     * Decode every record completed by this buffer and release it.
+     * Bytes of a trailing partial record are kept until the next buffer arrives.
+     */
+    public List<T> decode(DataBuffer buffer) {
+        List<T> out = null;
+        try {
+            int length = buffer.readableByteCount();
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.read(scratch, 0, length);
+
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (scratch[i] == NEWLINE) {
+                    out = feed(scratch, lineStart, i + 1, out);
+                    endOfLine();
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart < length) {
+                out = feed(scratch, lineStart, length, out);
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return out != null ? out : List.of();
+    }
+
+    public void close() {
+        closeParser();
+    }
+
+    private List<T> feed(byte[] bytes, int start, int end, List<T> out) {
+        if (skipLine || start == end) {
+            return out;
+        }
+        try {
+            feeder.feedInput(bytes, start, end);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (tokens == null) {
+                    tokens = new TokenBuffer(parser);
+                }
+                tokens.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                }
+                if (depth == 0) {
+                    T value = reader.readValue(tokens.asParser());
+                    tokens = null;
+                    if (value != null) {
+                        if (out == null) {
+                            out = new ArrayList<>(2);
+                        }
+                        out.add(value);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Skip unparseable NDJSON record: {}", e.getMessage());
+            skipLine = true;
+            resetParser();
+        }
+        return out;
+    }
+
+    private void endOfLine() {
+        if (skipLine) {
+            skipLine = false;
+        } else if (depth != 0) {
+            // NDJSON records never span lines; drop the truncated one and resync
+            log.debug("Skip truncated NDJSON record");
+            resetParser();
+        }
+    }
+
+    private void resetParser() {
+        closeParser();
+        try {
+            parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create non-blocking JSON parser", e);
+        }
+        feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        tokens = null;
+        depth = 0;
+    }
+
+    private void closeParser() {
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // nothing buffered worth reporting
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.pinote.chat.service;
+
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Ollama server in the pool, with the state used for routing:
+ * health, requests in flight, and the models it currently has loaded.
+ */
+public class OllamaBackend {
+
+    private final String baseUrl;
+    private final WebClient client;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean healthy = true;
+    private volatile Set<String> loadedModels = Set.of();
+    private volatile List<Map<String, Object>> runningModels = List.of();
+    private volatile Instant lastCheckedAt;
+
+    public OllamaBackend(String baseUrl, WebClient client) {
+        this.baseUrl = baseUrl;
+        this.client = client;
+    }
+
+    public String getBaseUrl() { return baseUrl; }
+    public WebClient getClient() { return client; }
+    public boolean isHealthy() { return healthy; }
+    public int getInFlight() { return inFlight.get(); }
+    public Set<String> getLoadedModels() { return loadedModels; }
+    public List<Map<String, Object>> getRunningModels() { return runningModels; }
+    public Instant getLastCheckedAt() { return lastCheckedAt; }
+
+    public boolean hasModelLoaded(String model) {
+        return model != null && loadedModels.contains(model);
+    }
+
+    void markHealthy(List<Map<String, Object>> runningModels, Set<String> loadedModels) {
+        this.runningModels = runningModels;
+        this.loadedModels = loadedModels;
+        this.healthy = true;
+        this.lastCheckedAt = Instant.now();
+    }
+
+    void markUnhealthy() {
+        this.healthy = false;
+        this.loadedModels = Set.of();
+        this.runningModels = List.of();
+        this.lastCheckedAt = Instant.now();
+    }
+
+    /** Assume a model is warm once a request for it was routed here, until the next refresh says otherwise. */
+    void noteModelUsed(String model) {
+        if (model != null && !loadedModels.contains(model)) {
+            Set<String> updated = new HashSet<>(loadedModels);
+            updated.add(model);
+            loadedModels = Set.copyOf(updated);
+        }
+    }
+
+    int acquire() {
+        return inFlight.incrementAndGet();
+    }
+
+    int release() {
+        return inFlight.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl;
+    }
+}
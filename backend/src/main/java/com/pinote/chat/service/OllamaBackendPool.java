@@ -0,0 +1,180 @@
+package com.pinote.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The set of Ollama servers requests can be routed to.
+ * Health and loaded models are refreshed from {@code /api/ps} in the background.
+ * A conversation sticks to the backend that served it while that backend stays healthy,
+ * so its warm model and KV cache keep being reused.
+ */
+@Component
+public class OllamaBackendPool {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaBackendPool.class);
+
+    private static final int MAX_AFFINITY_ENTRIES = 1024;
+
+    private final List<OllamaBackend> backends;
+    private final Duration refreshInterval;
+    private final Map<Object, OllamaBackend> affinity = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, OllamaBackend> eldest) {
+            return size() > MAX_AFFINITY_ENTRIES;
+        }
+    };
+    private Disposable refresher;
+
+    public OllamaBackendPool(WebClient ollamaWebClient,
+                             @Value("${app.ollama.base-url}") String baseUrl,
+                             @Value("${app.ollama.base-urls:}") String baseUrls,
+                             @Value("${app.ollama.refresh-seconds:10}") int refreshSeconds) {
+        String urls = baseUrls.isBlank() ? baseUrl : baseUrls;
+        this.backends = Arrays.stream(urls.split(","))
+                .map(String::strip)
+                .filter(url -> !url.isEmpty())
+                .distinct()
+                .map(url -> new OllamaBackend(url, ollamaWebClient.mutate().baseUrl(url).build()))
+                .toList();
+        if (backends.isEmpty()) {
+            throw new IllegalStateException("app.ollama.base-urls must list at least one Ollama server");
+        }
+        this.refreshInterval = Duration.ofSeconds(refreshSeconds);
+    }
+
+    @PostConstruct
+    void start() {
+        refresher = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+    }
+
+    public List<OllamaBackend> backends() {
+        return backends;
+    }
+
+    /**
+     * Choose a backend for a request, or null if none that may serve it has capacity.
+     * The conversation's previous backend wins while healthy; another backend is used
+     * instead only if it already has the model loaded. Without affinity, healthy backends
+     * with the model loaded and the fewest requests in flight are preferred.
+     */
+    public OllamaBackend select(String model, Object affinityKey, Predicate<OllamaBackend> hasCapacity) {
+        synchronized (affinity) {
+            OllamaBackend sticky = affinityKey != null ? affinity.get(affinityKey) : null;
+            if (sticky != null && !sticky.isHealthy()) {
+                sticky = null;
+            }
+
+            OllamaBackend chosen;
+            if (sticky != null) {
+                chosen = hasCapacity.test(sticky) ? sticky : bestOf(model, hasCapacity, true);
+            } else {
+                chosen = bestOf(model, hasCapacity, false);
+            }
+            if (chosen != null && affinityKey != null) {
+                affinity.put(affinityKey, chosen);
+            }
+            return chosen;
+        }
+    }
+
+    public List<Map<String, Object>> status() {
+        List<Map<String, Object>> status = new ArrayList<>(backends.size());
+        for (OllamaBackend backend : backends) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("url", backend.getBaseUrl());
+            entry.put("healthy", backend.isHealthy());
+            entry.put("inFlight", backend.getInFlight());
+            entry.put("loadedModels", backend.getLoadedModels());
+            entry.put("lastCheckedAt", backend.getLastCheckedAt());
+            status.add(entry);
+        }
+        return status;
+    }
+
+    private OllamaBackend bestOf(String model, Predicate<OllamaBackend> hasCapacity, boolean requireLoaded) {
+        List<OllamaBackend> candidates = backends.stream()
+                .filter(hasCapacity)
+                .filter(b -> !requireLoaded || b.hasModelLoaded(model))
+                .toList();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Comparator<OllamaBackend> order = Comparator
+                .comparing((OllamaBackend b) -> !b.isHealthy())
+                .thenComparing(b -> !b.hasModelLoaded(model))
+                .thenComparingInt(OllamaBackend::getInFlight);
+        OllamaBackend best = candidates.stream().min(order).get();
+        // Unhealthy backends are only a last resort, when every backend looks down
+        return best.isHealthy() || backends.stream().noneMatch(OllamaBackend::isHealthy) ? best : null;
+    }
+
+    private Mono<Void> refresh() {
+        return Flux.fromIterable(backends)
+                .flatMap(this::refresh)
+                .then();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Void> refresh(OllamaBackend backend) {
+        return backend.getClient().get()
+                .uri("/api/ps")
+                .retrieve()
+                .bodyToMono(Map.class)
+                .timeout(Duration.ofSeconds(5))
+                .doOnNext(ps -> {
+                    List<Map<String, Object>> running =
+                            (List<Map<String, Object>>) ps.getOrDefault("models", List.of());
+                    Set<String> loaded = new HashSet<>();
+                    for (Map<String, Object> m : running) {
+                        if (m.get("name") != null) {
+                            loaded.add(m.get("name").toString());
+                        }
+                        if (m.get("model") != null) {
+                            loaded.add(m.get("model").toString());
+                        }
+                    }
+                    if (!backend.isHealthy()) {
+                        log.info("Ollama backend {} is back online", backend);
+                    }
+                    backend.markHealthy(running, Set.copyOf(loaded));
+                })
+                .onErrorResume(e -> {
+                    if (backend.isHealthy()) {
+                        log.warn("Ollama backend {} is unreachable: {}", backend, e.getMessage());
+                    }
+                    backend.markUnhealthy();
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,12 @@
+package com.pinote.chat.service;
+
+/**
+ * Raised when the Ollama request queue is full and a request is turned away
+ * instead of waiting behind the backlog.
+ */
+public class OllamaBusyException extends RuntimeException {
+
+    public OllamaBusyException(String message) {
+        super(message);
+    }
+}
@@ -2,17 +2,19 @@ package com.pinote.chat.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pinote.chat.model.OllamaChatChunk;
+import com.pinote.chat.model.OllamaPullProgress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,74 +23,146 @@ public class OllamaClient {
 
     private static final Logger log = LoggerFactory.getLogger(OllamaClient.class);
 
-    private final WebClient ollamaWebClient;
+    private final OllamaBackendPool pool;
     private final ObjectMapper objectMapper;
+    private final ModelResidencyManager residency;
+    private final InferenceMetrics metrics;
     private volatile String model;
 
-    public OllamaClient(WebClient ollamaWebClient,
+    public OllamaClient(OllamaBackendPool pool,
                          ObjectMapper objectMapper,
+                         ModelResidencyManager residency,
+                         InferenceMetrics metrics,
                          @Value("${app.ollama.model}") String model) {
-        this.ollamaWebClient = ollamaWebClient;
+        this.pool = pool;
         this.objectMapper = objectMapper;
+        this.residency = residency;
+        this.metrics = metrics;
         this.model = model;
     }
 
+    /** Switch the active model and start loading it, so the next chat does not wait for the load. */
     public void setCurrentModel(String model) {
         this.model = model;
+        residency.activate(model);
         log.info("Active model switched to: {}", model);
     }
 
     /**
-     * Streaming chat: returns NDJSON chunks parsed into OllamaChatChunk.
+     * Streaming chat on the given backend: returns NDJSON chunks parsed into OllamaChatChunk.
+     * Time to first token, the gaps between tokens and the final chunk's statistics go to
+     * {@link InferenceMetrics}.
      */
-    public Flux<OllamaChatChunk> chatStream(List<Map<String, String>> messages) {
+    public Flux<OllamaChatChunk> chatStream(OllamaBackend backend, String model, List<Map<String, String>> messages) {
+        residency.recordUse(model);
         Map<String, Object> body = Map.of(
                 "model", model,
                 "messages", messages,
-                "stream", true
+                "stream", true,
+                "keep_alive", residency.keepAlive(model)
         );
 
-        return ollamaWebClient.post()
-                .uri("/api/chat")
-                .bodyValue(body)
-                .retrieve()
-                .bodyToFlux(DataBuffer.class)
-                .map(buffer -> {
-                    String text = buffer.toString(StandardCharsets.UTF_8);
-                    DataBufferUtils.release(buffer);
-                    return text;
-                })
-                .flatMap(this::parseNdjsonLines);
+        return Flux.defer(() -> {
+            long sentAt = System.nanoTime();
+            long[] lastTokenAt = {0};
+            return backend.getClient().post()
+                    .uri("/api/chat")
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .transform(buffers -> decodeNdjson(buffers, OllamaChatChunk.class))
+                    .doOnNext(chunk -> {
+                        if (chunk.message() != null && chunk.message().content() != null
+                                && !chunk.message().content().isEmpty()) {
+                            long now = System.nanoTime();
+                            if (lastTokenAt[0] == 0) {
+                                metrics.recordFirstToken(model, backend, now - sentAt);
+                            } else {
+                                metrics.recordInterToken(model, backend, now - lastTokenAt[0]);
+                            }
+                            lastTokenAt[0] = now;
+                        }
+                        if (chunk.done()) {
+                            residency.recordLoad(backend, model, chunk.loadDuration());
+                            metrics.recordDone(model, backend, chunk);
+                        }
+                    });
+        }).doOnError(WebClientRequestException.class, e -> backend.markUnhealthy());
     }
 
     /**
-     * Non-streaming call for title generation.
+     * Non-streaming call for background prompts (titles, summaries).
      */
-    public Mono<String> generate(String prompt) {
+    public Mono<String> generate(OllamaBackend backend, String model, String prompt) {
+        residency.recordUse(model);
         Map<String, Object> body = Map.of(
                 "model", model,
                 "messages", List.of(Map.of("role", "user", "content", prompt)),
-                "stream", false
+                "stream", false,
+                "keep_alive", residency.keepAlive(model)
         );
 
-        return ollamaWebClient.post()
+        return backend.getClient().post()
                 .uri("/api/chat")
                 .bodyValue(body)
                 .retrieve()
-                .bodyToMono(Map.class)
+                .bodyToMono(OllamaChatChunk.class)
                 .map(resp -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, String> msg = (Map<String, String>) resp.get("message");
-                    return msg != null ? msg.getOrDefault("content", "") : "";
+                    residency.recordLoad(backend, model, resp.loadDuration());
+                    metrics.recordDone(model, backend, resp);
+                    return resp.message() != null && resp.message().content() != null ? resp.message().content() : "";
                 })
+                .doOnError(WebClientRequestException.class, e -> backend.markUnhealthy())
                 .onErrorResume(e -> {
-                    log.warn("Title generation failed: {}", e.getMessage());
+                    log.warn("Generate request failed on {}: {}", backend, e.getMessage());
                     return Mono.just("");
                 });
     }
 
+    /**
+     * Embed each of {@code inputs} in one request; vectors come back in input order.
+     * Errors are passed on, so callers can retry the batch.
+     */
+    @SuppressWarnings("unchecked")
+    public Mono<List<float[]>> embed(OllamaBackend backend, String model, List<String> inputs) {
+        residency.recordUse(model);
+        Map<String, Object> body = Map.of(
+                "model", model,
+                "input", inputs,
+                "keep_alive", residency.keepAlive(model)
+        );
+
+        return backend.getClient().post()
+                .uri("/api/embed")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(Map.class)
+                .map(resp -> {
+                    List<float[]> vectors = new ArrayList<>();
+                    for (List<Number> embedding : (List<List<Number>>) resp.getOrDefault("embeddings", List.of())) {
+                        float[] vector = new float[embedding.size()];
+                        for (int i = 0; i < vector.length; i++) {
+                            vector[i] = embedding.get(i).floatValue();
+                        }
+                        vectors.add(vector);
+                    }
+                    if (vectors.size() != inputs.size()) {
+                        throw new IllegalStateException("Expected " + inputs.size() + " embeddings, got " + vectors.size());
+                    }
+                    return vectors;
+                })
+                .doOnError(WebClientRequestException.class, e -> backend.markUnhealthy());
+    }
+
+    /** True if any backend in the pool answers. */
     public Mono<Boolean> isReachable() {
-        return ollamaWebClient.get()
+        return Flux.fromIterable(pool.backends())
+                .flatMap(this::isReachable)
+                .any(reachable -> reachable);
+    }
+
+    public Mono<Boolean> isReachable(OllamaBackend backend) {
+        return backend.getClient().get()
                 .uri("/")
                 .retrieve()
                 .toBodilessEntity()
@@ -96,70 +170,106 @@ public class OllamaClient {
                 .onErrorResume(e -> Mono.just(false));
     }
 
-    @SuppressWarnings("rawtypes")
+    /** Models installed on any backend, de-duplicated by name. */
+    @SuppressWarnings({"rawtypes", "unchecked"})
     public Mono<Map> listModels() {
-        return ollamaWebClient.get()
-                .uri("/api/tags")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .onErrorResume(e -> {
-                    log.warn("Failed to list models: {}", e.getMessage());
-                    return Mono.just(Map.of("models", List.of()));
-                });
+        return Flux.fromIterable(pool.backends())
+                .flatMapSequential(backend -> backend.getClient().get()
+                        .uri("/api/tags")
+                        .retrieve()
+                        .bodyToMono(Map.class)
+                        .onErrorResume(e -> {
+                            log.warn("Failed to list models on {}: {}", backend, e.getMessage());
+                            return Mono.just(Map.of("models", List.of()));
+                        }))
+                .collectList()
+                .map(responses -> Map.of("models", mergeByName(responses)));
     }
 
-    @SuppressWarnings("rawtypes")
+    /** Models loaded on any backend, each tagged with the backend URL. */
+    @SuppressWarnings({"rawtypes", "unchecked"})
     public Mono<Map> listRunningModels() {
-        return ollamaWebClient.get()
-                .uri("/api/ps")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .onErrorResume(e -> {
-                    log.warn("Failed to list running models: {}", e.getMessage());
-                    return Mono.just(Map.of("models", List.of()));
+        return Flux.fromIterable(pool.backends())
+                .flatMapSequential(backend -> backend.getClient().get()
+                        .uri("/api/ps")
+                        .retrieve()
+                        .bodyToMono(Map.class)
+                        .map(ps -> {
+                            List<Map<String, Object>> tagged = new ArrayList<>();
+                            for (Map<String, Object> m : (List<Map<String, Object>>) ps.getOrDefault("models", List.of())) {
+                                Map<String, Object> copy = new LinkedHashMap<>(m);
+                                copy.put("backend", backend.getBaseUrl());
+                                tagged.add(copy);
+                            }
+                            return tagged;
+                        })
+                        .onErrorResume(e -> {
+                            log.warn("Failed to list running models on {}: {}", backend, e.getMessage());
+                            return Mono.just(List.of());
+                        }))
+                .collectList()
+                .map(lists -> {
+                    List<Map<String, Object>> all = new ArrayList<>();
+                    lists.forEach(all::addAll);
+                    return Map.of("models", all);
                 });
     }
 
-    public Flux<String> pullModel(String modelName) {
-        return ollamaWebClient.post()
+    /** Pull the model onto every backend in turn, so the whole pool can serve it. */
+    public Flux<OllamaPullProgress> pullModel(String modelName) {
+        return Flux.fromIterable(pool.backends())
+                .concatMap(backend -> pullModel(backend, modelName));
+    }
+
+    public Flux<OllamaPullProgress> pullModel(OllamaBackend backend, String modelName) {
+        return backend.getClient().post()
                 .uri("/api/pull")
                 .bodyValue(Map.of("model", modelName, "stream", true))
                 .retrieve()
                 .bodyToFlux(DataBuffer.class)
-                .map(buffer -> {
-                    String t = buffer.toString(StandardCharsets.UTF_8);
-                    DataBufferUtils.release(buffer);
-                    return t;
-                });
+                .transform(buffers -> decodeNdjson(buffers, OllamaPullProgress.class));
     }
 
+    /** Delete the model from every backend; true if any backend removed it. */
     public Mono<Boolean> deleteModel(String modelName) {
-        return ollamaWebClient.method(org.springframework.http.HttpMethod.DELETE)
-                .uri("/api/delete")
-                .bodyValue(Map.of("model", modelName))
-                .retrieve()
-                .toBodilessEntity()
-                .map(resp -> true)
-                .onErrorResume(e -> {
-                    log.warn("Failed to delete model {}: {}", modelName, e.getMessage());
-                    return Mono.just(false);
-                });
+        return Flux.fromIterable(pool.backends())
+                .flatMap(backend -> backend.getClient().method(org.springframework.http.HttpMethod.DELETE)
+                        .uri("/api/delete")
+                        .bodyValue(Map.of("model", modelName))
+                        .retrieve()
+                        .toBodilessEntity()
+                        .map(resp -> true)
+                        .onErrorResume(e -> {
+                            log.warn("Failed to delete model {} on {}: {}", modelName, backend, e.getMessage());
+                            return Mono.just(false);
+                        }))
+                .any(deleted -> deleted);
     }
 
     public String getCurrentModel() {
         return model;
     }
 
-    private Flux<OllamaChatChunk> parseNdjsonLines(String text) {
-        return Flux.fromArray(text.split("\n"))
-                .filter(line -> !line.isBlank())
-                .flatMap(line -> {
-                    try {
-                        return Flux.just(objectMapper.readValue(line, OllamaChatChunk.class));
-                    } catch (Exception e) {
-                        log.debug("Skip unparseable NDJSON line: {}", line);
-                        return Flux.empty();
-                    }
-                });
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> mergeByName(List<Map> responses) {
+        Map<Object, Map<String, Object>> byName = new LinkedHashMap<>();
+        for (Map response : responses) {
+            for (Map<String, Object> m : (List<Map<String, Object>>) response.getOrDefault("models", List.of())) {
+                byName.putIfAbsent(m.get("name"), m);
+            }
+        }
+        return new ArrayList<>(byName.values());
+    }
+
+    /**
+     * Decode an NDJSON body record by record. One decoder per subscription keeps
+     * partial records across buffer boundaries; buffers dropped on cancel are released.
+     */
+    private <T> Flux<T> decodeNdjson(Flux<DataBuffer> body, Class<T> type) {
+        return Flux.defer(() -> {
+            NdjsonDecoder<T> decoder = new NdjsonDecoder<>(objectMapper, type);
+            return body.concatMapIterable(decoder::decode)
+                    .doFinally(signal -> decoder.close());
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
     }
 }
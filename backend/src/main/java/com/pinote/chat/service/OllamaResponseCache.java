@@ -0,0 +1,216 @@
+package com.pinote.chat.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cache of completed Ollama responses, plus single-flight for identical requests in progress.
+ * A request joining one in flight replays the tokens produced so far, then follows live.
+ * {@link #share} only joins requests in flight, for callers that want a fresh answer each time.
+ * Completed responses expire after {@code ttl-seconds} and are evicted LRU once the
+ * estimated size of all cached text exceeds {@code max-bytes}.
+ */
+@Component
+public class OllamaResponseCache {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 200;
+
+    /** Identifies a request: the model, its options in canonical form, and a digest of the messages. */
+    public record Key(String model, String options, String digest) {}
+
+    private final long ttlNanos;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Completed> completed = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Key, Flux<?>> inFlight = new LinkedHashMap<>();
+    private long totalBytes;
+    private long hits;
+    private long shared;
+    private long misses;
+
+    public OllamaResponseCache(@Value("${app.ollama.cache.ttl-seconds:600}") long ttlSeconds,
+                               @Value("${app.ollama.cache.max-bytes:4194304}") long maxBytes,
+                               MeterRegistry meterRegistry) {
+        this.ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+        this.maxBytes = maxBytes;
+
+        Gauge.builder("ollama.response.cache.bytes", this, OllamaResponseCache::totalBytes)
+                .description("Estimated heap used by cached Ollama responses")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        FunctionCounter.builder("ollama.response.cache.requests", this, OllamaResponseCache::hits)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("ollama.response.cache.requests", this, OllamaResponseCache::shared)
+                .tag("result", "shared")
+                .register(meterRegistry);
+        FunctionCounter.builder("ollama.response.cache.requests", this, OllamaResponseCache::misses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public static Key key(String model, Map<String, ?> options, List<Map<String, String>> messages) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Map<String, String> msg : messages) {
+            sha.update(String.valueOf(msg.get("role")).getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(String.valueOf(msg.get("content")).getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+        }
+        String canonicalOptions = options == null || options.isEmpty() ? "" : new TreeMap<>(options).toString();
+        return new Key(model, canonicalOptions, HexFormat.of().formatHex(sha.digest()));
+    }
+
+    /**
+     * Serve {@code key} from the cache, join an identical request in flight, or start {@code upstream}.
+     * {@code textOf} picks the text of the elements worth caching (null for anything else, such as
+     * queue updates); {@code fromText} rebuilds elements when replaying a completed response.
+     * Empty or failed responses are never cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> fetch(Key key,
+                             Supplier<? extends Flux<T>> upstream,
+                             Function<? super T, String> textOf,
+                             Function<String, ? extends T> fromText) {
+        return Flux.defer(() -> {
+            synchronized (this) {
+                Completed hit = completed.get(key);
+                if (hit != null && hit.expiresAt - System.nanoTime() > 0) {
+                    hits++;
+                    return Flux.fromIterable(hit.parts).map(fromText);
+                }
+                if (hit != null) {
+                    remove(key);
+                }
+                Flux<?> running = inFlight.get(key);
+                if (running != null) {
+                    shared++;
+                    return (Flux<T>) running;
+                }
+                misses++;
+                Flux<T> shared = start(key, upstream.get(), textOf);
+                inFlight.put(key, shared);
+                return shared;
+            }
+        });
+    }
+
+    /**
+     * Join an identical request in flight, or start {@code upstream}; the response is neither
+     * served from nor stored in the completed cache.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> share(Key key, Supplier<? extends Flux<T>> upstream) {
+        return Flux.defer(() -> {
+            synchronized (this) {
+                Flux<?> running = inFlight.get(key);
+                if (running != null) {
+                    shared++;
+                    return (Flux<T>) running;
+                }
+                misses++;
+                Flux<T> shared = start(key, upstream.get(), null);
+                inFlight.put(key, shared);
+                return shared;
+            }
+        });
+    }
+
+    public synchronized long totalBytes() { return totalBytes; }
+    public synchronized long hits() { return hits; }
+    public synchronized long shared() { return shared; }
+    public synchronized long misses() { return misses; }
+
+    /** Share {@code source} while it runs; with a {@code textOf}, store its text once it completes. */
+    private <T> Flux<T> start(Key key, Flux<T> source, Function<? super T, String> textOf) {
+        if (textOf == null) {
+            return source
+                    .doFinally(signal -> removeInFlight(key))
+                    .replay()
+                    .refCount();
+        }
+        List<String> parts = new ArrayList<>();
+        return source
+                .doOnNext(element -> {
+                    String text = textOf.apply(element);
+                    if (text != null) {
+                        synchronized (parts) {
+                            parts.add(text);
+                        }
+                    }
+                })
+                .doOnComplete(() -> {
+                    synchronized (parts) {
+                        store(key, List.copyOf(parts));
+                    }
+                })
+                .doFinally(signal -> removeInFlight(key))
+                // Late subscribers replay everything produced so far; the upstream is
+                // cancelled only once every subscriber has gone
+                .replay()
+                .refCount();
+    }
+
+    private synchronized void store(Key key, List<String> parts) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        boolean blank = true;
+        for (String part : parts) {
+            bytes += 2L * part.length();
+            blank &= part.isBlank();
+        }
+        if (blank || bytes > maxBytes / 4) {
+            return;
+        }
+        remove(key);
+        completed.put(key, new Completed(parts, bytes, System.nanoTime() + ttlNanos));
+        totalBytes += bytes;
+        evictToLimit();
+    }
+
+    private synchronized void removeInFlight(Key key) {
+        inFlight.remove(key);
+    }
+
+    private void remove(Key key) {
+        Completed removed = completed.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    private void evictToLimit() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Key, Completed>> it = completed.entrySet().iterator();
+        while (it.hasNext()) {
+            Completed entry = it.next().getValue();
+            if (totalBytes > maxBytes || entry.expiresAt - now <= 0) {
+                totalBytes -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    private record Completed(List<String> parts, long bytes, long expiresAt) {}
+}
@@ -0,0 +1,220 @@
+package com.pinote.chat.service;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Admission control for Ollama inference requests.
+ * Each backend in the pool runs at most {@code max-concurrent} requests at once; the rest
+ * wait in a bounded queue ordered by priority, then arrival, and are dispatched to whichever
+ * backend {@link OllamaBackendPool#select} picks. When the queue is full, a new request is
+ * rejected with {@link OllamaBusyException} unless it outranks a waiting one, which is rejected instead.
+ */
+@Component
+public class OllamaScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaScheduler.class);
+
+    private static final Sinks.EmitFailureHandler RETRY_EMIT =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    /** Lower ordinal runs first. */
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND,
+        PROBE
+    }
+
+    private final OllamaBackendPool pool;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final TreeSet<Ticket> waiting = new TreeSet<>(
+            Comparator.comparing((Ticket t) -> t.priority).thenComparingLong(t -> t.seq));
+    private int running;
+    private long nextSeq;
+
+    public OllamaScheduler(OllamaBackendPool pool,
+                           @Value("${app.ollama.max-concurrent:1}") int maxConcurrent,
+                           @Value("${app.ollama.max-queue:8}") int maxQueue) {
+        this.pool = pool;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+    }
+
+    public <T> Flux<T> schedule(Priority priority, String model, Object affinityKey,
+                                Function<OllamaBackend, ? extends Publisher<T>> work) {
+        return schedule(priority, model, affinityKey, work, null);
+    }
+
+    /**
+     * Run {@code work} on a backend once one has a free slot. {@code affinityKey} (may be null)
+     * keeps related requests on the same backend. While waiting, {@code onQueued} maps each
+     * change of the 1-based queue position into an element emitted ahead of the work's output.
+     */
+    public <T> Flux<T> schedule(Priority priority,
+                                String model,
+                                Object affinityKey,
+                                Function<OllamaBackend, ? extends Publisher<T>> work,
+                                IntFunction<? extends T> onQueued) {
+        return schedule(new Ticket(priority, model, affinityKey, null), work, onQueued);
+    }
+
+    /** Run {@code work} on {@code backend} itself once it has a free slot, e.g. to load a model there. */
+    public <T> Flux<T> scheduleOn(OllamaBackend backend, Priority priority, String model,
+                                  Function<OllamaBackend, ? extends Publisher<T>> work) {
+        return schedule(new Ticket(priority, model, null, backend), work, null);
+    }
+
+    private <T> Flux<T> schedule(Ticket template,
+                                 Function<OllamaBackend, ? extends Publisher<T>> work,
+                                 IntFunction<? extends T> onQueued) {
+        return Flux.defer(() -> {
+            Ticket ticket = new Ticket(template.priority, template.model, template.affinityKey, template.target);
+            Flux<T> queued = onQueued != null
+                    ? ticket.positions.asFlux().<T>map(onQueued::apply)
+                    : ticket.positions.asFlux().thenMany(Flux.empty());
+            Flux<T> run = ticket.granted.asMono().flatMapMany(backend -> Flux.from(work.apply(backend)));
+            return Flux.concat(queued, run)
+                    .doFirst(() -> enqueue(ticket))
+                    .doFinally(signal -> finish(ticket));
+        });
+    }
+
+    public synchronized int running() {
+        return running;
+    }
+
+    public synchronized int queued() {
+        return waiting.size();
+    }
+
+    // Sink signals are collected under the lock and emitted after it is released,
+    // so downstream code never runs while the scheduler is locked.
+
+    private void enqueue(Ticket ticket) {
+        List<Runnable> signals = new ArrayList<>();
+        synchronized (this) {
+            ticket.seq = nextSeq++;
+            ticket.state = Ticket.WAITING;
+            waiting.add(ticket);
+            dispatch(signals);
+            if (waiting.size() > maxQueue) {
+                // Either the new request itself or a less urgent one it outranks
+                reject(waiting.pollLast(), signals);
+            }
+            publishPositions(signals);
+        }
+        signals.forEach(Runnable::run);
+    }
+
+    private void finish(Ticket ticket) {
+        List<Runnable> signals = new ArrayList<>();
+        synchronized (this) {
+            if (ticket.state == Ticket.WAITING) {
+                waiting.remove(ticket);
+            } else if (ticket.state == Ticket.RUNNING) {
+                running--;
+                ticket.backend.release();
+                dispatch(signals);
+            }
+            ticket.state = Ticket.DONE;
+            publishPositions(signals);
+        }
+        signals.forEach(Runnable::run);
+    }
+
+    /**
+     * Start every waiting ticket, most urgent first, that some backend can take right now.
+     * A ticket pinned to a busy backend does not hold back tickets that can run elsewhere.
+     */
+    private void dispatch(List<Runnable> signals) {
+        Iterator<Ticket> it = waiting.iterator();
+        while (it.hasNext()) {
+            Ticket ticket = it.next();
+            OllamaBackend backend;
+            if (ticket.target != null) {
+                backend = ticket.target.getInFlight() < maxConcurrent ? ticket.target : null;
+            } else {
+                backend = pool.select(ticket.model, ticket.affinityKey, b -> b.getInFlight() < maxConcurrent);
+            }
+            if (backend != null) {
+                it.remove();
+                start(ticket, backend, signals);
+            }
+        }
+    }
+
+    private void start(Ticket ticket, OllamaBackend backend, List<Runnable> signals) {
+        running++;
+        backend.acquire();
+        backend.noteModelUsed(ticket.model);
+        ticket.backend = backend;
+        ticket.state = Ticket.RUNNING;
+        signals.add(() -> {
+            ticket.positions.emitComplete(RETRY_EMIT);
+            ticket.granted.emitValue(backend, RETRY_EMIT);
+        });
+    }
+
+    private void reject(Ticket ticket, List<Runnable> signals) {
+        log.warn("Rejecting {} Ollama request: queue full ({} running, {} waiting)",
+                ticket.priority, running, waiting.size());
+        ticket.state = Ticket.DONE;
+        signals.add(() -> {
+            ticket.positions.emitComplete(RETRY_EMIT);
+            ticket.granted.emitError(new OllamaBusyException("Inference server is busy, try again shortly"), RETRY_EMIT);
+        });
+    }
+
+    private void publishPositions(List<Runnable> signals) {
+        int position = 1;
+        for (Ticket ticket : waiting) {
+            if (ticket.lastPosition != position) {
+                ticket.lastPosition = position;
+                int current = position;
+                signals.add(() -> ticket.positions.emitNext(current, RETRY_EMIT));
+            }
+            position++;
+        }
+    }
+
+    private static final class Ticket {
+        static final int NEW = 0;
+        static final int WAITING = 1;
+        static final int RUNNING = 2;
+        static final int DONE = 3;
+
+        final Priority priority;
+        final String model;
+        final Object affinityKey;
+        // Set when the work must run on this backend
+        final OllamaBackend target;
+        final Sinks.Many<Integer> positions = Sinks.many().replay().latest();
+        final Sinks.One<OllamaBackend> granted = Sinks.one();
+        long seq;
+        int state = NEW;
+        int lastPosition;
+        OllamaBackend backend;
+
+        Ticket(Priority priority, String model, Object affinityKey, OllamaBackend target) {
+            this.priority = priority;
+            this.model = model;
+            this.affinityKey = affinityKey;
+            this.target = target;
+        }
+    }
+}
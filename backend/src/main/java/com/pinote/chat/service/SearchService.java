@@ -0,0 +1,181 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.CursorPage;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.model.ScoreCursor;
+import com.pinote.chat.model.SearchHit;
+import com.pinote.chat.search.SemanticIndexer;
+import com.pinote.chat.search.VectorIndex;
+import com.pinote.chat.storage.ConversationStore;
+import com.pinote.chat.storage.MessageStore;
+import com.pinote.chat.storage.SearchStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Conversation search over message text and titles. Keyword ranking is up to the storage
+ * backend; semantic search ranks conversations by their message closest in meaning to the
+ * query, and hybrid search merges both rankings by reciprocal rank fusion.
+ */
+@Service
+public class SearchService {
+
+    public enum Mode {
+        KEYWORD,
+        SEMANTIC,
+        HYBRID
+    }
+
+    private static final int MESSAGE_IDS_PER_HIT = 5;
+    private static final int SNIPPET_CHARS = 160;
+    /** Damps the weight of top ranks in reciprocal rank fusion; 60 is the usual choice. */
+    private static final int RRF_K = 60;
+
+    private static final Comparator<SearchHit> RANKING = Comparator.comparingDouble(SearchHit::score)
+            .thenComparing(hit -> hit.conversation().getId())
+            .reversed();
+
+    private final SearchStore searchStore;
+    private final SemanticIndexer semanticIndexer;
+    private final ConversationStore conversationStore;
+    private final MessageStore messageStore;
+    private final int candidates;
+
+    public SearchService(SearchStore searchStore,
+                         SemanticIndexer semanticIndexer,
+                         ConversationStore conversationStore,
+                         MessageStore messageStore,
+                         @Value("${app.search.semantic.candidates:200}") int candidates) {
+        this.searchStore = searchStore;
+        this.semanticIndexer = semanticIndexer;
+        this.conversationStore = conversationStore;
+        this.messageStore = messageStore;
+        this.candidates = candidates;
+    }
+
+    public boolean semanticEnabled() {
+        return semanticIndexer.enabled();
+    }
+
+    /** Keyword hits for {@code query} ranked best first, continuing after {@code cursor} (null for the first page). */
+    public Mono<CursorPage<SearchHit>> search(String query, ScoreCursor cursor, int size) {
+        return search(query, Mode.KEYWORD, cursor, size);
+    }
+
+    /**
+     * Hits for {@code query} in the given mode, ranked best first, continuing after {@code cursor}.
+     * Without semantic search, hybrid falls back to keyword search.
+     */
+    public Mono<CursorPage<SearchHit>> search(String query, Mode mode, ScoreCursor cursor, int size) {
+        if (query == null || query.isBlank()) {
+            return Mono.just(new CursorPage<>(List.of(), null));
+        }
+        String q = query.trim();
+        if (mode == Mode.KEYWORD || (mode == Mode.HYBRID && !semanticEnabled())) {
+            return searchStore.search(q, cursor, size);
+        }
+        if (mode == Mode.SEMANTIC) {
+            return semanticHits(q).flatMap(hits -> withSnippets(page(hits, cursor, size)));
+        }
+        return Mono.zip(searchStore.search(q, null, candidates).map(CursorPage::items), semanticHits(q))
+                .flatMap(both -> withSnippets(page(fuse(both.getT1(), both.getT2()), cursor, size)));
+    }
+
+    /** Conversations of the nearest messages, scored by their best similarity. Snippets are filled in later. */
+    private Mono<List<SearchHit>> semanticHits(String query) {
+        return semanticIndexer.query(query, candidates).flatMap(matches -> {
+            Map<UUID, List<UUID>> messageIds = new LinkedHashMap<>();
+            Map<UUID, Double> scores = new HashMap<>();
+            for (VectorIndex.Match match : matches) {
+                List<UUID> ids = messageIds.computeIfAbsent(match.conversationId(), id -> new ArrayList<>());
+                if (ids.size() < MESSAGE_IDS_PER_HIT) {
+                    ids.add(match.messageId());
+                }
+                scores.merge(match.conversationId(), (double) match.score(), Math::max);
+            }
+            // Conversations deleted since they were indexed drop out here
+            return Flux.fromIterable(messageIds.keySet())
+                    .concatMap(conversationStore::findById)
+                    .map(conv -> new SearchHit(conv, scores.get(conv.getId()), null, messageIds.get(conv.getId())))
+                    .collectSortedList(RANKING);
+        });
+    }
+
+    /** Reciprocal rank fusion: each list adds 1 / (RRF_K + rank) for the conversations it ranks. */
+    static List<SearchHit> fuse(List<SearchHit> keyword, List<SearchHit> semantic) {
+        Map<UUID, Conversation> conversations = new HashMap<>();
+        Map<UUID, Double> scores = new HashMap<>();
+        Map<UUID, String> snippets = new HashMap<>();
+        Map<UUID, Set<UUID>> messageIds = new HashMap<>();
+        for (List<SearchHit> ranked : List.of(keyword, semantic)) {
+            for (int rank = 0; rank < ranked.size(); rank++) {
+                SearchHit hit = ranked.get(rank);
+                UUID id = hit.conversation().getId();
+                conversations.putIfAbsent(id, hit.conversation());
+                scores.merge(id, 1.0 / (RRF_K + rank + 1), Double::sum);
+                if (hit.snippet() != null) {
+                    snippets.putIfAbsent(id, hit.snippet());
+                }
+                messageIds.computeIfAbsent(id, k -> new LinkedHashSet<>()).addAll(hit.messageIds());
+            }
+        }
+        List<SearchHit> fused = new ArrayList<>(conversations.size());
+        for (Map.Entry<UUID, Conversation> entry : conversations.entrySet()) {
+            UUID id = entry.getKey();
+            fused.add(new SearchHit(entry.getValue(), scores.get(id), snippets.get(id),
+                    messageIds.get(id).stream().limit(MESSAGE_IDS_PER_HIT).toList()));
+        }
+        fused.sort(RANKING);
+        return fused;
+    }
+
+    private static CursorPage<SearchHit> page(List<SearchHit> ranked, ScoreCursor cursor, int size) {
+        List<SearchHit> after = ranked;
+        if (cursor != null) {
+            after = ranked.stream()
+                    .filter(hit -> hit.score() < cursor.score()
+                            || (hit.score() == cursor.score() && hit.conversation().getId().compareTo(cursor.id()) < 0))
+                    .toList();
+        }
+        if (after.size() <= size) {
+            return new CursorPage<>(after, null);
+        }
+        List<SearchHit> page = after.subList(0, size);
+        SearchHit last = page.get(size - 1);
+        return new CursorPage<>(page, new ScoreCursor(last.score(), last.conversation().getId()).encode());
+    }
+
+    /** Hits without a keyword snippet get the start of their best matching message instead. */
+    private Mono<CursorPage<SearchHit>> withSnippets(CursorPage<SearchHit> page) {
+        return Flux.fromIterable(page.items())
+                .concatMap(hit -> {
+                    if (hit.snippet() != null || hit.messageIds().isEmpty()) {
+                        return Mono.just(hit);
+                    }
+                    UUID best = hit.messageIds().get(0);
+                    return messageStore.findById(hit.conversation().getId(), best)
+                            .map(m -> new SearchHit(hit.conversation(), hit.score(), excerpt(m), hit.messageIds()))
+                            .defaultIfEmpty(hit);
+                })
+                .collectList()
+                .map(items -> new CursorPage<>(items, page.nextCursor()));
+    }
+
+    private static String excerpt(Message message) {
+        String text = message.getContent().strip().replaceAll("\\s+", " ");
+        return text.length() <= SNIPPET_CHARS ? text : text.substring(0, SNIPPET_CHARS) + "...";
+    }
+}
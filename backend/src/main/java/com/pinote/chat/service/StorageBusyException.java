@@ -0,0 +1,12 @@
+package com.pinote.chat.service;
+
+/**
+ * Raised when the write-behind queue and its waiting list are full and a message is turned
+ * away instead of queueing without bound.
+ */
+public class StorageBusyException extends RuntimeException {
+
+    public StorageBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,44 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.SyncPage;
+import com.pinote.chat.model.SyncToken;
+import com.pinote.chat.storage.SyncStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Delta sync for clients that keep a local copy: the conversations, messages and deletions since
+ * a sync token, so a client catching up after being offline pulls only what changed. The change
+ * order is kept by the storage backend, which every write of {@link ConversationService} and
+ * {@link ChatService} goes through.
+ */
+@Service
+public class SyncService {
+
+    private final SyncStore syncStore;
+    private final DistributionSummary pageChanges;
+    private final Counter resets;
+
+    public SyncService(SyncStore syncStore, MeterRegistry meterRegistry) {
+        this.syncStore = syncStore;
+        this.pageChanges = DistributionSummary.builder("chat.sync.changes")
+                .description("Conversations, messages and deletions per sync page")
+                .register(meterRegistry);
+        this.resets = Counter.builder("chat.sync.resets")
+                .description("Sync tokens that could not be continued from")
+                .register(meterRegistry);
+    }
+
+    /** Changes after {@code since}, or everything if it is null, about {@code size} at a time. */
+    public Mono<SyncPage> changes(SyncToken since, int size) {
+        return syncStore.changes(since, size).doOnNext(page -> {
+            pageChanges.record(page.conversations().size() + page.messages().size() + page.deleted().size());
+            if (page.reset()) {
+                resets.increment();
+            }
+        });
+    }
+}
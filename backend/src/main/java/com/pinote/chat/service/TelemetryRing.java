@@ -0,0 +1,119 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.DeviceSample;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed number of device samples in primitive arrays, the oldest overwritten first. With a
+ * bucket size, samples are first averaged into buckets aligned to it; the bucket being filled
+ * is included in reads. NaN marks a missing value and is left out of averages.
+ */
+final class TelemetryRing {
+
+    static final int ONLINE = 0;
+    static final int CPU = 1;
+    static final int TEMPERATURE = 2;
+    static final int TEMPERATURE_MAX = 3;
+    static final int MEMORY_USED = 4;
+    static final int MEMORY_TOTAL = 5;
+    static final int TOKENS_PER_SECOND = 6;
+    static final int FIELDS = 7;
+
+    private final long bucketMillis;
+    private final long[] at;
+    /** FIELDS values per slot, slot after slot. */
+    private final double[] values;
+    private int next;
+    private int size;
+
+    private long bucketStart = -1;
+    private final double[] sums = new double[FIELDS];
+    private final int[] counts = new int[FIELDS];
+
+    /** {@code bucketMillis} of 0 keeps every sample as it is. */
+    TelemetryRing(int capacity, long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+        this.at = new long[capacity];
+        this.values = new double[capacity * FIELDS];
+    }
+
+    long bucketMillis() {
+        return bucketMillis;
+    }
+
+    synchronized void add(long atMillis, double[] sample) {
+        if (bucketMillis == 0) {
+            store(atMillis, sample);
+            return;
+        }
+        long start = atMillis - Math.floorMod(atMillis, bucketMillis);
+        if (start != bucketStart) {
+            if (bucketStart >= 0) {
+                store(bucketStart, bucket());
+            }
+            bucketStart = start;
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+        }
+        for (int f = 0; f < FIELDS; f++) {
+            double v = sample[f];
+            if (Double.isNaN(v)) {
+                continue;
+            }
+            sums[f] = f == TEMPERATURE_MAX && counts[f] > 0 ? Math.max(sums[f], v) : sums[f] + v;
+            counts[f]++;
+        }
+    }
+
+    /** All samples, oldest first. */
+    synchronized List<DeviceSample> samples() {
+        List<DeviceSample> samples = new ArrayList<>(size + 1);
+        for (int i = 0; i < size; i++) {
+            int slot = Math.floorMod(next - size + i, at.length);
+            samples.add(toSample(at[slot], values, slot * FIELDS));
+        }
+        if (bucketStart >= 0) {
+            samples.add(toSample(bucketStart, bucket(), 0));
+        }
+        return samples;
+    }
+
+    private double[] bucket() {
+        double[] averaged = new double[FIELDS];
+        for (int f = 0; f < FIELDS; f++) {
+            if (counts[f] == 0) {
+                averaged[f] = Double.NaN;
+            } else {
+                averaged[f] = f == TEMPERATURE_MAX ? sums[f] : sums[f] / counts[f];
+            }
+        }
+        return averaged;
+    }
+
+    private void store(long atMillis, double[] sample) {
+        at[next] = atMillis;
+        System.arraycopy(sample, 0, values, next * FIELDS, FIELDS);
+        next = (next + 1) % at.length;
+        size = Math.min(size + 1, at.length);
+    }
+
+    static DeviceSample toSample(long atMillis, double[] source, int offset) {
+        double online = source[offset + ONLINE];
+        return new DeviceSample(Instant.ofEpochMilli(atMillis),
+                Double.isNaN(online) ? 0 : online,
+                boxed(source[offset + CPU]),
+                boxed(source[offset + TEMPERATURE]),
+                boxed(source[offset + TEMPERATURE_MAX]),
+                boxed(source[offset + MEMORY_USED]),
+                boxed(source[offset + MEMORY_TOTAL]),
+                boxed(source[offset + TOKENS_PER_SECOND]));
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
@@ -1,13 +1,15 @@
 package com.pinote.chat.service;
 
-import com.pinote.chat.repository.ConversationRepository;
+import com.pinote.chat.model.ConversationEvent;
+import com.pinote.chat.storage.ConversationStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -16,12 +18,27 @@ public class TitleGenerationService {
     private static final Logger log = LoggerFactory.getLogger(TitleGenerationService.class);
 
     private final OllamaClient ollamaClient;
-    private final ConversationRepository conversationRepo;
+    private final ConversationStore conversationStore;
+    private final ConversationHistoryCache historyCache;
+    private final OllamaScheduler scheduler;
+    private final OllamaResponseCache responseCache;
+    private final ConversationEventBus eventBus;
+    private final ConversationVersions versions;
 
     public TitleGenerationService(OllamaClient ollamaClient,
-                                   ConversationRepository conversationRepo) {
+                                   ConversationStore conversationStore,
+                                   ConversationHistoryCache historyCache,
+                                   OllamaScheduler scheduler,
+                                   OllamaResponseCache responseCache,
+                                   ConversationEventBus eventBus,
+                                   ConversationVersions versions) {
         this.ollamaClient = ollamaClient;
-        this.conversationRepo = conversationRepo;
+        this.conversationStore = conversationStore;
+        this.historyCache = historyCache;
+        this.scheduler = scheduler;
+        this.responseCache = responseCache;
+        this.eventBus = eventBus;
+        this.versions = versions;
     }
 
     /**
@@ -36,14 +53,21 @@ public class TitleGenerationService {
                 truncate(assistantReply, 200)
         );
 
-        return ollamaClient.generate(prompt)
+        String model = ollamaClient.getCurrentModel();
+        return responseCache.fetch(
+                        OllamaResponseCache.key(model, null, List.of(Map.of("role", "user", "content", prompt))),
+                        () -> scheduler.schedule(OllamaScheduler.Priority.BACKGROUND, model, conversationId,
+                                backend -> ollamaClient.generate(backend, model, prompt)),
+                        text -> text,
+                        text -> text)
+                .next()
                 .map(title -> title.strip().replaceAll("^\"|\"$", ""))
                 .filter(title -> !title.isBlank())
-                .flatMap(title -> conversationRepo.findById(conversationId)
-                        .flatMap(conv -> {
-                            conv.setTitle(title);
-                            conv.setUpdatedAt(Instant.now());
-                            return conversationRepo.save(conv);
+                .flatMap(title -> conversationStore.updateTitle(conversationId, title)
+                        .doOnNext(conv -> {
+                            historyCache.updateConversation(conv);
+                            versions.changed(conv);
+                            eventBus.publish(new ConversationEvent.Updated(conv));
                         })
                         .thenReturn(title))
                 .subscribeOn(Schedulers.boundedElastic())
@@ -0,0 +1,156 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.ChatEvent;
+import com.pinote.chat.model.SequencedChatEvent;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges consecutive {@link ChatEvent.Token}s into one event per time window or byte budget.
+ * While the client has no outstanding demand, tokens keep merging instead of queueing,
+ * and the window grows; it shrinks back while the client keeps up.
+ * Non-token events flush pending text first, so event order is preserved.
+ * A merged event carries the sequence number of its last token, so a client resuming
+ * from it receives exactly the tokens that followed.
+ */
+@Component
+public class TokenCoalescer {
+
+    private final long minWindowNanos;
+    private final long maxWindowNanos;
+    private final int maxBytes;
+    private final Scheduler timer = Schedulers.parallel();
+
+    public TokenCoalescer(@Value("${app.chat.coalesce.min-window-ms:40}") long minWindowMs,
+                          @Value("${app.chat.coalesce.max-window-ms:400}") long maxWindowMs,
+                          @Value("${app.chat.coalesce.max-bytes:1024}") int maxBytes) {
+        this.minWindowNanos = TimeUnit.MILLISECONDS.toNanos(minWindowMs);
+        this.maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minWindowMs, maxWindowMs));
+        this.maxBytes = maxBytes;
+    }
+
+    public Flux<SequencedChatEvent> coalesce(Flux<SequencedChatEvent> events) {
+        return Flux.create(sink -> {
+            CoalescingSubscriber subscriber = new CoalescingSubscriber(sink);
+            sink.onRequest(subscriber::onDownstreamRequest);
+            sink.onDispose(subscriber::dispose);
+            events.subscribe(subscriber);
+        });
+    }
+
+    private final class CoalescingSubscriber extends BaseSubscriber<SequencedChatEvent> {
+
+        private final FluxSink<SequencedChatEvent> sink;
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingBytes;
+        private long pendingSeq;
+        private long windowNanos = minWindowNanos;
+        private Disposable scheduledFlush;
+        private boolean due;
+
+        CoalescingSubscriber(FluxSink<SequencedChatEvent> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            // Tokens are merged rather than queued, so upstream never needs to wait
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        protected synchronized void hookOnNext(SequencedChatEvent sequenced) {
+            if (!(sequenced.event() instanceof ChatEvent.Token token)) {
+                flush();
+                sink.next(sequenced);
+                return;
+            }
+            if (pending.isEmpty()) {
+                scheduledFlush = timer.schedule(this::onWindowElapsed, windowNanos, TimeUnit.NANOSECONDS);
+            }
+            pending.append(token.content());
+            pendingSeq = sequenced.seq();
+            pendingBytes += utf8Length(token.content());
+            if (pendingBytes >= maxBytes && sink.requestedFromDownstream() > 0) {
+                flush();
+            }
+        }
+
+        @Override
+        protected synchronized void hookOnComplete() {
+            flush();
+            sink.complete();
+        }
+
+        @Override
+        protected synchronized void hookOnError(Throwable throwable) {
+            flush();
+            sink.error(throwable);
+        }
+
+        @Override
+        protected synchronized void hookFinally(SignalType type) {
+            cancelScheduledFlush();
+        }
+
+        private synchronized void onWindowElapsed() {
+            scheduledFlush = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (sink.requestedFromDownstream() > 0) {
+                // Client kept up with the window: tighten it for lower latency
+                windowNanos = Math.max(minWindowNanos, windowNanos * 3 / 4);
+                flush();
+            } else {
+                due = true;
+            }
+        }
+
+        private synchronized void onDownstreamRequest(long n) {
+            if (due && !pending.isEmpty()) {
+                // Client drained slower than the window: widen it so frames carry more text
+                windowNanos = Math.min(maxWindowNanos, windowNanos * 2);
+                flush();
+            }
+        }
+
+        private void flush() {
+            cancelScheduledFlush();
+            due = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            String text = pending.toString();
+            pending.setLength(0);
+            pendingBytes = 0;
+            sink.next(new SequencedChatEvent(pendingSeq, new ChatEvent.Token(text)));
+        }
+
+        private void cancelScheduledFlush() {
+            if (scheduledFlush != null) {
+                scheduledFlush.dispose();
+                scheduledFlush = null;
+            }
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes;
+    }
+}
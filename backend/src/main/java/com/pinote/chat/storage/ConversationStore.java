@@ -0,0 +1,48 @@
+package com.pinote.chat.storage;
+
+import com.pinote.chat.model.Conversation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Persistence of conversations, implemented on Postgres or on the embedded log
+ * depending on {@code app.storage.mode}.
+ */
+public interface ConversationStore {
+
+    /** Most recently updated first. */
+    Flux<Conversation> findAllPaged(int size, long offset);
+
+    Flux<Conversation> findFirstByUpdated(int size);
+
+    /** The conversations after ({@code updatedAt}, {@code id}) in most-recently-updated order. */
+    Flux<Conversation> findAfterByUpdated(Instant updatedAt, UUID id, int size);
+
+    Mono<Conversation> findById(UUID id);
+
+    /**
+     * Every conversation, read incrementally as the subscriber requests them, in an order that
+     * updates do not change, so none is skipped or repeated while others are updated.
+     */
+    Flux<Conversation> streamAll();
+
+    /** Store a new conversation, assigning its id if it has none. */
+    Mono<Conversation> create(Conversation conversation);
+
+    /**
+     * Store an imported conversation with its id and timestamps and no messages counted.
+     * Emits false, storing nothing, if a conversation with that id exists.
+     */
+    Mono<Boolean> insertIfAbsent(Conversation conversation);
+
+    Mono<Conversation> updateTitle(UUID id, String title);
+
+    /** Returns the number of conversations updated, 0 if it no longer exists. */
+    Mono<Integer> updateSummary(UUID id, String summary, Instant summarizedUntil);
+
+    /** Delete a conversation together with its messages. */
+    Mono<Void> deleteById(UUID id);
+}
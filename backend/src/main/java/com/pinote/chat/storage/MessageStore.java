@@ -0,0 +1,53 @@
+package com.pinote.chat.storage;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistence of messages. Messages are ordered by ({@code createdAt}, {@code id}).
+ */
+public interface MessageStore {
+
+    Flux<Message> findByConversationId(UUID conversationId);
+
+    /** One message of a conversation, or empty if there is none with that id. */
+    Mono<Message> findById(UUID conversationId, UUID id);
+
+    /** All messages of a conversation in order, read incrementally as the subscriber requests them. */
+    Flux<Message> stream(UUID conversationId);
+
+    Flux<Message> findByConversationIdPaged(UUID conversationId, int size, long offset);
+
+    Flux<Message> findOldest(UUID conversationId, int size);
+
+    Flux<Message> findAfter(UUID conversationId, Instant createdAt, UUID id, int size);
+
+    Flux<Message> findNewest(UUID conversationId, int size);
+
+    Flux<Message> findBefore(UUID conversationId, Instant createdAt, UUID id, int size);
+
+    /**
+     * Insert a message (its id must be set) and count it on its conversation atomically,
+     * returning the updated conversation.
+     */
+    Mono<Conversation> append(Message message);
+
+    /**
+     * Insert messages and count them on their conversations as one atomic write,
+     * returning the updated conversations by id.
+     */
+    Mono<Map<UUID, Conversation>> appendAll(List<Message> messages);
+
+    /**
+     * Insert imported messages as they are, skipping ids that exist, and count them on their
+     * conversations without changing when those were last updated. Emits the number inserted.
+     */
+    Mono<Integer> importAll(List<Message> messages);
+}
@@ -0,0 +1,13 @@
+package com.pinote.chat.storage;
+
+import com.pinote.chat.model.CursorPage;
+import com.pinote.chat.model.ScoreCursor;
+import com.pinote.chat.model.SearchHit;
+import reactor.core.publisher.Mono;
+
+/** Ranked search over message text and conversation titles. */
+public interface SearchStore {
+
+    /** Hits for a non-blank {@code query}, best first, continuing after {@code cursor} (null for the first page). */
+    Mono<CursorPage<SearchHit>> search(String query, ScoreCursor cursor, int size);
+}
@@ -0,0 +1,16 @@
+package com.pinote.chat.storage;
+
+import com.pinote.chat.model.SyncPage;
+import com.pinote.chat.model.SyncToken;
+import reactor.core.publisher.Mono;
+
+/** Conversations and messages changed since a point in the store's history, for delta sync. */
+public interface SyncStore {
+
+    /**
+     * Changes after {@code since}, or everything if it is null, oldest first and about
+     * {@code size} of them. A token the store cannot continue from yields a page with
+     * {@code reset} set that starts from the beginning.
+     */
+    Mono<SyncPage> changes(SyncToken since, int size);
+}
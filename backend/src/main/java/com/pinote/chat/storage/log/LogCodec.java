@@ -0,0 +1,254 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.GenerationStats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of the storage log. A segment is a sequence of frames:
+ * <pre>
+ * frame  = payloadLength:int crc32(payload):int payload
+ * payload = recordCount:int record*
+ * record = type:byte bodyLength:int body
+ * </pre>
+ * A frame is written by a single append, so the records in it are recovered together or not at all.
+ */
+final class LogCodec {
+
+    static final int FRAME_HEADER = 8;
+    static final int RECORD_HEADER = 5;
+
+    private static final byte CONVERSATION_PUT = 1;
+    private static final byte MESSAGE_APPEND = 2;
+    private static final byte CONVERSATION_DELETE = 3;
+
+    private LogCodec() {}
+
+    /** An encoded frame and the offset and length of each of its records within it. */
+    record Frame(ByteBuffer buffer, int[] offsets, int[] lengths) {}
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(LogRecord record, LogLocation at);
+    }
+
+    static Frame encode(List<LogRecord> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int[] offsets = new int[records.size()];
+        int[] lengths = new int[records.size()];
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                byte[] body = encodeBody(records.get(i));
+                offsets[i] = out.size();
+                lengths[i] = RECORD_HEADER + body.length;
+                out.writeByte(typeOf(records.get(i)));
+                out.writeInt(body.length);
+                out.write(body);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        int payloadLength = buffer.capacity() - FRAME_HEADER;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FRAME_HEADER, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        return new Frame(buffer, offsets, lengths);
+    }
+
+    /**
+     * Visit the records of every intact frame of {@code segment} in order.
+     * Returns the end of the last intact frame, which is short of the segment's size after a torn write.
+     */
+    static long scan(LogSegment segment, RecordVisitor visitor) throws IOException {
+        long position = 0;
+        long next;
+        while ((next = scanFrame(segment, position, segment.size(), visitor)) >= 0) {
+            position = next;
+        }
+        return position;
+    }
+
+    /**
+     * Visit the records of the frame at {@code position}, if an intact one ends by {@code limit}.
+     * Returns the position after it, or -1 if there is none.
+     */
+    static long scanFrame(LogSegment segment, long position, long limit, RecordVisitor visitor) throws IOException {
+        if (position + FRAME_HEADER > limit) {
+            return -1;
+        }
+        ByteBuffer header = segment.read(position, FRAME_HEADER);
+        int payloadLength = header.getInt();
+        int expectedCrc = header.getInt();
+        if (payloadLength < 4 || position + FRAME_HEADER + payloadLength > limit) {
+            return -1;
+        }
+        ByteBuffer payload = segment.read(position + FRAME_HEADER, payloadLength);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return -1;
+        }
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            int start = payload.position();
+            payload.get();
+            int length = RECORD_HEADER + payload.getInt();
+            visitor.visit(decode(payload.slice(start, length)),
+                    new LogLocation(segment.id(), position + FRAME_HEADER + start, length));
+            payload.position(start + length);
+        }
+        return position + FRAME_HEADER + payloadLength;
+    }
+
+    /** Decode one record, with {@code buffer} spanning exactly its header and body. */
+    static LogRecord decode(ByteBuffer buffer) {
+        byte type = buffer.get();
+        buffer.getInt();
+        switch (type) {
+            case CONVERSATION_PUT:
+                return new LogRecord.ConversationPut(readUuid(buffer), readString(buffer), readInstant(buffer),
+                        readInstant(buffer), readString(buffer), readInstant(buffer));
+            case MESSAGE_APPEND:
+                // Records written before generation stats existed end after writtenAt
+                return new LogRecord.MessageAppend(readUuid(buffer), readUuid(buffer), readString(buffer),
+                        readString(buffer), readInstant(buffer), buffer.get() != 0, readInstant(buffer),
+                        buffer.hasRemaining() ? readStats(buffer) : null);
+            case CONVERSATION_DELETE:
+                return new LogRecord.ConversationDelete(readUuid(buffer));
+            default:
+                throw new IllegalStateException("Unknown log record type " + type);
+        }
+    }
+
+    private static byte typeOf(LogRecord record) {
+        if (record instanceof LogRecord.ConversationPut) {
+            return CONVERSATION_PUT;
+        } else if (record instanceof LogRecord.MessageAppend) {
+            return MESSAGE_APPEND;
+        }
+        return CONVERSATION_DELETE;
+    }
+
+    private static byte[] encodeBody(LogRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (record instanceof LogRecord.ConversationPut put) {
+            writeUuid(out, put.id());
+            writeString(out, put.title());
+            writeInstant(out, put.createdAt());
+            writeInstant(out, put.updatedAt());
+            writeString(out, put.summary());
+            writeInstant(out, put.summarizedUntil());
+        } else if (record instanceof LogRecord.MessageAppend message) {
+            writeUuid(out, message.id());
+            writeUuid(out, message.conversationId());
+            writeString(out, message.role());
+            writeString(out, message.content());
+            writeInstant(out, message.createdAt());
+            out.writeByte(message.truncated() ? 1 : 0);
+            writeInstant(out, message.writtenAt());
+            writeStats(out, message.stats());
+        } else if (record instanceof LogRecord.ConversationDelete delete) {
+            writeUuid(out, delete.id());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer in) {
+        return new UUID(in.getLong(), in.getLong());
+    }
+
+    // Strings and instants are nullable: length -1 and a leading flag byte mark null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStats(DataOutputStream out, GenerationStats stats) throws IOException {
+        out.writeByte(stats != null ? 1 : 0);
+        if (stats != null) {
+            writeString(out, stats.model());
+            writeString(out, stats.backend());
+            writeNumber(out, stats.promptTokens());
+            writeNumber(out, stats.completionTokens());
+            writeNumber(out, stats.firstTokenMillis());
+            writeNumber(out, stats.totalMillis());
+            writeNumber(out, stats.loadMillis());
+            writeNumber(out, stats.promptEvalMillis());
+            writeNumber(out, stats.evalMillis());
+        }
+    }
+
+    private static GenerationStats readStats(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        return new GenerationStats(readString(in), readString(in), toInt(readNumber(in)), toInt(readNumber(in)),
+                readNumber(in), readNumber(in), readNumber(in), readNumber(in), readNumber(in));
+    }
+
+    private static void writeNumber(DataOutputStream out, Number value) throws IOException {
+        out.writeByte(value != null ? 1 : 0);
+        if (value != null) {
+            out.writeLong(value.longValue());
+        }
+    }
+
+    private static Long readNumber(ByteBuffer in) {
+        return in.get() != 0 ? in.getLong() : null;
+    }
+
+    private static Integer toInt(Long value) {
+        return value != null ? Math.toIntExact(value) : null;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeByte(value != null ? 1 : 0);
+        if (value != null) {
+            out.writeLong(value.getEpochSecond());
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        return Instant.ofEpochSecond(in.getLong(), in.getInt());
+    }
+}
@@ -0,0 +1,86 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.storage.ConversationStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "log")
+public class LogConversationStore implements ConversationStore {
+
+    private static final int STREAM_PAGE = 64;
+
+    private final LogStorage storage;
+
+    public LogConversationStore(LogStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public Flux<Conversation> findAllPaged(int size, long offset) {
+        return storage.read(() -> storage.conversations(null, null, offset, size)).flatMapIterable(page -> page);
+    }
+
+    @Override
+    public Flux<Conversation> findFirstByUpdated(int size) {
+        return findAllPaged(size, 0);
+    }
+
+    @Override
+    public Flux<Conversation> findAfterByUpdated(Instant updatedAt, UUID id, int size) {
+        return storage.read(() -> storage.conversations(updatedAt, id, 0, size)).flatMapIterable(page -> page);
+    }
+
+    @Override
+    public Mono<Conversation> findById(UUID id) {
+        return storage.read(() -> storage.conversation(id));
+    }
+
+    /**
+     * Takes the ids up front and reads the conversations a page at a time. Paging by last update
+     * would skip conversations that move to the front meanwhile.
+     */
+    @Override
+    public Flux<Conversation> streamAll() {
+        return storage.read(storage::conversationIds)
+                .flatMapIterable(ids -> ids)
+                .buffer(STREAM_PAGE)
+                .concatMap(ids -> storage.read(() -> ids.stream()
+                        .map(storage::conversation)
+                        .filter(Objects::nonNull)
+                        .toList()))
+                .flatMapIterable(page -> page);
+    }
+
+    @Override
+    public Mono<Conversation> create(Conversation conversation) {
+        return storage.write(() -> storage.createConversation(conversation));
+    }
+
+    @Override
+    public Mono<Boolean> insertIfAbsent(Conversation conversation) {
+        return storage.write(() -> storage.importConversation(conversation));
+    }
+
+    @Override
+    public Mono<Conversation> updateTitle(UUID id, String title) {
+        return storage.write(() -> storage.updateTitle(id, title));
+    }
+
+    @Override
+    public Mono<Integer> updateSummary(UUID id, String summary, Instant summarizedUntil) {
+        return storage.write(() -> storage.updateSummary(id, summary, summarizedUntil) ? 1 : 0);
+    }
+
+    @Override
+    public Mono<Void> deleteById(UUID id) {
+        return storage.write(() -> storage.deleteConversation(id)).then();
+    }
+}
@@ -0,0 +1,4 @@
+package com.pinote.chat.storage.log;
+
+/** Where a record sits in the log: segment id, byte offset and length. */
+record LogLocation(int segment, long position, int length) {}
@@ -0,0 +1,97 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.storage.MessageStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "log")
+public class LogMessageStore implements MessageStore {
+
+    private static final int STREAM_PAGE = 64;
+
+    private final LogStorage storage;
+
+    public LogMessageStore(LogStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public Flux<Message> findByConversationId(UUID conversationId) {
+        return find(conversationId, null, null, true, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Mono<Message> findById(UUID conversationId, UUID id) {
+        return storage.read(() -> storage.message(conversationId, id));
+    }
+
+    /** Pages through the messages in order, one page in memory at a time. */
+    @Override
+    public Flux<Message> stream(UUID conversationId) {
+        return findOldest(conversationId, STREAM_PAGE).collectList()
+                .expand(page -> {
+                    if (page.size() < STREAM_PAGE) {
+                        return Mono.empty();
+                    }
+                    Message last = page.get(page.size() - 1);
+                    return findAfter(conversationId, last.getCreatedAt(), last.getId(), STREAM_PAGE).collectList();
+                })
+                .flatMapIterable(page -> page);
+    }
+
+    @Override
+    public Flux<Message> findByConversationIdPaged(UUID conversationId, int size, long offset) {
+        return find(conversationId, null, null, true, offset, size);
+    }
+
+    @Override
+    public Flux<Message> findOldest(UUID conversationId, int size) {
+        return find(conversationId, null, null, true, 0, size);
+    }
+
+    @Override
+    public Flux<Message> findAfter(UUID conversationId, Instant createdAt, UUID id, int size) {
+        return find(conversationId, createdAt, id, true, 0, size);
+    }
+
+    @Override
+    public Flux<Message> findNewest(UUID conversationId, int size) {
+        return find(conversationId, null, null, false, 0, size);
+    }
+
+    @Override
+    public Flux<Message> findBefore(UUID conversationId, Instant createdAt, UUID id, int size) {
+        return find(conversationId, createdAt, id, false, 0, size);
+    }
+
+    private Flux<Message> find(UUID conversationId, Instant createdAt, UUID id,
+                               boolean ascending, long offset, int size) {
+        return storage.read(() -> storage.messages(conversationId, createdAt, id, ascending, offset, size))
+                .flatMapIterable(page -> page);
+    }
+
+    @Override
+    public Mono<Conversation> append(Message message) {
+        return storage.write(() -> storage.appendMessages(List.of(message)).get(message.getConversationId()));
+    }
+
+    @Override
+    public Mono<Map<UUID, Conversation>> appendAll(List<Message> messages) {
+        return storage.write(() -> storage.appendMessages(messages));
+    }
+
+    @Override
+    public Mono<Integer> importAll(List<Message> messages) {
+        return storage.write(() -> storage.importMessages(messages));
+    }
+}
@@ -0,0 +1,24 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.GenerationStats;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/** A change recorded in the storage log. */
+sealed interface LogRecord permits LogRecord.ConversationPut, LogRecord.MessageAppend, LogRecord.ConversationDelete {
+
+    /** Full state of a conversation except its message count, which follows from its messages. */
+    record ConversationPut(UUID id, String title, Instant createdAt, Instant updatedAt,
+                           String summary, Instant summarizedUntil) implements LogRecord {}
+
+    /**
+     * A new message; it also counts towards its conversation and bumps it to {@code writtenAt}.
+     * {@code stats} is null on all but generated replies.
+     */
+    record MessageAppend(UUID id, UUID conversationId, String role, String content, Instant createdAt,
+                         boolean truncated, Instant writtenAt, GenerationStats stats) implements LogRecord {}
+
+    /** Removes a conversation and all of its messages. */
+    record ConversationDelete(UUID id) implements LogRecord {}
+}
@@ -0,0 +1,159 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.CursorPage;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.model.ScoreCursor;
+import com.pinote.chat.model.SearchHit;
+import com.pinote.chat.storage.SearchStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Search on the embedded log by scanning every message, which is fine at the size of a
+ * single-device chat history. It follows the Postgres search: a message matches if it contains
+ * all words of the query, a title if it contains the query, and hits are ranked per conversation.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "log")
+public class LogSearchStore implements SearchStore {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MESSAGE_IDS_PER_HIT = 5;
+    private static final int SNIPPET_WORDS = 20;
+    private static final int SNIPPET_LEAD_WORDS = 5;
+
+    private static final Comparator<SearchHit> RANKING = Comparator.comparingDouble(SearchHit::score)
+            .thenComparing(hit -> hit.conversation().getId())
+            .reversed();
+
+    private final LogStorage storage;
+
+    public LogSearchStore(LogStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public Mono<CursorPage<SearchHit>> search(String query, ScoreCursor cursor, int size) {
+        return storage.read(() -> searchAll(query)).map(hits -> {
+            List<SearchHit> after = hits;
+            if (cursor != null) {
+                after = hits.stream()
+                        .filter(hit -> hit.score() < cursor.score()
+                                || (hit.score() == cursor.score() && hit.conversation().getId().compareTo(cursor.id()) < 0))
+                        .toList();
+            }
+            if (after.size() <= size) {
+                return new CursorPage<>(after, null);
+            }
+            List<SearchHit> page = after.subList(0, size);
+            SearchHit last = page.get(size - 1);
+            return new CursorPage<>(page, new ScoreCursor(last.score(), last.conversation().getId()).encode());
+        });
+    }
+
+    private List<SearchHit> searchAll(String query) throws IOException {
+        Set<String> terms = new HashSet<>(words(query));
+        String titleQuery = query.toLowerCase(Locale.ROOT);
+        List<SearchHit> hits = new ArrayList<>();
+        for (UUID id : storage.conversationIds()) {
+            Conversation conversation = storage.conversation(id);
+            if (conversation == null) {
+                continue;
+            }
+            List<ScoredMessage> matches = new ArrayList<>();
+            if (!terms.isEmpty()) {
+                for (Message message : storage.messages(id, null, null, true, 0, Integer.MAX_VALUE)) {
+                    double rank = rank(message.getContent(), terms);
+                    if (rank > 0) {
+                        matches.add(new ScoredMessage(message, rank));
+                    }
+                }
+            }
+            String title = conversation.getTitle() != null ? conversation.getTitle().toLowerCase(Locale.ROOT) : "";
+            double titleScore = title.contains(titleQuery) ? (double) titleQuery.length() / Math.max(1, title.length()) : 0;
+            if (matches.isEmpty() && titleScore == 0) {
+                continue;
+            }
+            matches.sort(Comparator.comparingDouble(ScoredMessage::rank)
+                    .thenComparing(m -> m.message().getCreatedAt())
+                    .reversed());
+            double best = matches.isEmpty() ? 0 : matches.get(0).rank();
+            hits.add(new SearchHit(conversation, best + titleScore,
+                    matches.isEmpty() ? null : snippet(matches.get(0).message().getContent(), terms),
+                    matches.stream().limit(MESSAGE_IDS_PER_HIT).map(m -> m.message().getId()).toList()));
+        }
+        hits.sort(RANKING);
+        return hits;
+    }
+
+    /** Occurrences of the terms relative to the message length, or 0 unless every term occurs. */
+    private static double rank(String content, Set<String> terms) {
+        List<String> words = words(content);
+        Set<String> seen = new HashSet<>();
+        int occurrences = 0;
+        for (String word : words) {
+            if (terms.contains(word)) {
+                occurrences++;
+                seen.add(word);
+            }
+        }
+        if (seen.size() < terms.size()) {
+            return 0;
+        }
+        return occurrences / (1.0 + Math.log(words.size()));
+    }
+
+    /** A window of the message around its first match, with matched words wrapped in {@code <mark>}. */
+    private static String snippet(String content, Set<String> terms) {
+        String[] words = content.trim().split("\\s+");
+        int first = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (terms.contains(normalize(words[i]))) {
+                first = i;
+                break;
+            }
+        }
+        int from = Math.max(0, first - SNIPPET_LEAD_WORDS);
+        int to = Math.min(words.length, from + SNIPPET_WORDS);
+        StringBuilder snippet = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                snippet.append(' ');
+            }
+            if (terms.contains(normalize(words[i]))) {
+                snippet.append("<mark>").append(words[i]).append("</mark>");
+            } else {
+                snippet.append(words[i]);
+            }
+        }
+        return snippet.toString();
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static String normalize(String word) {
+        return NON_WORD.matcher(word.toLowerCase(Locale.ROOT)).replaceAll("");
+    }
+
+    private record ScoredMessage(Message message, double rank) {}
+}
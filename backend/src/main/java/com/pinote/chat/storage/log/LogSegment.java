@@ -0,0 +1,111 @@
+package com.pinote.chat.storage.log;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One file of the storage log. Appends go through the file channel; reads go through a read-only
+ * memory mapping. A read past the mapping is served from the channel until the file has grown by
+ * {@link #MAP_CHUNK} beyond it, so a growing segment is remapped once per chunk, not per read.
+ */
+final class LogSegment implements Closeable {
+
+    static final long MAP_CHUNK = 1 << 20;
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private volatile long size;
+    private volatile MappedByteBuffer map;
+    // Bytes of records still referenced by the index; maintained by LogStorage under its lock
+    private long liveBytes;
+
+    private LogSegment(int id, Path path, FileChannel channel) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static LogSegment open(Path dir, int id) throws IOException {
+        Path path = dir.resolve(fileName(id));
+        return new LogSegment(id, path, FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    static String fileName(int id) {
+        return String.format("segment-%08d.log", id);
+    }
+
+    int id() { return id; }
+    Path path() { return path; }
+    long size() { return size; }
+    long liveBytes() { return liveBytes; }
+
+    void addLive(long bytes) {
+        liveBytes += bytes;
+    }
+
+    /** Append {@code frame} at the end of the segment and return the offset it was written at. */
+    long append(ByteBuffer frame) throws IOException {
+        long position = size;
+        long written = 0;
+        while (frame.hasRemaining()) {
+            written += channel.write(frame, position + written);
+        }
+        size = position + written;
+        return position;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    ByteBuffer read(long position, int length) throws IOException {
+        MappedByteBuffer current = map;
+        if (current == null || position + length > current.capacity() && size - current.capacity() >= MAP_CHUNK) {
+            current = remap();
+        }
+        if (position + length <= current.capacity()) {
+            return current.slice((int) position, length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Read past the end of " + path);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private synchronized MappedByteBuffer remap() throws IOException {
+        if (map == null || size - map.capacity() >= MAP_CHUNK) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return map;
+    }
+
+    /** Cut off everything after {@code newSize}, e.g. a torn frame found during recovery. */
+    synchronized void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+        map = null;
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,759 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Embedded storage for running without Postgres: an append-only log of conversation and message
+ * records in numbered segment files under {@code dir}, and an in-memory index of conversations
+ * holding the log position of each of their messages. Message bodies stay on disk and are read
+ * through memory-mapped segments.
+ * <p>
+ * Each write appends one CRC-checked frame, forced to disk unless {@code fsync} is off, so a batch
+ * of records survives a crash entirely or not at all. On startup the segments are replayed in order
+ * to rebuild the index, and a torn frame at the end of the log is cut off. A segment whose live
+ * records drop below {@code compact-threshold} of its size, mostly through deleted conversations
+ * and superseded conversation records, is compacted: its live records are copied to the end of the
+ * log and the file is deleted.
+ * <p>
+ * All writes run on one thread, which is also the only one changing the index. Reads take a
+ * shared lock and run concurrently.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "log")
+public class LogStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(LogStorage.class);
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.log");
+    private static final int COMPACTION_FRAME_RECORDS = 256;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final double compactThreshold;
+    private final Scheduler writer = Schedulers.newSingle("storage-log-writer");
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Changed only by the writer thread, under the write lock
+    private final TreeMap<Integer, LogSegment> segments = new TreeMap<>();
+    private final Map<UUID, Entry> conversations = new HashMap<>();
+    private final NavigableSet<UpdatedKey> byUpdated = new TreeSet<>();
+    private LogSegment active;
+    // End of the last frame of the active segment that is applied to the index
+    private long indexedEnd;
+
+    // Messages replayed before their conversation's record; only used during recovery
+    private final Map<UUID, List<Orphan>> orphans = new HashMap<>();
+
+    public LogStorage(MeterRegistry meterRegistry,
+                      @Value("${app.storage.log.dir:./data/log}") String dir,
+                      @Value("${app.storage.log.segment-bytes:16777216}") long segmentBytes,
+                      @Value("${app.storage.log.fsync:true}") boolean fsync,
+                      @Value("${app.storage.log.compact-threshold:0.5}") double compactThreshold) {
+        this.dir = Paths.get(dir);
+        this.segmentBytes = Math.min(Math.max(segmentBytes, 4096), Integer.MAX_VALUE);
+        this.fsync = fsync;
+        this.compactThreshold = compactThreshold;
+        try {
+            Files.createDirectories(this.dir);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the storage log in " + this.dir, e);
+        }
+        write(() -> {
+            compactIfNeeded();
+            return true;
+        }).subscribe(done -> {}, e -> log.warn("Startup compaction failed: {}", e.getMessage()));
+
+        Gauge.builder("storage.log.segments", this, s -> s.withReadLock(s.segments::size))
+                .register(meterRegistry);
+        Gauge.builder("storage.log.bytes", this, s -> s.withReadLock(() -> s.totalBytes(false)))
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("storage.log.live.bytes", this, s -> s.withReadLock(() -> s.totalBytes(true)))
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    /** Run {@code work} on the writer thread; required for every method that changes the log. */
+    <T> Mono<T> write(Callable<T> work) {
+        return Mono.fromCallable(work).subscribeOn(writer);
+    }
+
+    /** Run read-only {@code work} off the event loop, since it may fault in pages of a segment. */
+    <T> Mono<T> read(Callable<T> work) {
+        return Mono.fromCallable(work).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // ---- Writes (writer thread only) ----
+
+    Conversation createConversation(Conversation conversation) throws IOException {
+        UUID id = conversation.getId() != null ? conversation.getId() : UUID.randomUUID();
+        append(List.of(new LogRecord.ConversationPut(id, conversation.getTitle(), conversation.getCreatedAt(),
+                conversation.getUpdatedAt(), null, null)));
+        return snapshot(id, conversations.get(id));
+    }
+
+    /** Returns the updated conversation, or null if it does not exist. */
+    Conversation updateTitle(UUID id, String title) throws IOException {
+        Entry entry = conversations.get(id);
+        if (entry == null) {
+            return null;
+        }
+        LogRecord.ConversationPut state = entry.state;
+        append(List.of(new LogRecord.ConversationPut(id, title, state.createdAt(), Instant.now(),
+                state.summary(), state.summarizedUntil())));
+        compactIfNeeded();
+        return snapshot(id, entry);
+    }
+
+    boolean updateSummary(UUID id, String summary, Instant summarizedUntil) throws IOException {
+        Entry entry = conversations.get(id);
+        if (entry == null) {
+            return false;
+        }
+        LogRecord.ConversationPut state = entry.state;
+        append(List.of(new LogRecord.ConversationPut(id, state.title(), state.createdAt(), entry.updatedAt,
+                summary, summarizedUntil)));
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Append messages (ids set) in one frame and return their conversations as updated.
+     * Fails without writing anything if one of the conversations does not exist.
+     */
+    Map<UUID, Conversation> appendMessages(List<Message> messages) throws IOException {
+        Instant now = Instant.now();
+        List<LogRecord> records = new ArrayList<>(messages.size());
+        for (Message m : messages) {
+            if (!conversations.containsKey(m.getConversationId())) {
+                throw new IllegalArgumentException("Conversation " + m.getConversationId() + " does not exist");
+            }
+            records.add(new LogRecord.MessageAppend(m.getId(), m.getConversationId(), m.getRole(), m.getContent(),
+                    m.getCreatedAt(), m.isTruncated(), now, m.getStats()));
+        }
+        append(records);
+        Map<UUID, Conversation> updated = new LinkedHashMap<>();
+        for (Message m : messages) {
+            updated.computeIfAbsent(m.getConversationId(), id -> snapshot(id, conversations.get(id)));
+        }
+        return updated;
+    }
+
+    /** Store an imported conversation as is; false if one with its id exists. */
+    boolean importConversation(Conversation conversation) throws IOException {
+        if (conversations.containsKey(conversation.getId())) {
+            return false;
+        }
+        append(List.of(new LogRecord.ConversationPut(conversation.getId(), conversation.getTitle(),
+                conversation.getCreatedAt(), conversation.getUpdatedAt(), null, null)));
+        return true;
+    }
+
+    /**
+     * Append imported messages in one frame, skipping ones already stored. Each is recorded as
+     * written at its conversation's last update, so that time stays as it is.
+     */
+    int importMessages(List<Message> messages) throws IOException {
+        List<LogRecord> records = new ArrayList<>(messages.size());
+        Set<UUID> seen = new HashSet<>();
+        for (Message m : messages) {
+            Entry entry = conversations.get(m.getConversationId());
+            if (entry == null) {
+                throw new IllegalArgumentException("Conversation " + m.getConversationId() + " does not exist");
+            }
+            if (seen.add(m.getId()) && !entry.messages.containsKey(new MessageKey(m.getCreatedAt(), m.getId()))) {
+                records.add(new LogRecord.MessageAppend(m.getId(), m.getConversationId(), m.getRole(), m.getContent(),
+                        m.getCreatedAt(), m.isTruncated(), entry.updatedAt, m.getStats()));
+            }
+        }
+        if (!records.isEmpty()) {
+            append(records);
+        }
+        return records.size();
+    }
+
+    boolean deleteConversation(UUID id) throws IOException {
+        if (!conversations.containsKey(id)) {
+            return false;
+        }
+        append(List.of(new LogRecord.ConversationDelete(id)));
+        compactIfNeeded();
+        return true;
+    }
+
+    private void append(List<LogRecord> records) throws IOException {
+        List<LogLocation> at = appendFrame(records);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                apply(records.get(i), at.get(i));
+            }
+            indexedEnd = active.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<LogLocation> appendFrame(List<LogRecord> records) throws IOException {
+        LogCodec.Frame frame = LogCodec.encode(records);
+        if (active.size() > 0 && active.size() + frame.buffer().remaining() > segmentBytes) {
+            roll();
+        }
+        long position = active.append(frame.buffer());
+        if (fsync) {
+            active.force();
+        }
+        List<LogLocation> at = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            at.add(new LogLocation(active.id(), position + frame.offsets()[i], frame.lengths()[i]));
+        }
+        return at;
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        LogSegment next = LogSegment.open(dir, active.id() + 1);
+        lock.writeLock().lock();
+        try {
+            segments.put(next.id(), next);
+            active = next;
+            indexedEnd = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---- Index ----
+
+    /** Apply a record written at {@code at} to the index. Caller holds the write lock. */
+    private void apply(LogRecord record, LogLocation at) {
+        segments.get(at.segment()).addLive(at.length());
+        if (record instanceof LogRecord.ConversationPut put) {
+            Entry entry = conversations.get(put.id());
+            if (entry == null) {
+                entry = new Entry(put.updatedAt());
+                conversations.put(put.id(), entry);
+                List<Orphan> waiting = orphans.remove(put.id());
+                if (waiting != null) {
+                    for (Orphan orphan : waiting) {
+                        addMessage(entry, orphan.key(), orphan.at(), orphan.writtenAt());
+                    }
+                }
+            } else {
+                byUpdated.remove(new UpdatedKey(entry.updatedAt, put.id()));
+                release(entry.location);
+                entry.updatedAt = max(entry.updatedAt, put.updatedAt());
+            }
+            entry.state = put;
+            entry.location = at;
+            byUpdated.add(new UpdatedKey(entry.updatedAt, put.id()));
+        } else if (record instanceof LogRecord.MessageAppend message) {
+            MessageKey key = new MessageKey(message.createdAt(), message.id());
+            Entry entry = conversations.get(message.conversationId());
+            if (entry == null) {
+                orphans.computeIfAbsent(message.conversationId(), id -> new ArrayList<>())
+                        .add(new Orphan(key, at, message.writtenAt()));
+                return;
+            }
+            byUpdated.remove(new UpdatedKey(entry.updatedAt, message.conversationId()));
+            addMessage(entry, key, at, message.writtenAt());
+            byUpdated.add(new UpdatedKey(entry.updatedAt, message.conversationId()));
+        } else if (record instanceof LogRecord.ConversationDelete delete) {
+            Entry entry = conversations.remove(delete.id());
+            if (entry != null) {
+                byUpdated.remove(new UpdatedKey(entry.updatedAt, delete.id()));
+                release(entry.location);
+                entry.messages.values().forEach(this::release);
+            }
+            List<Orphan> waiting = orphans.remove(delete.id());
+            if (waiting != null) {
+                waiting.forEach(orphan -> release(orphan.at()));
+            }
+        }
+    }
+
+    private void addMessage(Entry entry, MessageKey key, LogLocation at, Instant writtenAt) {
+        // The same message twice means a compaction copied it but crashed before deleting the original
+        LogLocation previous = entry.messages.put(key, at);
+        if (previous != null) {
+            release(previous);
+        }
+        entry.updatedAt = max(entry.updatedAt, writtenAt);
+    }
+
+    private void release(LogLocation at) {
+        LogSegment segment = segments.get(at.segment());
+        if (segment != null) {
+            segment.addLive(-at.length());
+        }
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        return b != null && (a == null || b.isAfter(a)) ? b : a;
+    }
+
+    // ---- Recovery and compaction ----
+
+    private void recover() throws IOException {
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(dir)) {
+            ids = files.map(path -> SEGMENT_FILE.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(m -> Integer.parseInt(m.group(1)))
+                    .sorted()
+                    .toList();
+        }
+        for (int id : ids) {
+            LogSegment segment = LogSegment.open(dir, id);
+            segments.put(id, segment);
+            long end = LogCodec.scan(segment, this::apply);
+            if (end < segment.size()) {
+                if (id == ids.get(ids.size() - 1)) {
+                    log.warn("Discarding {} bytes of an incomplete write at the end of {}",
+                            segment.size() - end, segment.path());
+                    segment.truncate(end);
+                } else {
+                    log.error("{} is damaged after byte {}; records past that point are lost", segment.path(), end);
+                }
+            }
+        }
+        int orphaned = orphans.values().stream().mapToInt(List::size).sum();
+        if (orphaned > 0) {
+            log.warn("Dropping {} messages of conversations missing from the log", orphaned);
+            orphans.values().forEach(list -> list.forEach(orphan -> release(orphan.at())));
+        }
+        orphans.clear();
+
+        if (segments.isEmpty()) {
+            active = LogSegment.open(dir, 1);
+            segments.put(active.id(), active);
+        } else {
+            active = segments.lastEntry().getValue();
+            if (active.size() >= segmentBytes) {
+                roll();
+            }
+        }
+        indexedEnd = active.size();
+        long messageCount = conversations.values().stream().mapToLong(e -> e.messages.size()).sum();
+        log.info("Storage log {}: {} conversations, {} messages in {} segments",
+                dir, conversations.size(), messageCount, segments.size());
+    }
+
+    private void compactIfNeeded() throws IOException {
+        List<LogSegment> candidates = new ArrayList<>();
+        for (LogSegment segment : segments.values()) {
+            if (segment != active && segment.size() > 0 && segment.liveBytes() < segment.size() * compactThreshold) {
+                candidates.add(segment);
+            }
+        }
+        for (LogSegment segment : candidates) {
+            compact(segment);
+        }
+    }
+
+    /**
+     * Copy the live records of a sealed segment to the end of the log, then delete it. Replay must
+     * see the same order as before, so a tombstone of a conversation that was created again later
+     * is followed by copies of all of that conversation's live records.
+     */
+    private void compact(LogSegment segment) throws IOException {
+        // Tombstones only matter while an older segment may still hold records they delete
+        boolean oldest = segments.firstKey() == segment.id();
+        List<LogRecord> scanned = new ArrayList<>();
+        // Conversations deleted here and created again later, copied whole after their tombstone
+        Set<UUID> recreated = new HashSet<>();
+        LogCodec.scan(segment, (record, at) -> {
+            UUID id = conversationOf(record);
+            if (recreated.contains(id)) {
+                return;
+            }
+            if (record instanceof LogRecord.ConversationDelete && !oldest && conversations.containsKey(id)) {
+                recreated.add(id);
+                scanned.add(record);
+            } else if (isLive(record, at, oldest)) {
+                scanned.add(record);
+            }
+        });
+        // A copied tombstone lands after the later records of its conversation, so copy those after it too
+        List<LogRecord> live = new ArrayList<>(scanned.size());
+        for (LogRecord record : scanned) {
+            live.add(record);
+            if (record instanceof LogRecord.ConversationDelete delete && recreated.contains(delete.id())) {
+                live.addAll(liveRecords(delete.id()));
+            }
+        }
+
+        for (int from = 0; from < live.size(); from += COMPACTION_FRAME_RECORDS) {
+            List<LogRecord> chunk = live.subList(from, Math.min(live.size(), from + COMPACTION_FRAME_RECORDS));
+            List<LogLocation> at = appendFrame(chunk);
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < chunk.size(); i++) {
+                    relocate(chunk.get(i), at.get(i));
+                }
+                indexedEnd = active.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        // The copies must be durable before the originals go
+        active.force();
+
+        long freed = segment.size();
+        lock.writeLock().lock();
+        try {
+            segments.remove(segment.id());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        segment.delete();
+        log.info("Compacted {}: kept {} records, freed {} bytes", segment.path().getFileName(), live.size(), freed);
+    }
+
+    private boolean isLive(LogRecord record, LogLocation at, boolean oldestSegment) {
+        if (record instanceof LogRecord.ConversationPut put) {
+            Entry entry = conversations.get(put.id());
+            return entry != null && at.equals(entry.location);
+        } else if (record instanceof LogRecord.MessageAppend message) {
+            Entry entry = conversations.get(message.conversationId());
+            return entry != null && at.equals(entry.messages.get(new MessageKey(message.createdAt(), message.id())));
+        }
+        return !oldestSegment;
+    }
+
+    private static UUID conversationOf(LogRecord record) {
+        if (record instanceof LogRecord.ConversationPut put) {
+            return put.id();
+        } else if (record instanceof LogRecord.MessageAppend message) {
+            return message.conversationId();
+        }
+        return ((LogRecord.ConversationDelete) record).id();
+    }
+
+    /** The conversation record and messages of {@code id} as the index points at them, wherever they are. */
+    private List<LogRecord> liveRecords(UUID id) throws IOException {
+        Entry entry = conversations.get(id);
+        List<LogRecord> records = new ArrayList<>(entry.messages.size() + 1);
+        records.add(entry.state);
+        for (LogLocation at : entry.messages.values()) {
+            records.add(LogCodec.decode(segments.get(at.segment()).read(at.position(), at.length())));
+        }
+        return records;
+    }
+
+    /** Point the index at the copy of a record, releasing the original. Caller holds the write lock. */
+    private void relocate(LogRecord record, LogLocation to) {
+        segments.get(to.segment()).addLive(to.length());
+        if (record instanceof LogRecord.ConversationPut put) {
+            Entry entry = conversations.get(put.id());
+            release(entry.location);
+            entry.location = to;
+        } else if (record instanceof LogRecord.MessageAppend message) {
+            LogLocation from = conversations.get(message.conversationId()).messages
+                    .put(new MessageKey(message.createdAt(), message.id()), to);
+            if (from != null) {
+                release(from);
+            }
+        }
+    }
+
+    // ---- Reads ----
+
+    Conversation conversation(UUID id) {
+        return withReadLock(() -> {
+            Entry entry = conversations.get(id);
+            return entry != null ? snapshot(id, entry) : null;
+        });
+    }
+
+    /**
+     * Conversations in most-recently-updated order, after ({@code afterUpdatedAt}, {@code afterId})
+     * if given, skipping {@code offset}.
+     */
+    List<Conversation> conversations(Instant afterUpdatedAt, UUID afterId, long offset, int limit) {
+        return withReadLock(() -> {
+            NavigableSet<UpdatedKey> keys = afterId == null
+                    ? byUpdated
+                    : byUpdated.tailSet(new UpdatedKey(afterUpdatedAt, afterId), false);
+            List<Conversation> page = new ArrayList<>(Math.min(limit, keys.size()));
+            Iterator<UpdatedKey> it = keys.iterator();
+            for (long skipped = 0; skipped < offset && it.hasNext(); skipped++) {
+                it.next();
+            }
+            while (page.size() < limit && it.hasNext()) {
+                UUID id = it.next().id();
+                page.add(snapshot(id, conversations.get(id)));
+            }
+            return page;
+        });
+    }
+
+    List<UUID> conversationIds() {
+        return withReadLock(() -> new ArrayList<>(conversations.keySet()));
+    }
+
+    /**
+     * Messages of a conversation oldest first, or newest first unless {@code ascending},
+     * continuing from ({@code fromCreatedAt}, {@code fromId}) exclusive if given, skipping {@code offset}.
+     */
+    List<Message> messages(UUID conversationId, Instant fromCreatedAt, UUID fromId,
+                           boolean ascending, long offset, int limit) throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = conversations.get(conversationId);
+            if (entry == null) {
+                return List.of();
+            }
+            NavigableMap<MessageKey, LogLocation> view = entry.messages;
+            if (fromId != null) {
+                MessageKey from = new MessageKey(fromCreatedAt, fromId);
+                view = ascending ? view.tailMap(from, false) : view.headMap(from, false);
+            }
+            if (!ascending) {
+                view = view.descendingMap();
+            }
+            List<Message> page = new ArrayList<>(Math.min(limit, view.size()));
+            Iterator<LogLocation> it = view.values().iterator();
+            for (long skipped = 0; skipped < offset && it.hasNext(); skipped++) {
+                it.next();
+            }
+            while (page.size() < limit && it.hasNext()) {
+                page.add(readMessage(it.next()));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** One message of a conversation, found in the index, or null. */
+    Message message(UUID conversationId, UUID id) throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = conversations.get(conversationId);
+            if (entry == null) {
+                return null;
+            }
+            for (Map.Entry<MessageKey, LogLocation> message : entry.messages.entrySet()) {
+                if (message.getKey().id().equals(id)) {
+                    return readMessage(message.getValue());
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Message readMessage(LogLocation at) throws IOException {
+        return toMessage((LogRecord.MessageAppend) LogCodec.decode(
+                segments.get(at.segment()).read(at.position(), at.length())));
+    }
+
+    private static Message toMessage(LogRecord.MessageAppend record) {
+        Message message = new Message();
+        message.setId(record.id());
+        message.setConversationId(record.conversationId());
+        message.setRole(record.role());
+        message.setContent(record.content());
+        message.setCreatedAt(record.createdAt());
+        message.setTruncated(record.truncated());
+        message.setStats(record.stats());
+        return message;
+    }
+
+    private static Conversation snapshot(UUID id, Entry entry) {
+        Conversation conversation = new Conversation();
+        conversation.setId(id);
+        conversation.setTitle(entry.state.title());
+        conversation.setCreatedAt(entry.state.createdAt());
+        conversation.setUpdatedAt(entry.updatedAt);
+        conversation.setMessageCount(entry.messages.size());
+        conversation.setSummary(entry.state.summary());
+        conversation.setSummarizedUntil(entry.state.summarizedUntil());
+        return conversation;
+    }
+
+    // ---- Change feed ----
+
+    /** A log position as one number: the segment id above the byte offset within it. */
+    static long lsn(int segment, long position) {
+        return ((long) segment << 32) | position;
+    }
+
+    /**
+     * The live records written from log position {@code from} on (0 for the whole log), whole
+     * frames at a time until at least {@code size} changes are collected. Superseded records are
+     * skipped, and a message brings its conversation along, whose count it changed. Records moved
+     * by compaction come again; clients store them by id. A position before the oldest segment,
+     * whose deletes compaction may have dropped, or past the end of the log starts over from the
+     * beginning with {@code reset} set.
+     */
+    Changes changes(long from, int size) throws IOException {
+        lock.readLock().lock();
+        try {
+            long end = lsn(active.id(), indexedEnd);
+            boolean reset = from != 0 && (from < lsn(segments.firstKey(), 0) || from > end);
+            long position = reset ? 0 : from;
+
+            Map<UUID, Conversation> changed = new LinkedHashMap<>();
+            List<Message> messages = new ArrayList<>();
+            Set<UUID> deleted = new LinkedHashSet<>();
+            LogCodec.RecordVisitor collect = (record, at) -> {
+                if (record instanceof LogRecord.ConversationPut put) {
+                    Entry entry = conversations.get(put.id());
+                    if (entry != null && at.equals(entry.location)) {
+                        changed.put(put.id(), snapshot(put.id(), entry));
+                    }
+                } else if (record instanceof LogRecord.MessageAppend message) {
+                    Entry entry = conversations.get(message.conversationId());
+                    if (entry != null
+                            && at.equals(entry.messages.get(new MessageKey(message.createdAt(), message.id())))) {
+                        messages.add(toMessage(message));
+                        changed.putIfAbsent(message.conversationId(), snapshot(message.conversationId(), entry));
+                    }
+                } else if (record instanceof LogRecord.ConversationDelete delete) {
+                    deleted.add(delete.id());
+                }
+            };
+
+            int first = (int) (position >>> 32);
+            for (LogSegment segment : segments.tailMap(first, true).values()) {
+                long limit = segment == active ? indexedEnd : segment.size();
+                long at = segment.id() == first ? position & 0xFFFFFFFFL : 0;
+                long next = at;
+                while (changed.size() + messages.size() + deleted.size() < size
+                        && (next = LogCodec.scanFrame(segment, at, limit, collect)) >= 0) {
+                    at = next;
+                }
+                position = lsn(segment.id(), at);
+                if (next >= 0) {
+                    break;
+                }
+                // Done with this segment, so continue from the next even if this one is compacted away
+                Integer following = segments.higherKey(segment.id());
+                if (following != null) {
+                    position = lsn(following, 0);
+                }
+            }
+            return new Changes(new ArrayList<>(changed.values()), messages, new ArrayList<>(deleted),
+                    position, position < end, reset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** A page of the change feed; {@code next} is the log position to continue from. */
+    record Changes(List<Conversation> conversations, List<Message> messages, List<UUID> deleted,
+                   long next, boolean more, boolean reset) {}
+
+    private long totalBytes(boolean live) {
+        return segments.values().stream().mapToLong(s -> live ? s.liveBytes() : s.size()).sum();
+    }
+
+    private <T> T withReadLock(Supplier<T> work) {
+        lock.readLock().lock();
+        try {
+            return work.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            write(() -> {
+                active.force();
+                return true;
+            }).block(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
+            log.warn("Could not sync the storage log on shutdown: {}", e.getMessage());
+        }
+        writer.dispose();
+        for (LogSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Could not close {}: {}", segment.path(), e.getMessage());
+            }
+        }
+    }
+
+    private static final class Entry {
+        LogRecord.ConversationPut state;
+        LogLocation location;
+        // Latest of the conversation record's time and its messages' write times
+        Instant updatedAt;
+        final TreeMap<MessageKey, LogLocation> messages = new TreeMap<>();
+
+        Entry(Instant updatedAt) {
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private record Orphan(MessageKey key, LogLocation at, Instant writtenAt) {}
+
+    /** Message order: oldest first, ties broken by id. */
+    private record MessageKey(Instant createdAt, UUID id) implements Comparable<MessageKey> {
+        private static final Comparator<MessageKey> ORDER =
+                Comparator.comparing(MessageKey::createdAt).thenComparing(MessageKey::id);
+
+        @Override
+        public int compareTo(MessageKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    /** Conversation order: most recently updated first, ties broken by id descending. */
+    private record UpdatedKey(Instant updatedAt, UUID id) implements Comparable<UpdatedKey> {
+        private static final Comparator<UpdatedKey> ORDER =
+                Comparator.comparing(UpdatedKey::updatedAt).thenComparing(UpdatedKey::id).reversed();
+
+        @Override
+        public int compareTo(UpdatedKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
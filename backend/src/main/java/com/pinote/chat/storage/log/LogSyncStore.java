@@ -0,0 +1,35 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.SyncPage;
+import com.pinote.chat.model.SyncToken;
+import com.pinote.chat.storage.SyncStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/** Change feed of the embedded log: the tail of the log after the token's log position. */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "log")
+public class LogSyncStore implements SyncStore {
+
+    static final String STORE = "log";
+
+    private final LogStorage storage;
+
+    public LogSyncStore(LogStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public Mono<SyncPage> changes(SyncToken since, int size) {
+        boolean foreign = since != null && !STORE.equals(since.store());
+        long from = since == null || foreign ? 0 : since.position();
+        return storage.read(() -> storage.changes(from, size)).map(changes -> new SyncPage(
+                changes.conversations(),
+                changes.messages(),
+                changes.deleted(),
+                new SyncToken(STORE, changes.next(), 0, SyncToken.NONE).encode(),
+                changes.more(),
+                changes.reset() || foreign));
+    }
+}
@@ -0,0 +1,118 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.storage.MessageStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodically moves the messages of conversations idle for {@code idle-days} into the
+ * {@link MessageArchive}, a batch of the longest idle ones at a time. A conversation that
+ * fails to archive is skipped until restart.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
+public class ConversationArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationArchiver.class);
+
+    private static final String CANDIDATES_SQL = """
+        SELECT c.id, c.updated_at FROM conversations c
+        WHERE c.updated_at < :cutoff
+          AND EXISTS (SELECT 1 FROM messages m WHERE m.conversation_id = c.id)
+          AND NOT (c.id = ANY(:skip))
+        ORDER BY c.updated_at
+        LIMIT :limit
+    """;
+
+    private final DatabaseClient db;
+    private final MessageStore messageStore;
+    private final MessageArchive archive;
+    private final boolean enabled;
+    private final Duration idleTime;
+    private final Duration interval;
+    private final int batchSize;
+    private final Set<UUID> failed = ConcurrentHashMap.newKeySet();
+    private Disposable loop;
+
+    public ConversationArchiver(DatabaseClient db,
+                                MessageStore messageStore,
+                                MessageArchive archive,
+                                @Value("${app.storage.archive.enabled:true}") boolean enabled,
+                                @Value("${app.storage.archive.idle-days:30}") long idleDays,
+                                @Value("${app.storage.archive.interval-minutes:10}") long intervalMinutes,
+                                @Value("${app.storage.archive.batch-size:20}") int batchSize) {
+        this.db = db;
+        this.messageStore = messageStore;
+        this.archive = archive;
+        this.enabled = enabled;
+        this.idleTime = Duration.ofDays(idleDays);
+        this.interval = Duration.ofMinutes(Math.max(1, intervalMinutes));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        loop = Flux.interval(Duration.ofMinutes(1), interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> archiveIdle()
+                        .doOnError(e -> log.warn("Archiving failed: {}", e.getMessage()))
+                        .onErrorResume(e -> Mono.empty()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (loop != null) {
+            loop.dispose();
+        }
+    }
+
+    /** Archive one batch of idle conversations; emits how many were archived. */
+    public Mono<Long> archiveIdle() {
+        return db.sql(CANDIDATES_SQL)
+                .bind("cutoff", Instant.now().minus(idleTime))
+                .bind("skip", failed.toArray(UUID[]::new))
+                .bind("limit", batchSize)
+                .map(row -> new Candidate(row.get("id", UUID.class), row.get("updated_at", Instant.class)))
+                .all()
+                .concatMap(this::archive)
+                .filter(done -> done)
+                .count()
+                .doOnNext(n -> {
+                    if (n > 0) {
+                        log.info("Archived {} idle conversations", n);
+                    }
+                });
+    }
+
+    private Mono<Boolean> archive(Candidate candidate) {
+        return messageStore.findByConversationId(candidate.id())
+                .collectList()
+                .flatMap(messages -> archive.archive(candidate.id(), candidate.updatedAt(), messages))
+                .onErrorResume(e -> {
+                    log.warn("Could not archive conversation {}: {}", candidate.id(), e.getMessage());
+                    failed.add(candidate.id());
+                    return Mono.just(false);
+                });
+    }
+
+    private record Candidate(UUID id, Instant updatedAt) {}
+}
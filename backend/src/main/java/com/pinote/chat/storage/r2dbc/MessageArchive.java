@@ -0,0 +1,441 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.model.GenerationStats;
+import com.pinote.chat.model.Message;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold tier for the messages of idle conversations: one deflate-compressed blob per
+ * conversation in {@code archived_messages}, next to a stripped tsvector so search still finds
+ * them. Archiving replaces the rows in {@code messages} by the blob in one statement; restoring
+ * puts them back in one statement. Ids of archived conversations are loaded once and kept in
+ * memory, so reads of other conversations cost nothing extra, and a few recently decompressed
+ * conversations are cached.
+ */
+@Component
+@DependsOn("initializer")
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
+public class MessageArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchive.class);
+
+    private static final int FORMAT_VERSION = 2;
+    /** Blobs written before generation stats were archived; still read. */
+    private static final int FORMAT_VERSION_WITHOUT_STATS = 1;
+    private static final int CACHED_CONVERSATIONS = 8;
+
+    /** (created_at, id) with ids compared as unsigned bytes, the order Postgres uses. */
+    static final Comparator<Message> ORDER = Comparator.comparing(Message::getCreatedAt)
+            .thenComparing(Message::getId, MessageArchive::compareUuids);
+
+    /**
+     * Only archives if the conversation is unchanged since it was read; the row lock makes a
+     * concurrent append wait, and an append that committed first fails the updated_at check.
+     * The blob keeps the newest sync stamp of the messages it replaces.
+     */
+    private static final String ARCHIVE_SQL = """
+        WITH locked AS (
+            SELECT id FROM conversations WHERE id = :id AND updated_at = :updatedAt FOR UPDATE
+        ),
+        stored AS (
+            INSERT INTO archived_messages (conversation_id, message_count, raw_bytes, stored_bytes, content_tsv, blob,
+                                           change_xid)
+            SELECT id, :count, :rawBytes, :storedBytes, strip(to_tsvector('simple', :text)), :blob,
+                   (SELECT COALESCE(max(change_xid), 0) FROM messages WHERE conversation_id = :id)
+            FROM locked
+            ON CONFLICT (conversation_id) DO UPDATE
+                SET message_count = EXCLUDED.message_count,
+                    change_xid = GREATEST(archived_messages.change_xid, EXCLUDED.change_xid),
+                    raw_bytes = EXCLUDED.raw_bytes,
+                    stored_bytes = EXCLUDED.stored_bytes,
+                    content_tsv = EXCLUDED.content_tsv,
+                    blob = EXCLUDED.blob,
+                    archived_at = NOW()
+            RETURNING conversation_id
+        ),
+        deleted AS (
+            DELETE FROM messages
+            WHERE conversation_id IN (SELECT conversation_id FROM stored) AND id = ANY(:ids)
+            RETURNING id
+        )
+        SELECT (SELECT count(*) FROM stored) AS archived, (SELECT count(*) FROM deleted) AS deleted
+    """;
+
+    private static final String RESTORE_SQL = """
+        WITH restored AS (
+            DELETE FROM archived_messages WHERE conversation_id = :id RETURNING conversation_id
+        )
+        INSERT INTO messages (id, conversation_id, role, content, created_at, truncated,
+                              stats_model, stats_backend, stats_prompt_tokens, stats_completion_tokens,
+                              stats_first_token_millis, stats_total_millis, stats_load_millis,
+                              stats_prompt_eval_millis, stats_eval_millis)
+        SELECT m.id, r.conversation_id, m.role, m.content,
+               TIMESTAMPTZ 'epoch' + m.micros * INTERVAL '1 microsecond', m.truncated,
+               m.model, m.backend, m.prompt_tokens, m.completion_tokens,
+               m.first_token_millis, m.total_millis, m.load_millis, m.prompt_eval_millis, m.eval_millis
+        FROM restored r,
+             unnest(CAST(:ids AS uuid[]), CAST(:roles AS text[]), CAST(:contents AS text[]),
+                    CAST(:micros AS bigint[]), CAST(:truncated AS boolean[]),
+                    CAST(:models AS text[]), CAST(:backends AS text[]),
+                    CAST(:promptTokens AS int[]), CAST(:completionTokens AS int[]),
+                    CAST(:firstTokenMillis AS bigint[]), CAST(:totalMillis AS bigint[]),
+                    CAST(:loadMillis AS bigint[]), CAST(:promptEvalMillis AS bigint[]),
+                    CAST(:evalMillis AS bigint[]))
+                 AS m(id, role, content, micros, truncated, model, backend, prompt_tokens, completion_tokens,
+                      first_token_millis, total_millis, load_millis, prompt_eval_millis, eval_millis)
+        ON CONFLICT (id) DO NOTHING
+    """;
+
+    private final DatabaseClient db;
+    private final Set<UUID> archived = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, List<Message>> decompressed = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    /** Completes once the archived ids are loaded; a failed load is retried by the next caller. */
+    private final Mono<Void> loaded;
+
+    private final Timer archiveTimer;
+    private final Timer restoreTimer;
+    private final DistributionSummary archivedBytes;
+    private final DistributionSummary restoredBytes;
+    private final DistributionSummary ratio;
+
+    public MessageArchive(DatabaseClient db, MeterRegistry meterRegistry) {
+        this.db = db;
+        this.loaded = db.sql("SELECT conversation_id FROM archived_messages")
+                .map(row -> row.get("conversation_id", UUID.class))
+                .all()
+                .doOnNext(archived::add)
+                .then(refreshTotals())
+                .doOnSuccess(v -> log.info("{} conversations in the message archive", archived.size()))
+                .doOnError(e -> log.warn("Could not load the message archive: {}", e.getMessage()))
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), e -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+
+        this.archiveTimer = Timer.builder("storage.archive.archive")
+                .description("Time to archive one conversation")
+                .register(meterRegistry);
+        this.restoreTimer = Timer.builder("storage.archive.restore")
+                .description("Time to restore one conversation")
+                .register(meterRegistry);
+        this.archivedBytes = DistributionSummary.builder("storage.archive.archived.bytes")
+                .description("Message text archived per conversation")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.restoredBytes = DistributionSummary.builder("storage.archive.restored.bytes")
+                .description("Message text restored per conversation")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.ratio = DistributionSummary.builder("storage.archive.ratio")
+                .description("Raw to compressed size per archived conversation")
+                .register(meterRegistry);
+        Gauge.builder("storage.archive.conversations", archived, Set::size)
+                .register(meterRegistry);
+        Gauge.builder("storage.archive.raw.bytes", rawBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.archive.stored.bytes", storedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.archive.reclaimed.bytes", this, a -> a.rawBytes.get() - a.storedBytes.get())
+                .description("Message text bytes saved by compression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /** Archived messages of a conversation in order, or an empty list if it has none. */
+    public Mono<List<Message>> messages(UUID conversationId) {
+        return loaded.then(Mono.defer(() -> archived.contains(conversationId)
+                ? load(conversationId)
+                : Mono.just(List.<Message>of())));
+    }
+
+    private Mono<List<Message>> load(UUID conversationId) {
+        List<Message> cached;
+        synchronized (decompressed) {
+            cached = decompressed.get(conversationId);
+        }
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return db.sql("SELECT blob FROM archived_messages WHERE conversation_id = :id")
+                .bind("id", conversationId)
+                .map(row -> row.get("blob", byte[].class))
+                .one()
+                .publishOn(Schedulers.boundedElastic())
+                .map(blob -> decode(conversationId, blob))
+                .doOnNext(messages -> cache(conversationId, messages))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    // Gone with its conversation
+                    archived.remove(conversationId);
+                    return List.of();
+                }));
+    }
+
+    /**
+     * Move {@code messages} (all of the conversation's, in order) into the archive, unless the
+     * conversation was updated after {@code updatedAt}. Returns whether it was archived.
+     */
+    public Mono<Boolean> archive(UUID conversationId, Instant updatedAt, List<Message> messages) {
+        Timer.Sample sample = Timer.start();
+        return loaded.then(Mono.fromCallable(() -> encode(messages)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(encoded -> db.sql(ARCHIVE_SQL)
+                        .bind("id", conversationId)
+                        .bind("updatedAt", updatedAt)
+                        .bind("count", messages.size())
+                        .bind("rawBytes", encoded.rawBytes())
+                        .bind("storedBytes", encoded.blob().length)
+                        .bind("text", encoded.text())
+                        .bind("blob", encoded.blob())
+                        .bind("ids", messages.stream().map(Message::getId).toArray(UUID[]::new))
+                        .map(row -> row.get("archived", Long.class))
+                        .one()
+                        .map(n -> n > 0)
+                        .doOnNext(done -> {
+                            if (done) {
+                                archived.add(conversationId);
+                                cache(conversationId, messages);
+                                sample.stop(archiveTimer);
+                                archivedBytes.record(encoded.rawBytes());
+                                ratio.record((double) encoded.rawBytes() / Math.max(1, encoded.blob().length));
+                            }
+                        }))
+                .flatMap(done -> done ? refreshTotals().thenReturn(true) : Mono.just(false));
+    }
+
+    /** Move an archived conversation back into {@code messages}; a no-op if it is not archived. */
+    public Mono<Void> restore(UUID conversationId) {
+        Timer.Sample sample = Timer.start();
+        return messages(conversationId)
+                .filter(messages -> !messages.isEmpty())
+                .flatMap(messages -> db.sql(RESTORE_SQL)
+                        .bind("id", conversationId)
+                        .bind("ids", messages.stream().map(Message::getId).toArray(UUID[]::new))
+                        .bind("roles", messages.stream().map(Message::getRole).toArray(String[]::new))
+                        .bind("contents", messages.stream().map(Message::getContent).toArray(String[]::new))
+                        .bind("micros", messages.stream()
+                                .map(m -> ChronoUnit.MICROS.between(Instant.EPOCH, m.getCreatedAt()))
+                                .toArray(Long[]::new))
+                        .bind("truncated", messages.stream().map(Message::isTruncated).toArray(Boolean[]::new))
+                        .bind("models", stats(messages, GenerationStats::model).toArray(String[]::new))
+                        .bind("backends", stats(messages, GenerationStats::backend).toArray(String[]::new))
+                        .bind("promptTokens", stats(messages, GenerationStats::promptTokens).toArray(Integer[]::new))
+                        .bind("completionTokens",
+                                stats(messages, GenerationStats::completionTokens).toArray(Integer[]::new))
+                        .bind("firstTokenMillis",
+                                stats(messages, GenerationStats::firstTokenMillis).toArray(Long[]::new))
+                        .bind("totalMillis", stats(messages, GenerationStats::totalMillis).toArray(Long[]::new))
+                        .bind("loadMillis", stats(messages, GenerationStats::loadMillis).toArray(Long[]::new))
+                        .bind("promptEvalMillis",
+                                stats(messages, GenerationStats::promptEvalMillis).toArray(Long[]::new))
+                        .bind("evalMillis", stats(messages, GenerationStats::evalMillis).toArray(Long[]::new))
+                        .fetch()
+                        .rowsUpdated()
+                        .doOnNext(n -> {
+                            sample.stop(restoreTimer);
+                            restoredBytes.record(messages.stream()
+                                    .mapToLong(m -> m.getContent().getBytes(StandardCharsets.UTF_8).length)
+                                    .sum());
+                            archived.remove(conversationId);
+                            synchronized (decompressed) {
+                                decompressed.remove(conversationId);
+                            }
+                        }))
+                .flatMap(n -> refreshTotals());
+    }
+
+    /**
+     * Archived messages and rows of one conversation in order, each message once. A read that
+     * overlaps a restore can see the same messages in the blob and as restored rows.
+     */
+    static List<Message> merge(List<Message> archived, List<Message> live) {
+        Map<UUID, Message> byId = new LinkedHashMap<>();
+        for (Message m : archived) {
+            byId.put(m.getId(), m);
+        }
+        for (Message m : live) {
+            byId.put(m.getId(), m);
+        }
+        List<Message> all = new ArrayList<>(byId.values());
+        all.sort(ORDER);
+        return all;
+    }
+
+    /** One stats field per message, null where a message has no stats or lacks the field. */
+    private static <T> Stream<T> stats(List<Message> messages, Function<GenerationStats, T> field) {
+        return messages.stream().map(m -> m.getStats() != null ? field.apply(m.getStats()) : null);
+    }
+
+    private Mono<Void> refreshTotals() {
+        return db.sql("SELECT COALESCE(sum(raw_bytes), 0) AS raw, COALESCE(sum(stored_bytes), 0) AS stored FROM archived_messages")
+                .map(row -> new long[] {row.get("raw", Long.class), row.get("stored", Long.class)})
+                .one()
+                .doOnNext(totals -> {
+                    rawBytes.set(totals[0]);
+                    storedBytes.set(totals[1]);
+                })
+                .then();
+    }
+
+    private void cache(UUID conversationId, List<Message> messages) {
+        synchronized (decompressed) {
+            decompressed.put(conversationId, messages);
+            if (decompressed.size() > CACHED_CONVERSATIONS) {
+                decompressed.remove(decompressed.keySet().iterator().next());
+            }
+        }
+    }
+
+    // ---- Blob format: version byte, then deflated count and (id, micros, role, truncated, content, stats)
+    // per message. Stats are a presence flag, then each field as a presence flag and value; version 1 has none ----
+
+    record Encoded(byte[] blob, int rawBytes, String text) {}
+
+    static Encoded encode(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(FORMAT_VERSION);
+        StringBuilder text = new StringBuilder();
+        int raw = 0;
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(messages.size());
+            for (Message m : messages) {
+                byte[] content = m.getContent().getBytes(StandardCharsets.UTF_8);
+                out.writeLong(m.getId().getMostSignificantBits());
+                out.writeLong(m.getId().getLeastSignificantBits());
+                out.writeLong(ChronoUnit.MICROS.between(Instant.EPOCH, m.getCreatedAt()));
+                out.writeUTF(m.getRole());
+                out.writeBoolean(m.isTruncated());
+                out.writeInt(content.length);
+                out.write(content);
+                writeStats(out, m.getStats());
+                raw += content.length;
+                text.append(m.getContent()).append('\n');
+            }
+        } finally {
+            deflater.end();
+        }
+        return new Encoded(bytes.toByteArray(), raw, text.toString());
+    }
+
+    static List<Message> decode(UUID conversationId, byte[] blob) {
+        if (blob.length == 0 || (blob[0] != FORMAT_VERSION && blob[0] != FORMAT_VERSION_WITHOUT_STATS)) {
+            throw new IllegalStateException("Unknown archive format for conversation " + conversationId);
+        }
+        boolean withStats = blob[0] == FORMAT_VERSION;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(blob, 1, blob.length - 1)))) {
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Message m = new Message();
+                m.setId(new UUID(in.readLong(), in.readLong()));
+                m.setConversationId(conversationId);
+                m.setCreatedAt(Instant.EPOCH.plus(in.readLong(), ChronoUnit.MICROS));
+                m.setRole(in.readUTF());
+                m.setTruncated(in.readBoolean());
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                m.setContent(new String(content, StandardCharsets.UTF_8));
+                if (withStats) {
+                    m.setStats(readStats(in));
+                }
+                messages.add(m);
+            }
+            return List.copyOf(messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeStats(DataOutputStream out, GenerationStats stats) throws IOException {
+        out.writeBoolean(stats != null);
+        if (stats == null) {
+            return;
+        }
+        writeString(out, stats.model());
+        writeString(out, stats.backend());
+        writeNumber(out, stats.promptTokens());
+        writeNumber(out, stats.completionTokens());
+        writeNumber(out, stats.firstTokenMillis());
+        writeNumber(out, stats.totalMillis());
+        writeNumber(out, stats.loadMillis());
+        writeNumber(out, stats.promptEvalMillis());
+        writeNumber(out, stats.evalMillis());
+    }
+
+    private static GenerationStats readStats(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new GenerationStats(readString(in), readString(in), toInt(readNumber(in)), toInt(readNumber(in)),
+                readNumber(in), readNumber(in), readNumber(in), readNumber(in), readNumber(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNumber(DataOutputStream out, Number value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.longValue());
+        }
+    }
+
+    private static Long readNumber(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static Integer toInt(Long value) {
+        return value != null ? value.intValue() : null;
+    }
+
+    private static int compareUuids(UUID a, UUID b) {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
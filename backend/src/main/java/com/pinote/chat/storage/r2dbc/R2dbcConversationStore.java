@@ -0,0 +1,99 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.repository.ConversationRepository;
+import com.pinote.chat.storage.ConversationStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
+public class R2dbcConversationStore implements ConversationStore {
+
+    /** Rows fetched per round trip when streaming, so a stream holds only this many at once. */
+    private static final int STREAM_FETCH_SIZE = 64;
+
+    private static final String DELETE_SQL = """
+        WITH deleted AS (DELETE FROM conversations WHERE id = :id RETURNING id)
+        INSERT INTO deleted_conversations (conversation_id)
+        SELECT id FROM deleted
+        ON CONFLICT (conversation_id) DO UPDATE
+            SET change_xid = EXCLUDED.change_xid, deleted_at = EXCLUDED.deleted_at
+    """;
+
+    private final ConversationRepository conversationRepo;
+    private final DatabaseClient db;
+    private final R2dbcConverter converter;
+
+    public R2dbcConversationStore(ConversationRepository conversationRepo,
+                                  DatabaseClient db,
+                                  R2dbcConverter converter) {
+        this.conversationRepo = conversationRepo;
+        this.db = db;
+        this.converter = converter;
+    }
+
+    @Override
+    public Flux<Conversation> findAllPaged(int size, long offset) {
+        return conversationRepo.findAllPaged(size, offset);
+    }
+
+    @Override
+    public Flux<Conversation> findFirstByUpdated(int size) {
+        return conversationRepo.findFirstByUpdated(size);
+    }
+
+    @Override
+    public Flux<Conversation> findAfterByUpdated(Instant updatedAt, UUID id, int size) {
+        return conversationRepo.findAfterByUpdated(updatedAt, id, size);
+    }
+
+    @Override
+    public Mono<Conversation> findById(UUID id) {
+        return conversationRepo.findById(id);
+    }
+
+    @Override
+    public Flux<Conversation> streamAll() {
+        return db.sql("SELECT * FROM conversations ORDER BY created_at, id")
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map((row, metadata) -> converter.read(Conversation.class, row, metadata))
+                .all();
+    }
+
+    @Override
+    public Mono<Conversation> create(Conversation conversation) {
+        return conversationRepo.save(conversation);
+    }
+
+    @Override
+    public Mono<Boolean> insertIfAbsent(Conversation c) {
+        return conversationRepo.insertIfAbsent(c.getId(), c.getTitle(), c.getCreatedAt(), c.getUpdatedAt())
+                .map(inserted -> inserted > 0);
+    }
+
+    @Override
+    public Mono<Conversation> updateTitle(UUID id, String title) {
+        return conversationRepo.updateTitle(id, title);
+    }
+
+    @Override
+    public Mono<Integer> updateSummary(UUID id, String summary, Instant summarizedUntil) {
+        return conversationRepo.updateSummary(id, summary, summarizedUntil);
+    }
+
+    /** Messages go with it through ON DELETE CASCADE; a tombstone is left for sync clients. */
+    @Override
+    public Mono<Void> deleteById(UUID id) {
+        return db.sql(DELETE_SQL)
+                .bind("id", id)
+                .then();
+    }
+}
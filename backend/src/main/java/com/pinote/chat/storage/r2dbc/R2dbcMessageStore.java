@@ -0,0 +1,257 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.GenerationStats;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.repository.MessageRepository;
+import com.pinote.chat.storage.MessageStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Messages on Postgres. Conversations moved to the {@link MessageArchive} are read from there
+ * merged with any rows added since, and restored to {@code messages} before a new message is added.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
+public class R2dbcMessageStore implements MessageStore {
+
+    private static final int COLUMNS_PER_MESSAGE = 15;
+    /** Rows fetched per round trip when streaming, so a stream holds only this many at once. */
+    private static final int STREAM_FETCH_SIZE = 64;
+
+    private final MessageRepository messageRepo;
+    private final DatabaseClient db;
+    private final R2dbcConverter converter;
+    private final MessageArchive archive;
+
+    public R2dbcMessageStore(MessageRepository messageRepo,
+                             DatabaseClient db,
+                             R2dbcConverter converter,
+                             MessageArchive archive) {
+        this.messageRepo = messageRepo;
+        this.db = db;
+        this.converter = converter;
+        this.archive = archive;
+    }
+
+    @Override
+    public Flux<Message> findByConversationId(UUID conversationId) {
+        return read(conversationId, messageRepo.findByConversationIdOrderByCreatedAtAsc(conversationId),
+                all -> all);
+    }
+
+    /** The row if there is one, else the message from the archive. */
+    @Override
+    public Mono<Message> findById(UUID conversationId, UUID id) {
+        return messageRepo.findById(id)
+                .filter(m -> m.getConversationId().equals(conversationId))
+                .switchIfEmpty(archive.messages(conversationId)
+                        .flatMapIterable(archived -> archived)
+                        .filter(m -> m.getId().equals(id))
+                        .next());
+    }
+
+    /** Rows come through a cursor; an archived conversation is decompressed as a whole. */
+    @Override
+    public Flux<Message> stream(UUID conversationId) {
+        Flux<Message> rows = db.sql("SELECT * FROM messages WHERE conversation_id = :id ORDER BY created_at, id")
+                .bind("id", conversationId)
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map((row, metadata) -> converter.read(Message.class, row, metadata))
+                .all();
+        return read(conversationId, rows, all -> all);
+    }
+
+    @Override
+    public Flux<Message> findByConversationIdPaged(UUID conversationId, int size, long offset) {
+        return read(conversationId, messageRepo.findByConversationIdPaged(conversationId, size, offset),
+                all -> offset >= all.size()
+                        ? List.of()
+                        : all.subList((int) offset, (int) Math.min(all.size(), offset + size)));
+    }
+
+    @Override
+    public Flux<Message> findOldest(UUID conversationId, int size) {
+        return read(conversationId, messageRepo.findOldest(conversationId, size),
+                all -> all.subList(0, Math.min(all.size(), size)));
+    }
+
+    @Override
+    public Flux<Message> findAfter(UUID conversationId, Instant createdAt, UUID id, int size) {
+        return read(conversationId, messageRepo.findAfter(conversationId, createdAt, id, size),
+                all -> all.stream().filter(m -> compare(m, createdAt, id) > 0).limit(size).toList());
+    }
+
+    @Override
+    public Flux<Message> findNewest(UUID conversationId, int size) {
+        return read(conversationId, messageRepo.findNewest(conversationId, size),
+                all -> reversed(all).stream().limit(size).toList());
+    }
+
+    @Override
+    public Flux<Message> findBefore(UUID conversationId, Instant createdAt, UUID id, int size) {
+        return read(conversationId, messageRepo.findBefore(conversationId, createdAt, id, size),
+                all -> reversed(all).stream().filter(m -> compare(m, createdAt, id) < 0).limit(size).toList());
+    }
+
+    /**
+     * {@code rows} for a conversation that is not archived. Otherwise its archived messages and
+     * rows are merged in order, each message once, and {@code slice} picks the requested part.
+     */
+    private Flux<Message> read(UUID conversationId, Flux<Message> rows,
+                               Function<List<Message>, List<Message>> slice) {
+        return archive.messages(conversationId).flatMapMany(archived -> {
+            if (archived.isEmpty()) {
+                return rows;
+            }
+            return messageRepo.findByConversationIdOrderByCreatedAtAsc(conversationId)
+                    .collectList()
+                    .flatMapIterable(live -> slice.apply(MessageArchive.merge(archived, live)));
+        });
+    }
+
+    private static int compare(Message m, Instant createdAt, UUID id) {
+        Message key = new Message();
+        key.setCreatedAt(createdAt);
+        key.setId(id);
+        return MessageArchive.ORDER.compare(m, key);
+    }
+
+    private static List<Message> reversed(List<Message> messages) {
+        List<Message> copy = new ArrayList<>(messages);
+        Collections.reverse(copy);
+        return copy;
+    }
+
+    /** An archived conversation that gets a new message is active again, so it is restored first. */
+    @Override
+    public Mono<Conversation> append(Message m) {
+        return archive.restore(m.getConversationId())
+                .then(Mono.defer(() -> insertAll(List.of(m))))
+                .mapNotNull(byId -> byId.get(m.getConversationId()));
+    }
+
+    /**
+     * One statement: a multi-row INSERT of the messages, then one UPDATE adding each
+     * conversation's count, returning the updated conversations by id.
+     */
+    @Override
+    public Mono<Map<UUID, Conversation>> appendAll(List<Message> messages) {
+        return Flux.fromIterable(messages)
+                .map(Message::getConversationId)
+                .distinct()
+                .concatMap(archive::restore)
+                .then(Mono.defer(() -> insertAll(messages)));
+    }
+
+    private Mono<Map<UUID, Conversation>> insertAll(List<Message> messages) {
+        Map<UUID, Integer> counts = new LinkedHashMap<>();
+        for (Message m : messages) {
+            counts.merge(m.getConversationId(), 1, Integer::sum);
+        }
+        StringBuilder sql = new StringBuilder("WITH inserted AS (");
+        appendInsert(sql, messages.size());
+        sql.append("), counts (id, n) AS (VALUES ");
+        int param = messages.size() * COLUMNS_PER_MESSAGE;
+        int row = 0;
+        for (int i = 0; i < counts.size(); i++) {
+            sql.append(row++ > 0 ? ", " : "")
+                    .append("($").append(++param).append("::uuid, $").append(++param).append("::int)");
+        }
+        sql.append(") UPDATE conversations c SET message_count = c.message_count + counts.n, updated_at = NOW(), ")
+                .append("change_xid = pg_current_xact_id()::text::bigint ")
+                .append("FROM counts WHERE c.id = counts.id RETURNING c.*");
+
+        DatabaseClient.GenericExecuteSpec spec = bindMessages(db.sql(sql.toString()), messages);
+        int index = messages.size() * COLUMNS_PER_MESSAGE;
+        for (Map.Entry<UUID, Integer> count : counts.entrySet()) {
+            spec = spec.bind(index++, count.getKey()).bind(index++, count.getValue());
+        }
+        return spec.map((r, metadata) -> converter.read(Conversation.class, r, metadata))
+                .all()
+                .collectMap(Conversation::getId, conv -> conv, HashMap::new);
+    }
+
+    /**
+     * One statement: insert the messages that do not exist yet, then add the number inserted
+     * per conversation to its count, leaving updated_at alone.
+     */
+    @Override
+    public Mono<Integer> importAll(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return Mono.just(0);
+        }
+        StringBuilder sql = new StringBuilder("WITH inserted AS (");
+        appendInsert(sql, messages.size());
+        sql.append(" ON CONFLICT (id) DO NOTHING RETURNING conversation_id), ")
+                .append("counts AS (SELECT conversation_id, count(*) AS n FROM inserted GROUP BY conversation_id), ")
+                .append("updated AS (UPDATE conversations c SET message_count = c.message_count + counts.n, ")
+                .append("change_xid = pg_current_xact_id()::text::bigint ")
+                .append("FROM counts WHERE c.id = counts.conversation_id RETURNING c.id) ")
+                .append("SELECT COALESCE(sum(n), 0)::int AS inserted FROM counts");
+        return bindMessages(db.sql(sql.toString()), messages)
+                .map(row -> row.get("inserted", Integer.class))
+                .one();
+    }
+
+    /** {@code INSERT INTO messages ... VALUES} with positional parameters for {@code rows} messages. */
+    private static void appendInsert(StringBuilder sql, int rows) {
+        sql.append("INSERT INTO messages (id, conversation_id, role, content, created_at, truncated, ")
+                .append("stats_model, stats_backend, stats_prompt_tokens, stats_completion_tokens, ")
+                .append("stats_first_token_millis, stats_total_millis, stats_load_millis, stats_prompt_eval_millis, ")
+                .append("stats_eval_millis) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            int p = i * COLUMNS_PER_MESSAGE;
+            sql.append(i > 0 ? ", " : "").append('(');
+            for (int c = 1; c <= COLUMNS_PER_MESSAGE; c++) {
+                sql.append(c > 1 ? ", $" : "$").append(p + c);
+            }
+            sql.append(')');
+        }
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindMessages(DatabaseClient.GenericExecuteSpec spec,
+                                                                  List<Message> messages) {
+        int index = 0;
+        for (Message m : messages) {
+            spec = spec.bind(index++, m.getId())
+                    .bind(index++, m.getConversationId())
+                    .bind(index++, m.getRole())
+                    .bind(index++, m.getContent())
+                    .bind(index++, m.getCreatedAt())
+                    .bind(index++, m.isTruncated());
+            GenerationStats stats = m.getStats();
+            boolean has = stats != null;
+            spec = bindNullable(spec, index++, has ? stats.model() : null, String.class);
+            spec = bindNullable(spec, index++, has ? stats.backend() : null, String.class);
+            spec = bindNullable(spec, index++, has ? stats.promptTokens() : null, Integer.class);
+            spec = bindNullable(spec, index++, has ? stats.completionTokens() : null, Integer.class);
+            spec = bindNullable(spec, index++, has ? stats.firstTokenMillis() : null, Long.class);
+            spec = bindNullable(spec, index++, has ? stats.totalMillis() : null, Long.class);
+            spec = bindNullable(spec, index++, has ? stats.loadMillis() : null, Long.class);
+            spec = bindNullable(spec, index++, has ? stats.promptEvalMillis() : null, Long.class);
+            spec = bindNullable(spec, index++, has ? stats.evalMillis() : null, Long.class);
+        }
+        return spec;
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec,
+                                                                  int index, Object value, Class<?> type) {
+        return value != null ? spec.bind(index, value) : spec.bindNull(index, type);
+    }
+}
@@ -0,0 +1,175 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.CursorPage;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.model.ScoreCursor;
+import com.pinote.chat.model.SearchHit;
+import com.pinote.chat.storage.SearchStore;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Search on Postgres. Messages match through their stored {@code content_tsv} column and are
+ * ranked with {@code ts_rank_cd}; titles match by substring through a trigram index and add
+ * their similarity to the score. Archived conversations match through the stripped tsvector of
+ * their whole text. Hits are grouped per conversation and ordered by score, and only the rows of
+ * the requested page get a highlighted snippet; for archived ones it is taken from the decompressed messages.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
+public class R2dbcSearchStore implements SearchStore {
+
+    /** Best-matching messages reported per conversation. */
+    private static final int MESSAGE_IDS_PER_HIT = 5;
+
+    private static final String SEARCH_SQL = """
+        WITH q AS (SELECT plainto_tsquery('simple', :query) AS tsq),
+        message_hits AS (
+            SELECT m.conversation_id,
+                   max(ts_rank_cd(m.content_tsv, q.tsq)) AS rank,
+                   (array_agg(m.id ORDER BY ts_rank_cd(m.content_tsv, q.tsq) DESC, m.created_at DESC))[1:%d] AS message_ids
+            FROM messages m, q
+            WHERE m.content_tsv @@ q.tsq
+            GROUP BY m.conversation_id
+        ),
+        archive_hits AS (
+            SELECT a.conversation_id, ts_rank(a.content_tsv, q.tsq) AS rank
+            FROM archived_messages a, q
+            WHERE a.content_tsv @@ q.tsq
+        ),
+        title_hits AS (
+            SELECT id AS conversation_id, similarity(title, :query) AS similarity
+            FROM conversations
+            WHERE title ILIKE '%%' || :query || '%%'
+        ),
+        ranked AS (
+            SELECT c.*,
+                   (GREATEST(COALESCE(mh.rank, 0), COALESCE(ah.rank, 0)) + COALESCE(th.similarity, 0))::float8 AS score,
+                   COALESCE(mh.message_ids, '{}') AS message_ids
+            FROM (SELECT conversation_id FROM message_hits
+                  UNION
+                  SELECT conversation_id FROM archive_hits
+                  UNION
+                  SELECT conversation_id FROM title_hits) hits
+            JOIN conversations c ON c.id = hits.conversation_id
+            LEFT JOIN message_hits mh ON mh.conversation_id = c.id
+            LEFT JOIN archive_hits ah ON ah.conversation_id = c.id
+            LEFT JOIN title_hits th ON th.conversation_id = c.id
+        ),
+        page AS (
+            SELECT * FROM ranked
+            %s
+            ORDER BY score DESC, id DESC
+            LIMIT :limit
+        )
+        SELECT page.*,
+               ts_headline('simple', m.content, q.tsq,
+                           'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5') AS snippet
+        FROM page
+        CROSS JOIN q
+        LEFT JOIN messages m ON m.id = page.message_ids[1]
+        ORDER BY page.score DESC, page.id DESC
+    """;
+
+    /** Ranks and highlights decompressed messages of an archived conversation. */
+    private static final String ARCHIVED_SNIPPET_SQL = """
+        WITH q AS (SELECT plainto_tsquery('simple', :query) AS tsq),
+        m AS (
+            SELECT id, content, to_tsvector('simple', content) AS tsv
+            FROM unnest(CAST(:ids AS uuid[]), CAST(:contents AS text[])) AS m(id, content)
+        )
+        SELECT m.id,
+               ts_headline('simple', m.content, q.tsq,
+                           'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5') AS snippet
+        FROM m, q
+        WHERE m.tsv @@ q.tsq
+        ORDER BY ts_rank_cd(m.tsv, q.tsq) DESC
+        LIMIT %d
+    """.formatted(MESSAGE_IDS_PER_HIT);
+
+    /** Archived messages sent to Postgres for highlighting, after a plain substring filter. */
+    private static final int ARCHIVED_SNIPPET_CANDIDATES = 50;
+
+    private static final String FIRST_PAGE_SQL = SEARCH_SQL.formatted(MESSAGE_IDS_PER_HIT, "");
+    private static final String NEXT_PAGE_SQL = SEARCH_SQL.formatted(MESSAGE_IDS_PER_HIT,
+            "WHERE (score, id) < (:score, :id)");
+
+    private final DatabaseClient db;
+    private final R2dbcConverter converter;
+    private final MessageArchive archive;
+
+    public R2dbcSearchStore(DatabaseClient db, R2dbcConverter converter, MessageArchive archive) {
+        this.db = db;
+        this.converter = converter;
+        this.archive = archive;
+    }
+
+    @Override
+    public Mono<CursorPage<SearchHit>> search(String query, ScoreCursor cursor, int size) {
+        DatabaseClient.GenericExecuteSpec spec = db.sql(cursor == null ? FIRST_PAGE_SQL : NEXT_PAGE_SQL)
+                .bind("query", query)
+                .bind("limit", size + 1);
+        if (cursor != null) {
+            spec = spec.bind("score", cursor.score()).bind("id", cursor.id());
+        }
+        return spec.map(this::toHit)
+                .all()
+                .concatMap(hit -> hit.snippet() == null ? withArchivedSnippet(hit, query) : Mono.just(hit))
+                .collectList()
+                .map(hits -> {
+                    if (hits.size() <= size) {
+                        return new CursorPage<>(hits, null);
+                    }
+                    List<SearchHit> page = hits.subList(0, size);
+                    SearchHit last = page.get(size - 1);
+                    return new CursorPage<>(page, new ScoreCursor(last.score(), last.conversation().getId()).encode());
+                });
+    }
+
+    private Mono<SearchHit> withArchivedSnippet(SearchHit hit, String query) {
+        List<String> words = Arrays.stream(query.toLowerCase(Locale.ROOT).split("\\s+"))
+                .filter(word -> !word.isEmpty())
+                .toList();
+        return archive.messages(hit.conversation().getId())
+                .flatMap(messages -> {
+                    List<Message> candidates = messages.stream()
+                            .filter(m -> words.stream().anyMatch(m.getContent().toLowerCase(Locale.ROOT)::contains))
+                            .limit(ARCHIVED_SNIPPET_CANDIDATES)
+                            .toList();
+                    if (candidates.isEmpty()) {
+                        return Mono.just(hit);
+                    }
+                    return db.sql(ARCHIVED_SNIPPET_SQL)
+                            .bind("query", query)
+                            .bind("ids", candidates.stream().map(Message::getId).toArray(UUID[]::new))
+                            .bind("contents", candidates.stream().map(Message::getContent).toArray(String[]::new))
+                            .map(row -> new Highlight(row.get("id", UUID.class), row.get("snippet", String.class)))
+                            .all()
+                            .collectList()
+                            .map(found -> found.isEmpty() ? hit : new SearchHit(hit.conversation(), hit.score(),
+                                    found.get(0).snippet(), found.stream().map(Highlight::messageId).toList()));
+                });
+    }
+
+    private record Highlight(UUID messageId, String snippet) {}
+
+    private SearchHit toHit(Row row, RowMetadata metadata) {
+        Conversation conversation = converter.read(Conversation.class, row, metadata);
+        UUID[] messageIds = row.get("message_ids", UUID[].class);
+        return new SearchHit(conversation,
+                row.get("score", Double.class),
+                row.get("snippet", String.class),
+                messageIds != null ? Arrays.asList(messageIds) : List.of());
+    }
+}
@@ -0,0 +1,198 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.GenerationStats;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.model.SyncPage;
+import com.pinote.chat.model.SyncToken;
+import com.pinote.chat.storage.SyncStore;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Change feed on Postgres. Rows carry the id of the transaction that last wrote them
+ * ({@code change_xid}); deleted conversations leave a row in {@code deleted_conversations}.
+ * A page only covers transactions older than the oldest one still running, the snapshot's xmin,
+ * so a row committing late can never land behind a token already handed out. Within that bound,
+ * changes are ordered by (transaction, kind, id), and each page is read in one statement so it
+ * is a consistent snapshot.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.mode", havingValue = "postgres", matchIfMissing = true)
+public class R2dbcSyncStore implements SyncStore {
+
+    static final String STORE = "pg";
+
+    private static final int CONVERSATION = 1;
+    private static final int MESSAGE = 2;
+    private static final int ARCHIVED = 3;
+    private static final int DELETED = 4;
+
+    /** Each branch reads at most :limit keys from its (change_xid, id) index. */
+    private static final String CHANGES_SQL = """
+        WITH horizon AS (
+            SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint AS xid
+        ),
+        page AS (
+            SELECT * FROM (
+                (SELECT 1 AS kind, id, change_xid FROM conversations
+                 WHERE change_xid >= :xid AND (change_xid, 1, id) > (:xid, :kind, :id)
+                   AND change_xid < (SELECT xid FROM horizon)
+                 ORDER BY change_xid, id LIMIT :limit)
+                UNION ALL
+                (SELECT 2, id, change_xid FROM messages
+                 WHERE change_xid >= :xid AND (change_xid, 2, id) > (:xid, :kind, :id)
+                   AND change_xid < (SELECT xid FROM horizon)
+                 ORDER BY change_xid, id LIMIT :limit)
+                UNION ALL
+                (SELECT 3, conversation_id, change_xid FROM archived_messages
+                 WHERE change_xid >= :xid AND (change_xid, 3, conversation_id) > (:xid, :kind, :id)
+                   AND change_xid < (SELECT xid FROM horizon)
+                 ORDER BY change_xid, conversation_id LIMIT :limit)
+                UNION ALL
+                (SELECT 4, conversation_id, change_xid FROM deleted_conversations
+                 WHERE change_xid >= :xid AND (change_xid, 4, conversation_id) > (:xid, :kind, :id)
+                   AND change_xid < (SELECT xid FROM horizon)
+                 ORDER BY change_xid, conversation_id LIMIT :limit)
+            ) changes
+            ORDER BY change_xid, kind, id
+            LIMIT :limit
+        )
+        SELECT h.xid AS horizon, p.kind, p.id, p.change_xid,
+               c.title, c.created_at AS conversation_created_at, c.updated_at, c.message_count,
+               m.conversation_id, m.role, m.content, m.created_at AS message_created_at, m.truncated,
+               m.stats_model, m.stats_backend, m.stats_prompt_tokens, m.stats_completion_tokens,
+               m.stats_first_token_millis, m.stats_total_millis, m.stats_load_millis,
+               m.stats_prompt_eval_millis, m.stats_eval_millis
+        FROM horizon h
+        LEFT JOIN page p ON true
+        LEFT JOIN conversations c ON p.kind = 1 AND c.id = p.id
+        LEFT JOIN messages m ON p.kind = 2 AND m.id = p.id
+        ORDER BY p.change_xid, p.kind, p.id
+    """;
+
+    private final DatabaseClient db;
+    private final MessageArchive archive;
+
+    public R2dbcSyncStore(DatabaseClient db, MessageArchive archive) {
+        this.db = db;
+        this.archive = archive;
+    }
+
+    @Override
+    public Mono<SyncPage> changes(SyncToken since, int size) {
+        boolean foreign = since != null && !STORE.equals(since.store());
+        SyncToken from = foreign ? null : since;
+        return read(from, size).flatMap(rows -> {
+            long horizon = rows.get(0).horizon();
+            if (from != null && from.position() > horizon) {
+                // Issued by another database, or by this one before it was restored from a backup
+                return read(null, size).flatMap(all -> page(all, size, true));
+            }
+            return page(rows, size, foreign);
+        });
+    }
+
+    /** The changes after {@code from}, one more than {@code size}, or only the horizon if there are none. */
+    private Mono<List<Change>> read(SyncToken from, int size) {
+        SyncToken after = from != null ? from : new SyncToken(STORE, 0, 0, SyncToken.NONE);
+        return db.sql(CHANGES_SQL)
+                .bind("xid", after.position())
+                .bind("kind", after.kind())
+                .bind("id", after.id())
+                .bind("limit", size + 1)
+                .map(R2dbcSyncStore::change)
+                .all()
+                .collectList();
+    }
+
+    private Mono<SyncPage> page(List<Change> rows, int size, boolean reset) {
+        long horizon = rows.get(0).horizon();
+        List<Change> changes = rows.stream().filter(c -> c.kind() != 0).toList();
+        boolean more = changes.size() > size;
+        List<Change> delivered = more ? changes.subList(0, size) : changes;
+
+        List<Conversation> conversations = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+        List<UUID> deleted = new ArrayList<>();
+        List<UUID> archived = new ArrayList<>();
+        for (Change change : delivered) {
+            if (change.conversation() != null) {
+                conversations.add(change.conversation());
+            } else if (change.message() != null) {
+                messages.add(change.message());
+            } else if (change.kind() == ARCHIVED) {
+                archived.add(change.id());
+            } else if (change.kind() == DELETED) {
+                deleted.add(change.id());
+            }
+        }
+        SyncToken next = more
+                ? delivered.get(delivered.size() - 1).token()
+                : new SyncToken(STORE, horizon, 0, SyncToken.NONE);
+        // An archived conversation comes whole; its messages are not split across pages
+        return Flux.fromIterable(archived)
+                .concatMap(archive::messages)
+                .doOnNext(messages::addAll)
+                .then(Mono.fromSupplier(() -> new SyncPage(conversations, messages, deleted,
+                        next.encode(), more, reset)));
+    }
+
+    private static Change change(Readable row) {
+        long horizon = row.get("horizon", Long.class);
+        Integer kind = row.get("kind", Integer.class);
+        if (kind == null) {
+            return new Change(horizon, 0, 0, null, null, null);
+        }
+        UUID id = row.get("id", UUID.class);
+        long xid = row.get("change_xid", Long.class);
+        Conversation conversation = null;
+        Message message = null;
+        if (kind == CONVERSATION && row.get("title", String.class) != null) {
+            conversation = new Conversation();
+            conversation.setId(id);
+            conversation.setTitle(row.get("title", String.class));
+            conversation.setCreatedAt(row.get("conversation_created_at", Instant.class));
+            conversation.setUpdatedAt(row.get("updated_at", Instant.class));
+            conversation.setMessageCount(row.get("message_count", Integer.class));
+        } else if (kind == MESSAGE && row.get("conversation_id", UUID.class) != null) {
+            message = new Message();
+            message.setId(id);
+            message.setConversationId(row.get("conversation_id", UUID.class));
+            message.setRole(row.get("role", String.class));
+            message.setContent(row.get("content", String.class));
+            message.setCreatedAt(row.get("message_created_at", Instant.class));
+            message.setTruncated(Boolean.TRUE.equals(row.get("truncated", Boolean.class)));
+            message.setStats(stats(row));
+        }
+        return new Change(horizon, kind, xid, id, conversation, message);
+    }
+
+    /** The {@code stats_*} columns, which are all null on messages without stats. */
+    private static GenerationStats stats(Readable row) {
+        Long totalMillis = row.get("stats_total_millis", Long.class);
+        if (totalMillis == null) {
+            return null;
+        }
+        return new GenerationStats(row.get("stats_model", String.class), row.get("stats_backend", String.class),
+                row.get("stats_prompt_tokens", Integer.class), row.get("stats_completion_tokens", Integer.class),
+                row.get("stats_first_token_millis", Long.class), totalMillis,
+                row.get("stats_load_millis", Long.class), row.get("stats_prompt_eval_millis", Long.class),
+                row.get("stats_eval_millis", Long.class));
+    }
+
+    private record Change(long horizon, int kind, long xid, UUID id, Conversation conversation, Message message) {
+        SyncToken token() {
+            return new SyncToken(STORE, xid, kind, id);
+        }
+    }
+}
@@ -6,6 +6,10 @@ CREATE TABLE IF NOT EXISTS conversations (
     message_count   INTEGER NOT NULL DEFAULT 0
 );
 
+-- Rolling summary of turns that no longer fit the model's context window
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS summary TEXT;
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS summarized_until TIMESTAMPTZ;
+
 CREATE TABLE IF NOT EXISTS messages (
     id              UUID PRIMARY KEY DEFAULT gen_random_uuid(),
     conversation_id UUID NOT NULL REFERENCES conversations(id) ON DELETE CASCADE,
@@ -14,9 +18,69 @@ CREATE TABLE IF NOT EXISTS messages (
     created_at      TIMESTAMPTZ NOT NULL DEFAULT NOW()
 );
 
-CREATE INDEX IF NOT EXISTS idx_messages_conversation_id ON messages(conversation_id, created_at);
-CREATE INDEX IF NOT EXISTS idx_conversations_updated_at ON conversations(updated_at DESC);
+-- Set on assistant replies that were stopped before the model finished
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS truncated BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- Keyset pagination: (sort key, id) so the row-value comparison is a single index range.
+-- They also serve every query the earlier (sort key) indexes did, which only cost writes now
+DROP INDEX IF EXISTS idx_messages_conversation_id;
+DROP INDEX IF EXISTS idx_conversations_updated_at;
+CREATE INDEX IF NOT EXISTS idx_conversations_updated_id ON conversations(updated_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_created_id ON messages(conversation_id, created_at, id);
+
+-- Full-text search: a stored tsvector kept current by Postgres, so queries neither
+-- recompute it per row nor depend on matching the index expression
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS content_tsv TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('simple', content)) STORED;
+DROP INDEX IF EXISTS idx_messages_content_search;
+CREATE INDEX IF NOT EXISTS idx_messages_content_tsv ON messages USING GIN (content_tsv);
+
+-- Substring title search (ILIKE '%q%') served by a trigram index
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_conversations_title_trgm ON conversations USING GIN (title gin_trgm_ops);
+
+-- Cold tier: messages of idle conversations as one compressed blob each, with a stripped
+-- tsvector so search still finds them. The blob is already compressed, so TOAST stores it as is.
+CREATE TABLE IF NOT EXISTS archived_messages (
+    conversation_id UUID PRIMARY KEY REFERENCES conversations(id) ON DELETE CASCADE,
+    message_count   INTEGER NOT NULL,
+    raw_bytes       BIGINT NOT NULL,
+    stored_bytes    BIGINT NOT NULL,
+    content_tsv     TSVECTOR NOT NULL,
+    blob            BYTEA NOT NULL,
+    archived_at     TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+ALTER TABLE archived_messages ALTER COLUMN blob SET STORAGE EXTERNAL;
+CREATE INDEX IF NOT EXISTS idx_archived_messages_content_tsv ON archived_messages USING GIN (content_tsv);
+
+-- Delta sync: every write stamps its rows with the writing transaction's id. GET /sync returns rows
+-- stamped below the oldest transaction still running, so a row can never commit behind a token.
+-- Existing rows start at 0; setting the default afterwards avoids rewriting the tables.
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS change_xid BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE conversations ALTER COLUMN change_xid SET DEFAULT pg_current_xact_id()::text::bigint;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS change_xid BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE messages ALTER COLUMN change_xid SET DEFAULT pg_current_xact_id()::text::bigint;
+-- An archived conversation keeps the newest stamp of its messages, so archiving is not a change
+ALTER TABLE archived_messages ADD COLUMN IF NOT EXISTS change_xid BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS idx_conversations_change ON conversations(change_xid, id);
+CREATE INDEX IF NOT EXISTS idx_messages_change ON messages(change_xid, id);
+CREATE INDEX IF NOT EXISTS idx_archived_messages_change ON archived_messages(change_xid, conversation_id);
+
+-- One row per deleted conversation, so sync clients learn about deletes
+CREATE TABLE IF NOT EXISTS deleted_conversations (
+    conversation_id UUID PRIMARY KEY,
+    change_xid      BIGINT NOT NULL DEFAULT pg_current_xact_id()::text::bigint,
+    deleted_at      TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+CREATE INDEX IF NOT EXISTS idx_deleted_conversations_change ON deleted_conversations(change_xid, conversation_id);
 
--- Full-text search index on message content
-CREATE INDEX IF NOT EXISTS idx_messages_content_search
-    ON messages USING GIN (to_tsvector('simple', content));
+-- Generation stats of assistant replies (Message.stats); null on everything else
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_model VARCHAR(255);
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_backend VARCHAR(255);
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_prompt_tokens INTEGER;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_completion_tokens INTEGER;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_first_token_millis BIGINT;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_total_millis BIGINT;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_load_millis BIGINT;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_prompt_eval_millis BIGINT;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS stats_eval_millis BIGINT;
@@ -0,0 +1,73 @@
+package com.pinote.chat.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.pinote.chat.config.CodecConfig;
+import com.pinote.chat.service.ChatService;
+import com.pinote.chat.service.ChatSessionRegistry;
+import com.pinote.chat.service.TokenCoalescer;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolverBuilder;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ChatControllerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebTestClient client = WebTestClient
+            .bindToController(new ChatController(mock(ChatService.class), mock(TokenCoalescer.class),
+                    mock(ChatSessionRegistry.class), objectMapper, new RequestedContentTypeResolverBuilder().build()))
+            .httpMessageCodecs(new CodecConfig().cborCodecCustomizer(objectMapper)::customize)
+            .build();
+
+    @Test
+    void anyTypeGetsServerSentEvents() {
+        client.get().uri("/conversations/{id}/chat", UUID.randomUUID())
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class)
+                .value(body -> assertThat(body).contains("event:error").contains("SESSION_EXPIRED"));
+    }
+
+    @Test
+    void anyApplicationTypeGetsTheCborSequence() throws Exception {
+        assertCborSequence(MediaType.parseMediaType("application/*"));
+    }
+
+    @Test
+    void cborSequenceWhenNamed() throws Exception {
+        assertCborSequence(CodecConfig.APPLICATION_CBOR_SEQ);
+    }
+
+    @Test
+    void preferredTypeWins() {
+        client.get().uri("/conversations/{id}/chat", UUID.randomUUID())
+                .header("Accept", "application/cbor-seq;q=0.5, text/event-stream")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM);
+    }
+
+    private void assertCborSequence(MediaType accept) throws Exception {
+        byte[] body = client.get().uri("/conversations/{id}/chat", UUID.randomUUID())
+                .accept(accept)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(CodecConfig.APPLICATION_CBOR_SEQ)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        JsonNode event = new ObjectMapper(new CBORFactory()).readTree(body);
+        assertThat(event.get("event").asText()).isEqualTo("error");
+        assertThat(event.get("data").get("code").asText()).isEqualTo("SESSION_EXPIRED");
+    }
+}
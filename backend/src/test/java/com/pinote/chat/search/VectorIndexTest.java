@@ -0,0 +1,132 @@
+package com.pinote.chat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class VectorIndexTest {
+
+    private static final int DIMS = 32;
+
+    @Test
+    void quantizedScoresStayCloseToExactCosine() {
+        Random random = new Random(1);
+        VectorIndex index = new VectorIndex("test", Integer.MAX_VALUE);
+        List<float[]> vectors = new ArrayList<>();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            vectors.add(randomVector(random));
+            ids.add(UUID.randomUUID());
+            index.add(ids.get(i), UUID.randomUUID(), vectors.get(i));
+        }
+
+        for (int q = 0; q < 20; q++) {
+            float[] query = randomVector(random);
+            for (VectorIndex.Match match : index.search(query, 200, 1)) {
+                float[] stored = vectors.get(ids.indexOf(match.messageId()));
+                assertThat((double) match.score()).isCloseTo(cosine(query, stored), within(0.02));
+            }
+        }
+        VectorIndex.Match self = index.search(vectors.get(7), 1, 1).get(0);
+        assertThat(self.messageId()).isEqualTo(ids.get(7));
+        assertThat((double) self.score()).isCloseTo(1.0, within(0.01));
+    }
+
+    @Test
+    void clusteredSearchFindsMostOfTheExactNearestNeighbours() {
+        Random random = new Random(2);
+        VectorIndex index = new VectorIndex("test", 256);
+        List<float[]> centers = IntStream.range(0, 20).mapToObj(i -> randomVector(random)).toList();
+        List<float[]> vectors = new ArrayList<>();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            vectors.add(near(centers.get(i % centers.size()), 0.4f, random));
+            ids.add(UUID.randomUUID());
+            index.add(ids.get(i), UUID.randomUUID(), vectors.get(i));
+        }
+        assertThat(index.clusters()).isGreaterThan(1);
+
+        int k = 10;
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = near(centers.get(q % centers.size()), 0.4f, random);
+            Set<UUID> exact = new HashSet<>();
+            IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors.get(i))))
+                    .limit(k)
+                    .forEach(i -> exact.add(ids.get(i)));
+            for (VectorIndex.Match match : index.search(query, k, 8)) {
+                if (exact.contains(match.messageId())) {
+                    found++;
+                }
+            }
+        }
+        assertThat((double) found / (queries * k)).isGreaterThan(0.9);
+    }
+
+    @Test
+    void replacingAVectorMovesItToItsNewCluster() {
+        Random random = new Random(3);
+        VectorIndex index = new VectorIndex("test", 64);
+        float[] left = randomVector(random);
+        float[] right = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) {
+            right[i] = -left[i];
+        }
+        UUID conversationId = UUID.randomUUID();
+        for (int i = 0; i < 200; i++) {
+            index.add(UUID.randomUUID(), conversationId, near(i % 2 == 0 ? left : right, 0.2f, random));
+        }
+        assertThat(index.clusters()).isGreaterThan(1);
+
+        UUID moved = UUID.randomUUID();
+        index.add(moved, conversationId, left);
+        index.add(moved, conversationId, right);
+
+        assertThat(index.size()).isEqualTo(201);
+        List<VectorIndex.Match> matches = index.search(right, 1, 1);
+        assertThat(matches).extracting(VectorIndex.Match::messageId).containsExactly(moved);
+        assertThat((double) matches.get(0).score()).isCloseTo(1.0, within(0.01));
+        assertThat(index.search(left, 201, 1)).extracting(VectorIndex.Match::messageId).doesNotContain(moved);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static float[] near(float[] center, float noise, Random random) {
+        double norm = Math.sqrt(dot(center, center));
+        float[] vector = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) {
+            vector[i] = (float) (center[i] / norm + noise * random.nextGaussian() / Math.sqrt(DIMS));
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        return dot(a, b) / Math.sqrt(dot(a, a) * dot(b, b));
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,184 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.storage.MessageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchedMessageWriterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final MessageStore store = mock(MessageStore.class);
+    /** Batches passed to appendAll, with the sink that commits each. */
+    private final List<List<Message>> batches = new CopyOnWriteArrayList<>();
+    private final List<Sinks.One<Map<UUID, Conversation>>> commits = new CopyOnWriteArrayList<>();
+
+    BatchedMessageWriterTest() {
+        when(store.appendAll(anyList())).thenAnswer(call -> {
+            List<Message> batch = call.getArgument(0);
+            Sinks.One<Map<UUID, Conversation>> commit = Sinks.one();
+            batches.add(batch);
+            commits.add(commit);
+            return commit.asMono();
+        });
+        when(store.append(any())).thenAnswer(call -> Mono.just(conversation(call.<Message>getArgument(0))));
+    }
+
+    @Test
+    void writesABatchOnceItIsFull() {
+        BatchedMessageWriter writer = writer(3, 60_000, 8, 8);
+        UUID conversationId = UUID.randomUUID();
+
+        List<Mono<Conversation>> writes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            writes.add(writer.write(message(conversationId)).cache());
+            writes.get(i).subscribe();
+        }
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(3);
+        commit(0);
+        for (Mono<Conversation> write : writes) {
+            StepVerifier.create(write)
+                    .assertNext(conv -> assertThat(conv.getId()).isEqualTo(conversationId))
+                    .expectComplete()
+                    .verify(TIMEOUT);
+        }
+    }
+
+    @Test
+    void writesAPartialBatchAfterTheDelay() {
+        BatchedMessageWriter writer = writer(32, 200, 64, 64);
+        Mono<Conversation> write = writer.write(message(UUID.randomUUID())).cache();
+        write.subscribe();
+
+        assertThat(batches).isEmpty();
+        awaitBatches(1);
+        assertThat(batches.get(0)).hasSize(1);
+        commit(0);
+        StepVerifier.create(write).expectNextCount(1).expectComplete().verify(TIMEOUT);
+    }
+
+    @Test
+    void rejectsWritesOnceTheQueueAndWaitingListAreFull() {
+        BatchedMessageWriter writer = writer(2, 60_000, 2, 2);
+        UUID conversationId = UUID.randomUUID();
+        List<Mono<Conversation>> writes = new ArrayList<>();
+        // Two in flight, two queued, two waiting for room
+        for (int i = 0; i < 6; i++) {
+            Mono<Conversation> write = writer.write(message(conversationId)).cache();
+            write.subscribe(conv -> {}, e -> {});
+            writes.add(write);
+        }
+        assertThat(writer.pending()).isEqualTo(6);
+
+        StepVerifier.create(writer.write(message(conversationId)))
+                .expectError(StorageBusyException.class)
+                .verify(TIMEOUT);
+
+        for (int batch = 0; batch < 3; batch++) {
+            awaitBatches(batch + 1);
+            commit(batch);
+        }
+        for (Mono<Conversation> write : writes) {
+            StepVerifier.create(write).expectNextCount(1).expectComplete().verify(TIMEOUT);
+        }
+        assertThat(writer.pending()).isZero();
+    }
+
+    @Test
+    void flushWaitsOnlyForItsOwnConversation() {
+        BatchedMessageWriter writer = writer(1, 60_000, 8, 8);
+        UUID flushed = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+
+        writer.write(message(flushed)).subscribe();
+        Mono<Void> flush = writer.flush(flushed).cache();
+        flush.subscribe();
+        writer.write(message(other)).subscribe();
+
+        commit(0);
+        // The other conversation's message is still being written
+        StepVerifier.create(flush).expectComplete().verify(TIMEOUT);
+        assertThat(writer.pending()).isEqualTo(1);
+        StepVerifier.create(writer.flush(other).cache())
+                .then(() -> {
+                    awaitBatches(2);
+                    commit(1);
+                })
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void failedBatchIsWrittenOneByOne() {
+        BatchedMessageWriter writer = writer(2, 60_000, 8, 8);
+        Message good = message(UUID.randomUUID());
+        Message bad = message(UUID.randomUUID());
+        when(store.append(bad)).thenReturn(Mono.error(new IllegalStateException("bad row")));
+
+        Mono<Conversation> goodWrite = writer.write(good).cache();
+        Mono<Conversation> badWrite = writer.write(bad).cache();
+        goodWrite.subscribe(conv -> {}, e -> {});
+        badWrite.subscribe(conv -> {}, e -> {});
+        commits.get(0).tryEmitError(new IllegalStateException("batch failed"));
+
+        StepVerifier.create(goodWrite)
+                .assertNext(conv -> assertThat(conv.getId()).isEqualTo(good.getConversationId()))
+                .expectComplete()
+                .verify(TIMEOUT);
+        StepVerifier.create(badWrite).expectErrorMessage("bad row").verify(TIMEOUT);
+    }
+
+    private BatchedMessageWriter writer(int batchSize, long maxDelayMillis, int maxPending, int maxWaiting) {
+        return new BatchedMessageWriter(store, new SimpleMeterRegistry(), true,
+                batchSize, maxDelayMillis, maxPending, maxWaiting);
+    }
+
+    private void commit(int batch) {
+        Map<UUID, Conversation> updated = new HashMap<>();
+        for (Message m : batches.get(batch)) {
+            updated.put(m.getConversationId(), conversation(m));
+        }
+        commits.get(batch).tryEmitValue(updated);
+    }
+
+    private void awaitBatches(int n) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (batches.size() < n) {
+            assertThat(System.nanoTime()).as("batch %d was never written", n).isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Conversation conversation(Message m) {
+        Conversation conversation = new Conversation();
+        conversation.setId(m.getConversationId());
+        return conversation;
+    }
+
+    private static Message message(UUID conversationId) {
+        Message message = Message.create(conversationId, "user", "hello");
+        message.setId(UUID.randomUUID());
+        return message;
+    }
+}
@@ -0,0 +1,70 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.ChatEvent;
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.storage.MessageStore;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatServiceTest {
+
+    private final OllamaClient ollamaClient = mock(OllamaClient.class);
+    private final MessageStore messageStore = mock(MessageStore.class);
+    private final ConversationService conversationService = mock(ConversationService.class);
+    private final ContextWindowBuilder contextBuilder = mock(ContextWindowBuilder.class);
+    private final OllamaScheduler scheduler = mock(OllamaScheduler.class);
+    private final OllamaResponseCache responseCache = mock(OllamaResponseCache.class);
+
+    private final ChatService chatService = new ChatService(ollamaClient, messageStore, conversationService,
+            mock(TitleGenerationService.class), contextBuilder, mock(ConversationHistoryCache.class), scheduler,
+            responseCache, mock(ConversationEventBus.class), mock(InferenceMetrics.class));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void replyStoppedWhileQueuedIsNotSaved() {
+        Conversation conversation = Conversation.create("Stopped");
+        conversation.setId(UUID.randomUUID());
+        when(conversationService.addMessage(any())).thenReturn(Mono.just(conversation));
+        when(messageStore.findByConversationId(conversation.getId())).thenReturn(Flux.empty());
+        when(contextBuilder.build(eq(conversation), anyList(), any())).thenReturn(List.of());
+        when(ollamaClient.getCurrentModel()).thenReturn("model");
+        when(responseCache.share(any(), any())).thenAnswer(call -> call.<Supplier<Flux<?>>>getArgument(1).get());
+        // Waits in the queue until stopped
+        when(scheduler.schedule(any(), anyString(), any(), any(), any())).thenReturn(Flux.never());
+        Sinks.One<Boolean> stop = Sinks.one();
+
+        StepVerifier.create(chatService.chat(conversation.getId(), "hello", stop.asMono()))
+                .expectNextMatches(event -> event instanceof ChatEvent.MessageStart)
+                .then(() -> stop.tryEmitValue(true))
+                .assertNext(event -> {
+                    assertThat(event).isInstanceOf(ChatEvent.MessageEnd.class);
+                    assertThat(((ChatEvent.MessageEnd) event).truncated()).isTrue();
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        verify(conversationService, times(1)).addMessage(saved.capture());
+        assertThat(saved.getValue().getRole()).isEqualTo("user");
+    }
+}
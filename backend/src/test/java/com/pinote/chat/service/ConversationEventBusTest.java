@@ -0,0 +1,32 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.ConversationEvent;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.util.UUID;
+
+class ConversationEventBusTest {
+
+    @Test
+    void mergesTokensOfAReplyWhileTheClientWaits() {
+        ConversationEventBus bus = new ConversationEventBus(4);
+        UUID conversationId = UUID.randomUUID();
+        UUID messageId = UUID.randomUUID();
+        String expected = "token ".repeat(1000);
+
+        StepVerifier.create(bus.subscribe(conversationId), 0)
+                .then(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        bus.publish(new ConversationEvent.Tokens(conversationId, messageId, "token "));
+                    }
+                })
+                .thenRequest(1)
+                .expectNext(new ConversationEvent.Tokens(conversationId, messageId, expected))
+                .then(() -> bus.publish(new ConversationEvent.Tokens(conversationId, messageId, "more")))
+                .thenRequest(1)
+                .expectNext(new ConversationEvent.Tokens(conversationId, messageId, "more"))
+                .thenCancel()
+                .verify();
+    }
+}
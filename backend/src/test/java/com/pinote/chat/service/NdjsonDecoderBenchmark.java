@@ -0,0 +1,101 @@
+package com.pinote.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pinote.chat.model.OllamaChatChunk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes allocated per streamed chunk by {@link NdjsonDecoder}, next to decoding each line through
+ * a String as the client did before. Skipped unless run with {@code -Dbenchmark=true}, e.g.
+ * {@code mvn test -Dtest=NdjsonDecoderBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class NdjsonDecoderBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int RECORDS = 2_000;
+    private static final int NETWORK_BUFFER = 512;
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 50;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void allocatesLessPerRecordThanStringLines() throws Exception {
+        List<byte[]> stream = stream();
+
+        long decoder = bytesPerRecord(stream, this::decodeIncrementally);
+        long lines = bytesPerRecord(stream, this::decodeLines);
+        System.out.printf("NdjsonDecoder: %d bytes/record, String lines: %d bytes/record%n", decoder, lines);
+
+        assertThat(decoder).isLessThan(lines);
+    }
+
+    private long bytesPerRecord(List<byte[]> stream, Decode decode) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            assertThat(decode.all(stream)).isEqualTo(RECORDS);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ROUNDS; i++) {
+            decode.all(stream);
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / ((long) ROUNDS * RECORDS);
+    }
+
+    private int decodeIncrementally(List<byte[]> stream) {
+        NdjsonDecoder<OllamaChatChunk> decoder = new NdjsonDecoder<>(MAPPER, OllamaChatChunk.class);
+        int count = 0;
+        for (byte[] bytes : stream) {
+            count += decoder.decode(NdjsonDecoderTest.buffer(bytes)).size();
+        }
+        decoder.close();
+        return count;
+    }
+
+    /** Decode each buffer to a String, carry the partial last line over, and parse every line. */
+    private int decodeLines(List<byte[]> stream) throws Exception {
+        String carry = "";
+        int count = 0;
+        for (byte[] bytes : stream) {
+            DataBuffer buffer = NdjsonDecoderTest.buffer(bytes);
+            String text = carry + buffer.toString(StandardCharsets.UTF_8);
+            int start = 0;
+            for (int end; (end = text.indexOf('\n', start)) >= 0; start = end + 1) {
+                MAPPER.readValue(text.substring(start, end), OllamaChatChunk.class);
+                count++;
+            }
+            carry = text.substring(start);
+        }
+        return count;
+    }
+
+    /** A reply of {@link #RECORDS} token chunks, cut into network buffers regardless of lines. */
+    private static List<byte[]> stream() {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < RECORDS; i++) {
+            ndjson.append(NdjsonDecoderTest.line(i % 3 == 0 ? " 토큰" : " token", i == RECORDS - 1));
+        }
+        byte[] bytes = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+        List<byte[]> buffers = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += NETWORK_BUFFER) {
+            buffers.add(Arrays.copyOfRange(bytes, from, Math.min(bytes.length, from + NETWORK_BUFFER)));
+        }
+        return buffers;
+    }
+
+    @FunctionalInterface
+    private interface Decode {
+        int all(List<byte[]> stream) throws Exception;
+    }
+}
@@ -0,0 +1,95 @@
+package com.pinote.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pinote.chat.model.OllamaChatChunk;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NdjsonDecoderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void decodesEveryRecordOfABuffer() {
+        NdjsonDecoder<OllamaChatChunk> decoder = decoder();
+
+        List<OllamaChatChunk> chunks = decoder.decode(buffer(line("Hel", false) + line("lo", false) + line("!", true)));
+
+        assertThat(chunks).extracting(c -> c.message().content()).containsExactly("Hel", "lo", "!");
+        assertThat(chunks).extracting(OllamaChatChunk::done).containsExactly(false, false, true);
+    }
+
+    @Test
+    void reassemblesARecordSplitAtEveryByte() {
+        byte[] bytes = (line("안녕하세요 \"quoted\"", false) + line("next", true)).getBytes(StandardCharsets.UTF_8);
+        for (int split = 1; split < bytes.length; split++) {
+            NdjsonDecoder<OllamaChatChunk> decoder = decoder();
+            List<OllamaChatChunk> chunks = new ArrayList<>(decoder.decode(buffer(Arrays.copyOfRange(bytes, 0, split))));
+            chunks.addAll(decoder.decode(buffer(Arrays.copyOfRange(bytes, split, bytes.length))));
+
+            assertThat(chunks).as("split at %d", split)
+                    .extracting(c -> c.message().content()).containsExactly("안녕하세요 \"quoted\"", "next");
+        }
+    }
+
+    @Test
+    void reassemblesARecordSpanningManyBuffers() {
+        byte[] bytes = (line("a", false) + line("b".repeat(100), false) + line("c", true))
+                .getBytes(StandardCharsets.UTF_8);
+        NdjsonDecoder<OllamaChatChunk> decoder = decoder();
+        List<OllamaChatChunk> chunks = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += 7) {
+            chunks.addAll(decoder.decode(buffer(Arrays.copyOfRange(bytes, from, Math.min(bytes.length, from + 7)))));
+        }
+
+        assertThat(chunks).extracting(c -> c.message().content()).containsExactly("a", "b".repeat(100), "c");
+    }
+
+    @Test
+    void skipsAMalformedLineAndKeepsGoing() {
+        NdjsonDecoder<OllamaChatChunk> decoder = decoder();
+
+        List<OllamaChatChunk> chunks = decoder.decode(buffer(line("before", false) + "{\"message\": oops}\n"
+                + "{\"message\": {\"content\": \"cut\"\n" + line("after", true)));
+
+        assertThat(chunks).extracting(c -> c.message().content()).containsExactly("before", "after");
+    }
+
+    @Test
+    void decodesALastRecordWithoutNewline() {
+        NdjsonDecoder<OllamaChatChunk> decoder = decoder();
+
+        List<OllamaChatChunk> chunks = decoder.decode(buffer(line("one", false) + line("two", true).strip()));
+
+        assertThat(chunks).extracting(c -> c.message().content()).containsExactly("one", "two");
+    }
+
+    private static NdjsonDecoder<OllamaChatChunk> decoder() {
+        return new NdjsonDecoder<>(MAPPER, OllamaChatChunk.class);
+    }
+
+    static String line(String content, boolean done) {
+        try {
+            return "{\"model\":\"m\",\"message\":{\"role\":\"assistant\",\"content\":"
+                    + MAPPER.writeValueAsString(content) + "},\"done\":" + done + "}\n";
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static DataBuffer buffer(String text) {
+        return buffer(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static DataBuffer buffer(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+}
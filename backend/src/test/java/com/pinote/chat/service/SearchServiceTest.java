@@ -0,0 +1,72 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.SearchHit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SearchServiceTest {
+
+    @Test
+    void fusionRanksConversationsFoundByBothListsFirst() {
+        Conversation a = conversation();
+        Conversation b = conversation();
+        Conversation c = conversation();
+        UUID keywordMessage = UUID.randomUUID();
+        UUID semanticMessage = UUID.randomUUID();
+
+        List<SearchHit> fused = SearchService.fuse(
+                List.of(hit(a, 9.0, "<mark>a</mark>"), hit(b, 5.0, "<mark>b</mark>", keywordMessage)),
+                List.of(hit(b, 0.9, null, semanticMessage), hit(c, 0.8, null)));
+
+        assertThat(fused).extracting(hit -> hit.conversation().getId())
+                .containsExactly(b.getId(), a.getId(), c.getId());
+        assertThat(fused.get(0).score()).isCloseTo(1.0 / 62 + 1.0 / 61, within(1e-12));
+        assertThat(fused.get(1).score()).isCloseTo(1.0 / 61, within(1e-12));
+        assertThat(fused.get(2).score()).isCloseTo(1.0 / 62, within(1e-12));
+        // The keyword snippet is kept, and message ids of both lists are merged in rank order
+        assertThat(fused.get(0).snippet()).isEqualTo("<mark>b</mark>");
+        assertThat(fused.get(0).messageIds()).containsExactly(keywordMessage, semanticMessage);
+        assertThat(fused.get(2).snippet()).isNull();
+    }
+
+    @Test
+    void fusionKeepsAtMostFiveMessageIdsPerHit() {
+        Conversation a = conversation();
+        List<UUID> keywordIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        List<UUID> semanticIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        List<SearchHit> fused = SearchService.fuse(
+                List.of(new SearchHit(a, 1.0, null, keywordIds)),
+                List.of(new SearchHit(a, 0.5, null, semanticIds)));
+
+        assertThat(fused).hasSize(1);
+        assertThat(fused.get(0).messageIds()).hasSize(5).startsWith(keywordIds.toArray(UUID[]::new));
+    }
+
+    @Test
+    void fusionBreaksTiesByConversationId() {
+        Conversation a = conversation();
+        Conversation b = conversation();
+
+        List<SearchHit> fused = SearchService.fuse(List.of(hit(a, 1.0, null)), List.of(hit(b, 1.0, null)));
+
+        UUID higher = a.getId().compareTo(b.getId()) > 0 ? a.getId() : b.getId();
+        assertThat(fused.get(0).conversation().getId()).isEqualTo(higher);
+    }
+
+    private static SearchHit hit(Conversation conversation, double score, String snippet, UUID... messageIds) {
+        return new SearchHit(conversation, score, snippet, List.of(messageIds));
+    }
+
+    private static Conversation conversation() {
+        Conversation conversation = new Conversation();
+        conversation.setId(UUID.randomUUID());
+        return conversation;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pinote.chat.service;
+
+import com.pinote.chat.model.DeviceSample;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TelemetryRingTest {
+
+    @Test
+    void keepsTheNewestSamplesOldestFirstOnceFull() {
+        TelemetryRing ring = new TelemetryRing(3, 0);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(i * 1000L, sample(i, 50));
+        }
+
+        List<DeviceSample> samples = ring.samples();
+
+        assertThat(samples).extracting(DeviceSample::at)
+                .containsExactly(Instant.ofEpochMilli(3000), Instant.ofEpochMilli(4000), Instant.ofEpochMilli(5000));
+        assertThat(samples).extracting(DeviceSample::cpu).containsExactly(3.0, 4.0, 5.0);
+    }
+
+    @Test
+    void averagesSamplesIntoAlignedBucketsAndKeepsTheHottest() {
+        TelemetryRing ring = new TelemetryRing(4, 1000);
+        ring.add(1000, sample(10, 40));
+        ring.add(1500, sample(20, 60));
+        ring.add(1900, sample(30, 50));
+        ring.add(2200, sample(40, 45));
+
+        List<DeviceSample> samples = ring.samples();
+
+        assertThat(samples).hasSize(2);
+        DeviceSample full = samples.get(0);
+        assertThat(full.at()).isEqualTo(Instant.ofEpochMilli(1000));
+        assertThat(full.cpu()).isEqualTo(20.0);
+        assertThat(full.temperature()).isEqualTo(50.0);
+        assertThat(full.temperatureMax()).isEqualTo(60.0);
+        // The bucket still being filled is included
+        DeviceSample partial = samples.get(1);
+        assertThat(partial.at()).isEqualTo(Instant.ofEpochMilli(2000));
+        assertThat(partial.cpu()).isEqualTo(40.0);
+        assertThat(partial.temperatureMax()).isEqualTo(45.0);
+    }
+
+    @Test
+    void leavesMissingValuesOutOfAverages() {
+        TelemetryRing ring = new TelemetryRing(4, 1000);
+        double[] withoutAgent = sample(Double.NaN, Double.NaN);
+        withoutAgent[TelemetryRing.ONLINE] = 0;
+        ring.add(0, sample(30, 50));
+        ring.add(100, withoutAgent);
+        ring.add(200, sample(Double.NaN, Double.NaN));
+
+        DeviceSample bucket = ring.samples().get(0);
+
+        assertThat(bucket.cpu()).isEqualTo(30.0);
+        assertThat(bucket.temperatureMax()).isEqualTo(50.0);
+        assertThat(bucket.memoryUsed()).isNull();
+        assertThat(bucket.online()).isEqualTo(2.0 / 3);
+    }
+
+    @Test
+    void overwritesTheOldestBucketOnceFull() {
+        TelemetryRing ring = new TelemetryRing(2, 1000);
+        for (int second = 0; second < 5; second++) {
+            ring.add(second * 1000L, sample(second, 50));
+        }
+
+        // Two full buckets, then the one being filled
+        assertThat(ring.samples()).extracting(DeviceSample::cpu).containsExactly(2.0, 3.0, 4.0);
+    }
+
+    private static double[] sample(double cpu, double temperature) {
+        double[] sample = new double[TelemetryRing.FIELDS];
+        Arrays.fill(sample, Double.NaN);
+        sample[TelemetryRing.ONLINE] = 1;
+        sample[TelemetryRing.CPU] = cpu;
+        sample[TelemetryRing.TEMPERATURE] = temperature;
+        sample[TelemetryRing.TEMPERATURE_MAX] = temperature;
+        return sample;
+    }
+}
@@ -0,0 +1,335 @@
+package com.pinote.chat.storage;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.CursorPage;
+import com.pinote.chat.model.Message;
+import com.pinote.chat.model.ScoreCursor;
+import com.pinote.chat.model.SearchHit;
+import com.pinote.chat.model.SyncPage;
+import com.pinote.chat.model.SyncToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * What every storage mode must do, run against each of them by a subclass that provides the
+ * stores. The stores may hold data of earlier tests, so each test only looks at its own.
+ * {@link #benchmark()} runs the same workload on each with {@code -Dbenchmark=true}, e.g.
+ * {@code mvn test -Dtest='*StoreContractTest' -Dbenchmark=true}.
+ */
+public abstract class StoreContractTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Instant T0 = Instant.parse("2024-01-01T00:00:00Z");
+
+    protected ConversationStore conversations;
+    protected MessageStore messages;
+    protected SearchStore search;
+    protected SyncStore sync;
+
+    /** Names the store in benchmark output. */
+    protected abstract String storeName();
+
+    @Test
+    void createdConversationCanBeFoundAndChanged() {
+        Conversation created = block(conversations.create(Conversation.create("Trip plans")));
+
+        assertThat(created.getId()).isNotNull();
+        Conversation found = block(conversations.findById(created.getId()));
+        assertThat(found.getTitle()).isEqualTo("Trip plans");
+        assertThat(found.getMessageCount()).isZero();
+        assertThat(block(conversations.updateTitle(created.getId(), "Renamed")).getTitle()).isEqualTo("Renamed");
+        assertThat(block(conversations.updateSummary(created.getId(), "A summary", T0))).isEqualTo(1);
+        assertThat(block(conversations.updateSummary(UUID.randomUUID(), "None", T0))).isZero();
+        assertThat(block(conversations.findById(UUID.randomUUID()))).isNull();
+    }
+
+    @Test
+    void appendCountsEachMessageOnItsConversation() {
+        Conversation a = create("a");
+        Conversation b = create("b");
+
+        assertThat(block(messages.append(message(a, 0))).getMessageCount()).isEqualTo(1);
+        Map<UUID, Conversation> updated = block(messages.appendAll(List.of(message(a, 1), message(b, 0), message(a, 2))));
+
+        assertThat(updated).containsOnlyKeys(a.getId(), b.getId());
+        assertThat(updated.get(a.getId()).getMessageCount()).isEqualTo(3);
+        assertThat(updated.get(b.getId()).getMessageCount()).isEqualTo(1);
+        assertThat(block(conversations.findById(a.getId())).getMessageCount()).isEqualTo(3);
+        assertThat(all(messages.findByConversationId(a.getId()))).hasSize(3);
+    }
+
+    @Test
+    void importSkipsExistingConversationsAndMessages() {
+        Conversation imported = Conversation.create("Imported");
+        imported.setId(UUID.randomUUID());
+        imported.setCreatedAt(T0);
+        imported.setUpdatedAt(T0);
+
+        assertThat(block(conversations.insertIfAbsent(imported))).isTrue();
+        assertThat(block(conversations.insertIfAbsent(imported))).isFalse();
+        Message first = message(imported, 0);
+        assertThat(block(messages.importAll(List.of(first)))).isEqualTo(1);
+        assertThat(block(messages.importAll(List.of(first, message(imported, 1))))).isEqualTo(1);
+
+        Conversation stored = block(conversations.findById(imported.getId()));
+        assertThat(stored.getMessageCount()).isEqualTo(2);
+        assertThat(stored.getUpdatedAt()).isEqualTo(T0);
+    }
+
+    @Test
+    void messagesPageByCursorInBothDirections() {
+        Conversation conv = create("paging");
+        List<Message> written = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            written.add(message(conv, i));
+        }
+        block(messages.appendAll(written));
+        UUID id = conv.getId();
+        Message second = written.get(1);
+        Message fourth = written.get(3);
+
+        assertThat(ids(messages.findByConversationId(id))).containsExactlyElementsOf(ids(written, 0, 1, 2, 3, 4));
+        assertThat(ids(messages.stream(id))).containsExactlyElementsOf(ids(written, 0, 1, 2, 3, 4));
+        assertThat(ids(messages.findOldest(id, 2))).containsExactlyElementsOf(ids(written, 0, 1));
+        assertThat(ids(messages.findAfter(id, second.getCreatedAt(), second.getId(), 2)))
+                .containsExactlyElementsOf(ids(written, 2, 3));
+        assertThat(ids(messages.findNewest(id, 2))).containsExactlyElementsOf(ids(written, 4, 3));
+        assertThat(ids(messages.findBefore(id, fourth.getCreatedAt(), fourth.getId(), 2)))
+                .containsExactlyElementsOf(ids(written, 2, 1));
+        assertThat(ids(messages.findByConversationIdPaged(id, 2, 2))).containsExactlyElementsOf(ids(written, 2, 3));
+        assertThat(block(messages.findById(id, fourth.getId())).getContent()).isEqualTo(fourth.getContent());
+        assertThat(block(messages.findById(UUID.randomUUID(), fourth.getId()))).isNull();
+    }
+
+    @Test
+    void conversationsPageByLastUpdate() throws InterruptedException {
+        Conversation a = create("a");
+        Conversation b = create("b");
+        Conversation c = create("c");
+        // c is the newest until b, then a, get a message
+        Thread.sleep(5);
+        block(messages.append(message(b, 0)));
+        Thread.sleep(5);
+        block(messages.append(message(a, 0)));
+
+        List<Conversation> first = all(conversations.findFirstByUpdated(2));
+        assertThat(first).extracting(Conversation::getId).containsExactly(a.getId(), b.getId());
+        Conversation last = first.get(1);
+        assertThat(all(conversations.findAfterByUpdated(last.getUpdatedAt(), last.getId(), 1)))
+                .extracting(Conversation::getId).containsExactly(c.getId());
+        assertThat(all(conversations.findAllPaged(1, 1))).extracting(Conversation::getId).containsExactly(b.getId());
+        assertThat(all(conversations.streamAll())).extracting(Conversation::getId)
+                .contains(a.getId(), b.getId(), c.getId())
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    void searchFindsMessagesByWordAndPagesByCursor() {
+        String word = uniqueWord();
+        Conversation better = create("notes");
+        Conversation worse = create("other");
+        Conversation unrelated = create("unrelated");
+        Message match = message(better, 0, "the quick " + word + " jumps over " + word);
+        block(messages.appendAll(List.of(match,
+                message(worse, 0, "a long message that mentions " + word + " only once among many other words"),
+                message(unrelated, 0, "nothing to see here"))));
+
+        CursorPage<SearchHit> page = block(search.search(word, null, 1));
+        assertThat(page.items()).hasSize(1);
+        SearchHit hit = page.items().get(0);
+        assertThat(hit.conversation().getId()).isEqualTo(better.getId());
+        assertThat(hit.messageIds()).containsExactly(match.getId());
+        assertThat(hit.snippet()).contains("<mark>" + word + "</mark>");
+        assertThat(page.nextCursor()).isNotNull();
+
+        CursorPage<SearchHit> next = block(search.search(word, ScoreCursor.decode(page.nextCursor()), 1));
+        assertThat(next.items()).extracting(h -> h.conversation().getId()).containsExactly(worse.getId());
+        assertThat(next.nextCursor()).isNull();
+    }
+
+    @Test
+    void searchFindsTitles() {
+        String word = uniqueWord();
+        Conversation titled = create("About " + word);
+
+        assertThat(block(search.search(word, null, 10)).items())
+                .extracting(h -> h.conversation().getId())
+                .containsExactly(titled.getId());
+    }
+
+    @Test
+    void deleteRemovesTheConversationWithItsMessages() {
+        String word = uniqueWord();
+        Conversation conv = create("doomed");
+        Message m = message(conv, 0, "remember " + word);
+        block(messages.append(m));
+
+        block(conversations.deleteById(conv.getId()));
+
+        assertThat(block(conversations.findById(conv.getId()))).isNull();
+        assertThat(all(messages.findByConversationId(conv.getId()))).isEmpty();
+        assertThat(block(messages.findById(conv.getId(), m.getId()))).isNull();
+        assertThat(block(search.search(word, null, 10)).items()).isEmpty();
+    }
+
+    @Test
+    void syncDeliversEachChangeAfterItsToken() {
+        Conversation kept = create("kept");
+        Conversation dropped = create("dropped");
+        Message before = message(kept, 0);
+        block(messages.appendAll(List.of(before, message(dropped, 0))));
+
+        Changes initial = drain(null);
+        assertThat(initial.conversations).contains(kept.getId(), dropped.getId());
+        assertThat(initial.messages).contains(before.getId());
+
+        Message after = message(kept, 1);
+        block(messages.append(after));
+        block(conversations.deleteById(dropped.getId()));
+        Changes delta = drain(initial.token);
+
+        assertThat(delta.messages).contains(after.getId()).doesNotContain(before.getId());
+        assertThat(delta.deleted).contains(dropped.getId());
+        assertThat(delta.reset).isFalse();
+    }
+
+    @Test
+    void syncStartsOverForATokenOfAnotherStore() {
+        SyncPage page = block(sync.changes(new SyncToken("elsewhere", 42, 0, SyncToken.NONE), 10));
+
+        assertThat(page.reset()).isTrue();
+    }
+
+    /**
+     * Chat-shaped writes and reads: single appends, batched appends, reading each conversation
+     * back a page at a time, and keyword searches. Prints the time of each phase.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark() {
+        int conversationCount = 20;
+        int perConversation = 50;
+        List<Conversation> convs = new ArrayList<>();
+        for (int i = 0; i < conversationCount; i++) {
+            convs.add(create("bench " + i));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < perConversation; i++) {
+            for (Conversation conv : convs) {
+                block(messages.append(message(conv, i, "single message " + i + " about llamas and raspberries")));
+            }
+        }
+        long appended = System.nanoTime();
+        for (Conversation conv : convs) {
+            List<Message> batch = new ArrayList<>();
+            for (int i = perConversation; i < 2 * perConversation; i++) {
+                batch.add(message(conv, i, "batched message " + i + " about llamas and raspberries"));
+            }
+            block(messages.appendAll(batch));
+        }
+        long batched = System.nanoTime();
+        int read = 0;
+        for (Conversation conv : convs) {
+            List<Message> page = all(messages.findOldest(conv.getId(), 20));
+            while (!page.isEmpty()) {
+                read += page.size();
+                Message last = page.get(page.size() - 1);
+                page = all(messages.findAfter(conv.getId(), last.getCreatedAt(), last.getId(), 20));
+            }
+        }
+        long paged = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            block(search.search("llamas raspberries", null, 20));
+        }
+        long searched = System.nanoTime();
+
+        int total = conversationCount * perConversation;
+        System.out.printf("%s: append %.3f ms/message, appendAll %.3f ms/message, "
+                        + "page %.3f ms/message, search %.1f ms/query%n", storeName(),
+                (appended - start) / 1e6 / total, (batched - appended) / 1e6 / total,
+                (paged - batched) / 1e6 / read, (searched - paged) / 1e6 / 20);
+        assertThat(read).isGreaterThanOrEqualTo(2 * total);
+    }
+
+    private Changes drain(String token) {
+        Changes changes = new Changes();
+        SyncPage page;
+        do {
+            page = block(sync.changes(token != null ? SyncToken.decode(token) : null, 500));
+            page.conversations().forEach(c -> changes.conversations.add(c.getId()));
+            page.messages().forEach(m -> changes.messages.add(m.getId()));
+            changes.deleted.addAll(page.deleted());
+            changes.reset |= page.reset();
+            token = page.nextToken();
+        } while (page.hasMore());
+        changes.token = token;
+        return changes;
+    }
+
+    private static final class Changes {
+        final Set<UUID> conversations = new HashSet<>();
+        final Set<UUID> messages = new HashSet<>();
+        final Set<UUID> deleted = new HashSet<>();
+        boolean reset;
+        String token;
+    }
+
+    private Conversation create(String title) {
+        return block(conversations.create(Conversation.create(title)));
+    }
+
+    private static Message message(Conversation conv, int index) {
+        return message(conv, index, "message " + index);
+    }
+
+    private static Message message(Conversation conv, int index, String content) {
+        Message message = Message.create(conv.getId(), index % 2 == 0 ? "user" : "assistant", content);
+        message.setId(UUID.randomUUID());
+        message.setCreatedAt(T0.plusSeconds(index));
+        return message;
+    }
+
+    /** A word no other test wrote, since the stores are shared between tests. */
+    private static String uniqueWord() {
+        StringBuilder word = new StringBuilder("zq");
+        for (int i = 0; i < 10; i++) {
+            word.append((char) ('a' + ThreadLocalRandom.current().nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    private static List<UUID> ids(List<Message> messages, int... indexes) {
+        List<UUID> ids = new ArrayList<>();
+        for (int index : indexes) {
+            ids.add(messages.get(index).getId());
+        }
+        return ids;
+    }
+
+    private static List<UUID> ids(Flux<Message> messages) {
+        return all(messages).stream().map(Message::getId).toList();
+    }
+
+    private static <T> T block(Mono<T> mono) {
+        return mono.block(TIMEOUT);
+    }
+
+    private static <T> List<T> all(Flux<T> flux) {
+        return flux.collectList().block(TIMEOUT);
+    }
+}
@@ -0,0 +1,45 @@
+package com.pinote.chat.storage.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsAppendsPastTheMapping() throws Exception {
+        try (LogSegment segment = LogSegment.open(dir, 1)) {
+            long first = segment.append(bytes("first"));
+            assertThat(text(segment.read(first, 5))).isEqualTo("first");
+
+            // Mapped by the read above; this one is past the mapping and less than a chunk beyond it
+            long second = segment.append(bytes("second"));
+            assertThat(text(segment.read(second, 6))).isEqualTo("second");
+            assertThat(text(segment.read(first, 5))).isEqualTo("first");
+
+            long big = segment.append(ByteBuffer.allocate((int) LogSegment.MAP_CHUNK));
+            long third = segment.append(bytes("third"));
+            assertThat(big).isEqualTo(second + 6);
+            assertThat(text(segment.read(third, 5))).isEqualTo("third");
+            assertThat(text(segment.read(second, 6))).isEqualTo("second");
+        }
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(ByteBuffer buffer) {
+        byte[] out = new byte[buffer.remaining()];
+        buffer.get(out);
+        return new String(out, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,244 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.model.Conversation;
+import com.pinote.chat.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogStorageTest {
+
+    private static final long SEGMENT_BYTES = 4096;
+    private static final Instant T0 = Instant.parse("2024-01-01T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private LogStorage storage;
+
+    @AfterEach
+    void close() {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    @Test
+    void replaysTheLogInOrderOnStartup() throws Exception {
+        storage = open();
+        Conversation kept = conversation("kept", T0);
+        Conversation dropped = conversation("dropped", T0);
+        write(() -> storage.createConversation(kept));
+        write(() -> storage.createConversation(dropped));
+        write(() -> storage.appendMessages(List.of(message(kept, "first", T0), message(dropped, "gone", T0))));
+        write(() -> storage.appendMessages(List.of(message(kept, "second", T0.plusSeconds(1)))));
+        write(() -> storage.updateTitle(kept.getId(), "renamed"));
+        write(() -> storage.deleteConversation(dropped.getId()));
+
+        storage = reopen();
+
+        assertThat(storage.conversationIds()).containsExactly(kept.getId());
+        Conversation replayed = storage.conversation(kept.getId());
+        assertThat(replayed.getTitle()).isEqualTo("renamed");
+        assertThat(replayed.getMessageCount()).isEqualTo(2);
+        assertThat(contents(kept.getId())).containsExactly("first", "second");
+    }
+
+    @Test
+    void cutsOffATornFrameAtTheEnd() throws Exception {
+        storage = open();
+        Conversation conv = conversation("torn", T0);
+        write(() -> storage.createConversation(conv));
+        write(() -> storage.appendMessages(List.of(message(conv, "durable", T0))));
+        write(() -> storage.appendMessages(List.of(message(conv, "torn", T0.plusSeconds(1)))));
+        storage.close();
+        storage = null;
+
+        Path segment = dir.resolve(LogSegment.fileName(1));
+        long intact = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(intact - 3);
+        }
+        storage = open();
+
+        assertThat(contents(conv.getId())).containsExactly("durable");
+        assertThat(Files.size(segment)).isLessThan(intact - 3);
+
+        // The log stays appendable after the cut
+        write(() -> storage.appendMessages(List.of(message(conv, "after", T0.plusSeconds(2)))));
+        storage = reopen();
+        assertThat(contents(conv.getId())).containsExactly("durable", "after");
+    }
+
+    @Test
+    void ignoresGarbageAfterTheLastFrame() throws Exception {
+        storage = open();
+        Conversation conv = conversation("garbage", T0);
+        write(() -> storage.createConversation(conv));
+        write(() -> storage.appendMessages(List.of(message(conv, "kept", T0))));
+        storage.close();
+        storage = null;
+
+        Path segment = dir.resolve(LogSegment.fileName(1));
+        long intact = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5, 6}));
+        }
+        storage = open();
+
+        assertThat(contents(conv.getId())).containsExactly("kept");
+        assertThat(Files.size(segment)).isEqualTo(intact);
+    }
+
+    @Test
+    void compactsSegmentsOfDeletedConversations() throws Exception {
+        storage = open();
+        Conversation kept = conversation("kept", T0);
+        write(() -> storage.createConversation(kept));
+        write(() -> storage.appendMessages(List.of(message(kept, "small", T0))));
+        List<Conversation> deleted = List.of(conversation("a", T0), conversation("b", T0), conversation("c", T0));
+        for (Conversation conv : deleted) {
+            write(() -> storage.createConversation(conv));
+            write(() -> storage.appendMessages(List.of(message(conv, text(3000), T0))));
+        }
+        long before = segmentCount();
+        for (Conversation conv : deleted) {
+            write(() -> storage.deleteConversation(conv.getId()));
+        }
+
+        assertThat(segmentCount()).isLessThan(before);
+        assertThat(contents(kept.getId())).containsExactly("small");
+        storage = reopen();
+        assertThat(storage.conversationIds()).containsExactly(kept.getId());
+        assertThat(contents(kept.getId())).containsExactly("small");
+    }
+
+    @Test
+    void compactionKeepsAConversationImportedAgainAfterItsDelete() throws Exception {
+        storage = open();
+        Conversation again = conversation("again", T0);
+        Conversation filler = conversation("filler", T0);
+        Conversation other = conversation("other", T0);
+        Conversation later = conversation("later", T0);
+
+        // Segment 1: the first life of the conversation, kept live by the filler
+        write(() -> storage.createConversation(again));
+        write(() -> storage.appendMessages(List.of(message(again, "old", T0))));
+        write(() -> storage.createConversation(filler));
+        write(() -> storage.appendMessages(List.of(message(filler, text(3500), T0))));
+        write(() -> storage.createConversation(other));
+        // Segment 2: its tombstone
+        write(() -> storage.appendMessages(List.of(message(other, text(3500), T0))));
+        write(() -> storage.deleteConversation(again.getId()));
+        write(() -> storage.createConversation(later));
+        // Segment 3: the import, after which segment 2 is compacted
+        write(() -> storage.appendMessages(List.of(message(later, text(3500), T0))));
+        write(() -> storage.importConversation(again));
+        write(() -> storage.importMessages(List.of(message(again, "new", T0.plusSeconds(1)))));
+        write(() -> storage.deleteConversation(other.getId()));
+
+        assertThat(dir.resolve(LogSegment.fileName(1))).exists();
+        assertThat(dir.resolve(LogSegment.fileName(2))).doesNotExist();
+        storage = reopen();
+        assertThat(storage.conversation(again.getId())).isNotNull();
+        assertThat(contents(again.getId())).containsExactly("new");
+    }
+
+    @Test
+    void pagesConversationsByUpdateTime() throws Exception {
+        storage = open();
+        for (int i = 0; i < 5; i++) {
+            Conversation conv = conversation("c" + i, T0.plusSeconds(i));
+            write(() -> storage.createConversation(conv));
+        }
+
+        List<Conversation> first = storage.conversations(null, null, 0, 2);
+        assertThat(first).extracting(Conversation::getTitle).containsExactly("c4", "c3");
+        Conversation last = first.get(1);
+        List<Conversation> second = storage.conversations(last.getUpdatedAt(), last.getId(), 0, 2);
+        assertThat(second).extracting(Conversation::getTitle).containsExactly("c2", "c1");
+        assertThat(storage.conversations(null, null, 4, 2)).extracting(Conversation::getTitle).containsExactly("c0");
+    }
+
+    @Test
+    void pagesMessagesFromACursorInEitherDirection() throws Exception {
+        storage = open();
+        Conversation conv = conversation("paged", T0);
+        write(() -> storage.createConversation(conv));
+        List<Message> messages = List.of(message(conv, "m0", T0), message(conv, "m1", T0.plusSeconds(1)),
+                message(conv, "m2", T0.plusSeconds(2)), message(conv, "m3", T0.plusSeconds(3)));
+        write(() -> storage.appendMessages(messages));
+
+        Message m1 = messages.get(1);
+        assertThat(storage.messages(conv.getId(), m1.getCreatedAt(), m1.getId(), true, 0, 10))
+                .extracting(Message::getContent).containsExactly("m2", "m3");
+        assertThat(storage.messages(conv.getId(), m1.getCreatedAt(), m1.getId(), false, 0, 10))
+                .extracting(Message::getContent).containsExactly("m0");
+        assertThat(storage.messages(conv.getId(), null, null, false, 1, 2))
+                .extracting(Message::getContent).containsExactly("m2", "m1");
+        assertThat(storage.message(conv.getId(), m1.getId()).getContent()).isEqualTo("m1");
+        assertThat(storage.message(conv.getId(), UUID.randomUUID())).isNull();
+    }
+
+    private LogStorage open() {
+        return new LogStorage(new SimpleMeterRegistry(), dir.toString(), SEGMENT_BYTES, false, 0.5);
+    }
+
+    private LogStorage reopen() {
+        storage.close();
+        storage = null;
+        return open();
+    }
+
+    private <T> T write(Callable<T> work) {
+        return storage.write(work).block(Duration.ofSeconds(10));
+    }
+
+    private List<String> contents(UUID conversationId) throws IOException {
+        return storage.messages(conversationId, null, null, true, 0, 100).stream().map(Message::getContent).toList();
+    }
+
+    private long segmentCount() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static Conversation conversation(String title, Instant at) {
+        Conversation conv = new Conversation();
+        conv.setId(UUID.randomUUID());
+        conv.setTitle(title);
+        conv.setCreatedAt(at);
+        conv.setUpdatedAt(at);
+        return conv;
+    }
+
+    private static Message message(Conversation conv, String content, Instant at) {
+        Message message = new Message();
+        message.setId(UUID.randomUUID());
+        message.setConversationId(conv.getId());
+        message.setRole("user");
+        message.setContent(content);
+        message.setCreatedAt(at);
+        return message;
+    }
+
+    private static String text(int length) {
+        return "x".repeat(length);
+    }
+}
@@ -0,0 +1,36 @@
+package com.pinote.chat.storage.log;
+
+import com.pinote.chat.storage.StoreContractTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+class LogStoreContractTest extends StoreContractTest {
+
+    @TempDir
+    Path dir;
+
+    private LogStorage storage;
+
+    @BeforeEach
+    void open() {
+        storage = new LogStorage(new SimpleMeterRegistry(), dir.toString(), 1 << 20, false, 0.5);
+        conversations = new LogConversationStore(storage);
+        messages = new LogMessageStore(storage);
+        search = new LogSearchStore(storage);
+        sync = new LogSyncStore(storage);
+    }
+
+    @AfterEach
+    void close() {
+        storage.close();
+    }
+
+    @Override
+    protected String storeName() {
+        return "log";
+    }
+}
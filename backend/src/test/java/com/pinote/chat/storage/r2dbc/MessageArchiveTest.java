@@ -0,0 +1,57 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.model.GenerationStats;
+import com.pinote.chat.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageArchiveTest {
+
+    @Test
+    void blobKeepsMessagesWithTheirStats() throws Exception {
+        UUID conversationId = UUID.randomUUID();
+        Message question = message(conversationId, "user", "질문?", null);
+        Message reply = message(conversationId, "assistant", "answer",
+                new GenerationStats("llama", "http://pi:11434", 12, 34, 250L, 4000L, null, 80L, 3600L));
+        Message cached = message(conversationId, "assistant", "again",
+                new GenerationStats("llama", null, null, null, 5L, 9L, null, null, null));
+
+        List<Message> decoded = MessageArchive.decode(conversationId,
+                MessageArchive.encode(List.of(question, reply, cached)).blob());
+
+        assertThat(decoded).extracting(Message::getId).containsExactly(question.getId(), reply.getId(), cached.getId());
+        assertThat(decoded).extracting(Message::getContent).containsExactly("질문?", "answer", "again");
+        assertThat(decoded).extracting(Message::getStats)
+                .containsExactly(null, reply.getStats(), cached.getStats());
+    }
+
+    @Test
+    void readOverlappingARestoreSeesEachMessageOnce() throws Exception {
+        UUID conversationId = UUID.randomUUID();
+        Message first = message(conversationId, "user", "hi", null);
+        Message second = message(conversationId, "assistant", "hello", null);
+        second.setCreatedAt(first.getCreatedAt().plusSeconds(1));
+        // The read took the blob, then the restore committed and a new message was added before it read the rows
+        List<Message> archived = MessageArchive.decode(conversationId,
+                MessageArchive.encode(List.of(first, second)).blob());
+        Message added = message(conversationId, "user", "again", null);
+        added.setCreatedAt(second.getCreatedAt().plusSeconds(1));
+
+        List<Message> read = MessageArchive.merge(archived, List.of(second, first, added));
+
+        assertThat(read).extracting(Message::getId).containsExactly(first.getId(), second.getId(), added.getId());
+    }
+
+    private static Message message(UUID conversationId, String role, String content, GenerationStats stats) {
+        Message message = Message.create(conversationId, role, content);
+        message.setId(UUID.randomUUID());
+        message.setCreatedAt(Instant.parse("2024-01-01T00:00:00.123456Z"));
+        message.setStats(stats);
+        return message;
+    }
+}
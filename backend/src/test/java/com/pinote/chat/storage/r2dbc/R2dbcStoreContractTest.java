@@ -0,0 +1,57 @@
+package com.pinote.chat.storage.r2dbc;
+
+import com.pinote.chat.storage.ConversationStore;
+import com.pinote.chat.storage.MessageStore;
+import com.pinote.chat.storage.SearchStore;
+import com.pinote.chat.storage.StoreContractTest;
+import com.pinote.chat.storage.SyncStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** The store contract on Postgres in a container; skipped where Docker is not available. */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "app.storage.mode=postgres",
+        "app.storage.archive.enabled=false"
+})
+class R2dbcStoreContractTest extends StoreContractTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://" + POSTGRES.getHost() + ":"
+                + POSTGRES.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + POSTGRES.getDatabaseName());
+        registry.add("spring.r2dbc.username", POSTGRES::getUsername);
+        registry.add("spring.r2dbc.password", POSTGRES::getPassword);
+    }
+
+    @Autowired
+    ConversationStore conversationStore;
+    @Autowired
+    MessageStore messageStore;
+    @Autowired
+    SearchStore searchStore;
+    @Autowired
+    SyncStore syncStore;
+
+    @BeforeEach
+    void stores() {
+        conversations = conversationStore;
+        messages = messageStore;
+        search = searchStore;
+        sync = syncStore;
+    }
+
+    @Override
+    protected String storeName() {
+        return "postgres";
+    }
+}
@@ -1,6 +1,7 @@
 import { useEffect } from 'react';
 import { AppLayout } from './components/layout/AppLayout';
 import { useChatStore } from './store/chatStore';
+import { useConversationEvents } from './hooks/useConversationEvents';
 
 export default function App() {
   const loadConversations = useChatStore(s => s.loadConversations);
@@ -9,5 +10,7 @@ export default function App() {
     loadConversations();
   }, [loadConversations]);
 
+  useConversationEvents();
+
   return <AppLayout />;
 }
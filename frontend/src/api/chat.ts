@@ -1,9 +1,12 @@
-import type { MessageStartEvent, TokenEvent, MessageEndEvent, ErrorEvent } from '../types';
+import type { MessageStartEvent, QueuedEvent, TokenEvent, SnapshotEvent, MessageEndEvent, TitleEvent, ErrorEvent } from '../types';
 
 export type SSECallback = {
   onStart: (event: MessageStartEvent) => void;
+  onQueued?: (event: QueuedEvent) => void;
   onToken: (event: TokenEvent) => void;
+  onSnapshot?: (event: SnapshotEvent) => void;
   onEnd: (event: MessageEndEvent) => void;
+  onTitle?: (event: TitleEvent) => void;
   onError: (event: ErrorEvent) => void;
 };
 
@@ -17,9 +20,24 @@ function parseSSEField(line: string, prefix: string): string | null {
   return null;
 }
 
+const MAX_RESUME_ATTEMPTS = 5;
+
+/**
+ * Ask the server to stop the reply in progress. The chat stream then ends normally
+ * with a message-end marked truncated. Resolves to false if nothing was running.
+ */
+export async function stopChat(conversationId: string): Promise<boolean> {
+  const res = await fetch(`/api/conversations/${conversationId}/chat/stop`, { method: 'POST' });
+  if (!res.ok) return false;
+  const body: { stopped: boolean } = await res.json();
+  return body.stopped;
+}
+
 /**
  * Send a chat message and stream the response via SSE using fetch + ReadableStream.
  * We use fetch instead of EventSource because we need to send a POST body.
+ * The reply is generated server-side regardless of this connection; if the stream drops
+ * before the reply ends, we reconnect with Last-Event-ID and continue where we stopped.
  */
 export async function sendChatMessage(
   conversationId: string,
@@ -27,21 +45,60 @@ export async function sendChatMessage(
   callbacks: SSECallback,
   signal?: AbortSignal
 ): Promise<void> {
-  const res = await fetch(`/api/conversations/${conversationId}/chat`, {
+  const state: StreamState = { lastEventId: null, ended: false };
+
+  let res: Response | null = await fetch(`/api/conversations/${conversationId}/chat`, {
     method: 'POST',
     headers: { 'Content-Type': 'application/json' },
     body: JSON.stringify({ content }),
     signal,
   });
 
-  if (!res.ok) {
-    callbacks.onError({ code: 'HTTP_ERROR', message: `${res.status} ${res.statusText}` });
-    return;
+  for (let attempt = 0; ; attempt++) {
+    if (res) {
+      if (!res.ok) {
+        callbacks.onError({ code: 'HTTP_ERROR', message: `${res.status} ${res.statusText}` });
+        return;
+      }
+      try {
+        await readStream(res, callbacks, state);
+      } catch (e) {
+        if ((e as Error).name === 'AbortError' || state.lastEventId === null) throw e;
+      }
+    }
+    const lastEventId = state.lastEventId;
+    if (state.ended || lastEventId === null) {
+      return;
+    }
+    if (attempt >= MAX_RESUME_ATTEMPTS) {
+      callbacks.onError({ code: 'CONNECTION_LOST', message: 'Lost the connection while the reply was streaming' });
+      return;
+    }
+    await new Promise(resolve => setTimeout(resolve, 1000 * (attempt + 1)));
+    try {
+      res = await fetch(`/api/conversations/${conversationId}/chat`, {
+        headers: { 'Last-Event-ID': lastEventId },
+        signal,
+      });
+    } catch (e) {
+      if ((e as Error).name === 'AbortError') throw e;
+      // Still offline; try again after a longer pause
+      res = null;
+    }
   }
+}
+
+type StreamState = {
+  lastEventId: string | null;
+  // message-end or error was received; nothing left worth resuming
+  ended: boolean;
+};
 
+async function readStream(res: Response, callbacks: SSECallback, state: StreamState): Promise<void> {
   const reader = res.body?.getReader();
   if (!reader) {
     callbacks.onError({ code: 'NO_BODY', message: 'Response body is empty' });
+    state.ended = true;
     return;
   }
 
@@ -50,6 +107,7 @@ export async function sendChatMessage(
   // CRITICAL: currentEvent must persist across chunks.
   // SSE event: and data: lines can arrive in separate TCP chunks.
   let currentEvent = '';
+  let currentId: string | null = null;
 
   try {
     while (true) {
@@ -64,6 +122,13 @@ export async function sendChatMessage(
         // Empty line = end of SSE event block
         if (line.trim() === '') {
           currentEvent = '';
+          currentId = null;
+          continue;
+        }
+
+        const idValue = parseSSEField(line, 'id:');
+        if (idValue !== null) {
+          currentId = idValue.trim();
           continue;
         }
 
@@ -84,19 +149,33 @@ export async function sendChatMessage(
               case 'message-start':
                 callbacks.onStart(parsed);
                 break;
+              case 'queued':
+                callbacks.onQueued?.(parsed);
+                break;
               case 'token':
                 callbacks.onToken(parsed);
                 break;
+              case 'snapshot':
+                callbacks.onSnapshot?.(parsed);
+                break;
               case 'message-end':
+                state.ended = true;
                 callbacks.onEnd(parsed);
                 break;
+              case 'title':
+                callbacks.onTitle?.(parsed);
+                break;
               case 'error':
+                state.ended = true;
                 callbacks.onError(parsed);
                 break;
             }
           } catch {
             // Skip unparseable data lines
           }
+          if (currentId) {
+            state.lastEventId = currentId;
+          }
         }
       }
     }
@@ -1,10 +1,14 @@
 import { apiFetch, apiDelete } from './client';
-import type { Conversation, ConversationWithMessages, Message } from '../types';
+import type { Conversation, ConversationWithMessages, CursorPage, ImportResult, Message, SearchHit, SyncPage } from '../types';
 
 export function listConversations(page = 0, size = 20): Promise<Conversation[]> {
   return apiFetch(`/conversations?page=${page}&size=${size}`);
 }
 
+export function listConversationsPage(cursor = '', size = 20): Promise<CursorPage<Conversation>> {
+  return apiFetch(`/conversations?cursor=${encodeURIComponent(cursor)}&size=${size}`);
+}
+
 export function createConversation(title?: string): Promise<Conversation> {
   return apiFetch('/conversations', {
     method: 'POST',
@@ -31,6 +35,48 @@ export function searchConversations(q: string): Promise<Conversation[]> {
   return apiFetch(`/conversations/search?q=${encodeURIComponent(q)}`);
 }
 
+export type SearchMode = 'keyword' | 'semantic' | 'hybrid';
+
+export function searchHits(
+  q: string,
+  cursor = '',
+  size = 20,
+  mode: SearchMode = 'keyword',
+): Promise<CursorPage<SearchHit>> {
+  return apiFetch(
+    `/conversations/search?q=${encodeURIComponent(q)}&cursor=${encodeURIComponent(cursor)}&size=${size}&mode=${mode}`,
+  );
+}
+
 export function getMessages(id: string, page = 0, size = 50): Promise<Message[]> {
   return apiFetch(`/conversations/${id}/messages?page=${page}&size=${size}`);
 }
+
+// newestFirst pages backwards from the latest message
+export function getMessagesPage(
+  id: string,
+  cursor = '',
+  newestFirst = true,
+  size = 50,
+): Promise<CursorPage<Message>> {
+  return apiFetch(
+    `/conversations/${id}/messages?cursor=${encodeURIComponent(cursor)}&newestFirst=${newestFirst}&size=${size}`,
+  );
+}
+
+// NDJSON of every conversation and its messages, for a download link
+export const EXPORT_ALL_URL = '/api/conversations/export';
+
+// The file is streamed to the server as is; existing conversations are skipped
+export function importConversations(file: Blob): Promise<ImportResult> {
+  return apiFetch('/conversations/import', {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/x-ndjson' },
+    body: file,
+  });
+}
+
+// Changes since a token from an earlier page; without one, everything
+export function syncChanges(since = '', size = 200): Promise<SyncPage> {
+  return apiFetch(`/sync?since=${encodeURIComponent(since)}&size=${size}`);
+}
@@ -0,0 +1,42 @@
+import type { Conversation, Message, TokensEvent } from '../types';
+
+export type ConversationEventCallbacks = {
+  onCreated: (conversation: Conversation) => void;
+  onUpdated: (conversation: Conversation) => void;
+  onDeleted: (conversationId: string) => void;
+  onMessageAdded: (message: Message) => void;
+  onTokens: (event: TokensEvent) => void;
+  onResync: () => void;
+};
+
+/**
+ * Subscribe to live conversation changes. With a conversationId, replies being generated
+ * for it on another device are mirrored as token events. Returns a function that closes the stream.
+ * EventSource reconnects on its own after network errors.
+ */
+export function subscribeToEvents(
+  conversationId: string | null,
+  callbacks: ConversationEventCallbacks
+): () => void {
+  const query = conversationId ? `?conversationId=${conversationId}` : '';
+  const source = new EventSource(`/api/events${query}`);
+
+  const on = <T>(type: string, handle: (data: T) => void) => {
+    source.addEventListener(type, (e) => {
+      try {
+        handle(JSON.parse((e as MessageEvent).data));
+      } catch {
+        // Skip unparseable events
+      }
+    });
+  };
+
+  on<{ conversation: Conversation }>('conversation-created', d => callbacks.onCreated(d.conversation));
+  on<{ conversation: Conversation }>('conversation-updated', d => callbacks.onUpdated(d.conversation));
+  on<{ conversationId: string }>('conversation-deleted', d => callbacks.onDeleted(d.conversationId));
+  on<{ message: Message }>('message-added', d => callbacks.onMessageAdded(d.message));
+  on<TokensEvent>('tokens', d => callbacks.onTokens(d));
+  on<unknown>('resync', () => callbacks.onResync());
+
+  return () => source.close();
+}
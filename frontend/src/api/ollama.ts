@@ -1,5 +1,12 @@
 import { apiFetch } from './client';
-import type { OllamaStatus, OllamaModelsResponse, DeviceStats } from '../types';
+import type {
+  OllamaStatus,
+  OllamaModelsResponse,
+  DeviceStats,
+  DeviceSample,
+  DeviceHistory,
+  DeviceHistoryRange,
+} from '../types';
 
 export function getOllamaStatus(): Promise<OllamaStatus> {
   return apiFetch('/ollama/status');
@@ -24,6 +31,26 @@ export function getDeviceStats(): Promise<DeviceStats> {
   return apiFetch('/device/stats');
 }
 
+export function getDeviceHistory(range: DeviceHistoryRange): Promise<DeviceHistory> {
+  return apiFetch(`/device/history?range=${range}`);
+}
+
+/**
+ * Follow device samples as the server takes them; every open dashboard shares the one sampler.
+ * Returns a function that closes the stream. EventSource reconnects on its own.
+ */
+export function subscribeToDevice(onSample: (sample: DeviceSample) => void): () => void {
+  const source = new EventSource('/api/device/stream');
+  source.addEventListener('sample', (e) => {
+    try {
+      onSample(JSON.parse((e as MessageEvent).data));
+    } catch {
+      // Skip unparseable events
+    }
+  });
+  return () => source.close();
+}
+
 export function testOllamaConnection(prompt?: string): Promise<{
   success: boolean;
   model: string;
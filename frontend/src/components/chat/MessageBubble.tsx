@@ -5,9 +5,10 @@ interface Props {
   role: string;
   content: string;
   streaming?: boolean;
+  truncated?: boolean;
 }
 
-export function MessageBubble({ role, content, streaming }: Props) {
+export function MessageBubble({ role, content, streaming, truncated }: Props) {
   const isUser = role === 'user';
 
   return (
@@ -21,6 +22,7 @@ export function MessageBubble({ role, content, streaming }: Props) {
         )}
         {streaming && <span className={styles.cursor} />}
       </div>
+      {truncated && <div className={styles.truncated}>Stopped</div>}
     </div>
   );
 }
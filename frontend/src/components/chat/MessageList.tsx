@@ -7,20 +7,28 @@ export function MessageList() {
   const messages = useChatStore(s => s.messages);
   const streamingContent = useChatStore(s => s.streamingContent);
   const isStreaming = useChatStore(s => s.isStreaming);
+  const queuePosition = useChatStore(s => s.queuePosition);
+  const mirroredReply = useChatStore(s => s.mirroredReply);
   const endRef = useRef<HTMLDivElement>(null);
 
   useEffect(() => {
     endRef.current?.scrollIntoView({ behavior: 'smooth' });
-  }, [messages, streamingContent]);
+  }, [messages, streamingContent, mirroredReply]);
 
   return (
     <div className={styles.list}>
       {messages.map(msg => (
-        <MessageBubble key={msg.id} role={msg.role} content={msg.content} />
+        <MessageBubble key={msg.id} role={msg.role} content={msg.content} truncated={msg.truncated} />
       ))}
+      {isStreaming && !streamingContent && queuePosition !== null && (
+        <div className={styles.queued}>Waiting for the model… #{queuePosition} in queue</div>
+      )}
       {isStreaming && streamingContent && (
         <MessageBubble role="assistant" content={streamingContent} streaming />
       )}
+      {!isStreaming && mirroredReply && (
+        <MessageBubble role="assistant" content={mirroredReply.content} streaming />
+      )}
       <div ref={endRef} />
     </div>
   );
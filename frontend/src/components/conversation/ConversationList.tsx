@@ -2,12 +2,22 @@ import { useState } from 'react';
 import { useChatStore } from '../../store/chatStore';
 import styles from './ConversationList.module.css';
 
+// Snippets mark matches with <mark> tags; render them as elements, everything else as text
+function renderSnippet(snippet: string) {
+  return snippet.split(/(<mark>.*?<\/mark>)/g).map((part, i) =>
+    part.startsWith('<mark>') && part.endsWith('</mark>')
+      ? <mark key={i}>{part.slice(6, -7)}</mark>
+      : part,
+  );
+}
+
 export function ConversationList() {
   const conversations = useChatStore(s => s.conversations);
   const currentConversation = useChatStore(s => s.currentConversation);
   const selectConversation = useChatStore(s => s.selectConversation);
   const deleteConversation = useChatStore(s => s.deleteConversation);
   const renameConversation = useChatStore(s => s.renameConversation);
+  const searchSnippets = useChatStore(s => s.searchSnippets);
 
   const [editingId, setEditingId] = useState<string | null>(null);
   const [editTitle, setEditTitle] = useState('');
@@ -46,7 +56,12 @@ export function ConversationList() {
               autoFocus
             />
           ) : (
-            <span className={styles.title}>{conv.title}</span>
+            <div className={styles.text}>
+              <span className={styles.title}>{conv.title}</span>
+              {searchSnippets[conv.id] && (
+                <span className={styles.snippet}>{renderSnippet(searchSnippets[conv.id])}</span>
+              )}
+            </div>
           )}
           <div className={styles.actions} onClick={e => e.stopPropagation()}>
             <button
@@ -1,23 +1,27 @@
 import { useEffect } from 'react';
 import { useSettingsStore } from '../../store/settingsStore';
+import { subscribeToDevice } from '../../api/ollama';
 import styles from './StatusBar.module.css';
 
 export function StatusBar() {
   const deviceStats = useSettingsStore(s => s.deviceStats);
   const ollamaStatus = useSettingsStore(s => s.ollamaStatus);
   const fetchDeviceStats = useSettingsStore(s => s.fetchDeviceStats);
+  const setDeviceSample = useSettingsStore(s => s.setDeviceSample);
   const fetchStatus = useSettingsStore(s => s.fetchStatus);
   const setSettingsOpen = useSettingsStore(s => s.setSettingsOpen);
 
   useEffect(() => {
     fetchDeviceStats();
     fetchStatus();
-    const interval = setInterval(() => {
-      fetchDeviceStats();
-      fetchStatus();
-    }, 10000);
-    return () => clearInterval(interval);
-  }, [fetchDeviceStats, fetchStatus]);
+    // Device samples are pushed as the server takes them; only the model status is polled
+    const unsubscribe = subscribeToDevice(setDeviceSample);
+    const interval = setInterval(fetchStatus, 10000);
+    return () => {
+      unsubscribe();
+      clearInterval(interval);
+    };
+  }, [fetchDeviceStats, setDeviceSample, fetchStatus]);
 
   const online = deviceStats?.online ?? false;
   const hasCpu = deviceStats?.hasDeviceStats && deviceStats.cpu >= 0;
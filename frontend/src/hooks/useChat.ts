@@ -1,5 +1,5 @@
 import { useCallback, useRef } from 'react';
-import { sendChatMessage } from '../api/chat';
+import { sendChatMessage, stopChat } from '../api/chat';
 import { useChatStore } from '../store/chatStore';
 import type { Message } from '../types';
 
@@ -29,8 +29,8 @@ export function useChat() {
     setStreamingContent,
     appendStreamingToken,
     setIsStreaming,
+    setQueuePosition,
     updateConversationTitle,
-    loadConversations,
     createConversation,
   } = useChatStore();
 
@@ -107,6 +107,9 @@ export function useChat() {
         onStart: (event) => {
           assistantMsgId = event.messageId;
         },
+        onQueued: (event) => {
+          setQueuePosition(event.position);
+        },
         onToken: (event) => {
           // Reset safety timeout on each token (model is responding)
           if (timeoutRef.current) {
@@ -120,6 +123,11 @@ export function useChat() {
           }
           appendStreamingToken(event.content);
         },
+        onSnapshot: (event) => {
+          // Resumed too late to replay single tokens: take the reply so far as a whole
+          assistantMsgId = event.messageId;
+          setStreamingContent(event.content);
+        },
         onEnd: (event) => {
           // Finalize: move streaming content to messages
           const fullContent = useChatStore.getState().streamingContent;
@@ -129,14 +137,17 @@ export function useChat() {
             role: 'assistant',
             content: fullContent,
             createdAt: new Date().toISOString(),
+            truncated: event.truncated,
+            stats: event.stats ?? undefined,
           };
           addMessage(assistantMsg);
           setStreamingContent('');
-
-          if (event.title) {
-            updateConversationTitle(conversation!.id, event.title);
-          }
-          loadConversations();
+          // The turn is over; the stream stays open only for a possible title event.
+          // The conversation list is refreshed by the conversation-updated event.
+          cleanup();
+        },
+        onTitle: (event) => {
+          updateConversationTitle(event.conversationId, event.title);
         },
         onError: (event) => {
           console.error('Chat error:', event);
@@ -167,10 +178,15 @@ export function useChat() {
     } finally {
       cleanup();
     }
-  }, [currentConversation, addMessage, setStreamingContent, appendStreamingToken, setIsStreaming, updateConversationTitle, loadConversations, createConversation, cleanup]);
+  }, [currentConversation, addMessage, setStreamingContent, appendStreamingToken, setIsStreaming, setQueuePosition, updateConversationTitle, createConversation, cleanup]);
 
-  const stop = useCallback(() => {
-    abortRef.current?.abort();
+  const stop = useCallback(async () => {
+    // Let the server end the reply so the partial answer is kept; drop the stream only as a fallback
+    const conversationId = useChatStore.getState().currentConversation?.id;
+    const stopped = conversationId ? await stopChat(conversationId).catch(() => false) : false;
+    if (!stopped) {
+      abortRef.current?.abort();
+    }
   }, []);
 
   return { send, stop, isStreaming };
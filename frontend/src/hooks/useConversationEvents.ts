@@ -0,0 +1,28 @@
+import { useEffect } from 'react';
+import { useChatStore } from '../store/chatStore';
+import { subscribeToEvents } from '../api/events';
+
+/**
+ * Keep the conversation list and the open conversation in sync with changes
+ * made on other devices, instead of polling.
+ */
+export function useConversationEvents() {
+  const currentId = useChatStore(s => s.currentConversation?.id ?? null);
+
+  useEffect(() => {
+    const store = useChatStore.getState;
+    return subscribeToEvents(currentId, {
+      onCreated: (conversation) => store().applyConversation(conversation),
+      onUpdated: (conversation) => store().applyConversation(conversation),
+      onDeleted: (id) => store().removeConversation(id),
+      onMessageAdded: (message) => store().applyMessage(message),
+      onTokens: (event) => store().appendMirroredTokens(event.conversationId, event.messageId, event.content),
+      onResync: () => {
+        store().loadConversations();
+        if (currentId && !store().isStreaming) {
+          store().selectConversation(currentId);
+        }
+      },
+    });
+  }, [currentId]);
+}
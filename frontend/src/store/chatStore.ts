@@ -8,6 +8,9 @@ interface ChatState {
   messages: Message[];
   streamingContent: string;
   isStreaming: boolean;
+  queuePosition: number | null;
+  mirroredReply: { messageId: string; content: string } | null;
+  searchSnippets: Record<string, string>;
   sidebarOpen: boolean;
 
   // Actions
@@ -21,7 +24,12 @@ interface ChatState {
   setStreamingContent: (content: string) => void;
   appendStreamingToken: (token: string) => void;
   setIsStreaming: (streaming: boolean) => void;
+  setQueuePosition: (position: number | null) => void;
   updateConversationTitle: (id: string, title: string) => void;
+  applyConversation: (conversation: Conversation) => void;
+  removeConversation: (id: string) => void;
+  applyMessage: (msg: Message) => void;
+  appendMirroredTokens: (conversationId: string, messageId: string, content: string) => void;
   toggleSidebar: () => void;
   setSidebarOpen: (open: boolean) => void;
 }
@@ -32,11 +40,14 @@ export const useChatStore = create<ChatState>((set, get) => ({
   messages: [],
   streamingContent: '',
   isStreaming: false,
+  queuePosition: null,
+  mirroredReply: null,
+  searchSnippets: {},
   sidebarOpen: false,
 
   loadConversations: async () => {
     const conversations = await api.listConversations();
-    set({ conversations });
+    set({ conversations, searchSnippets: {} });
   },
 
   selectConversation: async (id: string) => {
@@ -45,6 +56,7 @@ export const useChatStore = create<ChatState>((set, get) => ({
       currentConversation: data.conversation,
       messages: data.messages,
       streamingContent: '',
+      mirroredReply: null,
       sidebarOpen: false,
     });
   },
@@ -83,8 +95,12 @@ export const useChatStore = create<ChatState>((set, get) => ({
     if (!q.trim()) {
       return get().loadConversations();
     }
-    const conversations = await api.searchConversations(q);
-    set({ conversations });
+    const page = await api.searchHits(q);
+    const searchSnippets: Record<string, string> = {};
+    for (const hit of page.items) {
+      if (hit.snippet) searchSnippets[hit.conversation.id] = hit.snippet;
+    }
+    set({ conversations: page.items.map(hit => hit.conversation), searchSnippets });
   },
 
   addMessage: (msg: Message) => {
@@ -96,11 +112,15 @@ export const useChatStore = create<ChatState>((set, get) => ({
   },
 
   appendStreamingToken: (token: string) => {
-    set(state => ({ streamingContent: state.streamingContent + token }));
+    set(state => ({ streamingContent: state.streamingContent + token, queuePosition: null }));
   },
 
   setIsStreaming: (streaming: boolean) => {
-    set({ isStreaming: streaming });
+    set(streaming ? { isStreaming: true } : { isStreaming: false, queuePosition: null });
+  },
+
+  setQueuePosition: (position: number | null) => {
+    set({ queuePosition: position });
   },
 
   updateConversationTitle: (id: string, title: string) => {
@@ -114,6 +134,48 @@ export const useChatStore = create<ChatState>((set, get) => ({
     }));
   },
 
+  applyConversation: (conversation: Conversation) => {
+    set(state => ({
+      // Most recently updated first, as the list endpoint returns them
+      conversations: [conversation, ...state.conversations.filter(c => c.id !== conversation.id)],
+      currentConversation: state.currentConversation?.id === conversation.id
+        ? conversation
+        : state.currentConversation,
+    }));
+  },
+
+  removeConversation: (id: string) => {
+    set(state => ({
+      conversations: state.conversations.filter(c => c.id !== id),
+      currentConversation: state.currentConversation?.id === id ? null : state.currentConversation,
+      messages: state.currentConversation?.id === id ? [] : state.messages,
+    }));
+  },
+
+  applyMessage: (msg: Message) => {
+    set(state => {
+      // Our own turn is added locally by useChat while it streams
+      if (state.currentConversation?.id !== msg.conversationId || state.isStreaming
+          || state.messages.some(m => m.id === msg.id)) {
+        return {};
+      }
+      return {
+        messages: [...state.messages, msg],
+        mirroredReply: state.mirroredReply?.messageId === msg.id ? null : state.mirroredReply,
+      };
+    });
+  },
+
+  appendMirroredTokens: (conversationId: string, messageId: string, content: string) => {
+    set(state => {
+      if (state.currentConversation?.id !== conversationId || state.isStreaming) {
+        return {};
+      }
+      const previous = state.mirroredReply?.messageId === messageId ? state.mirroredReply.content : '';
+      return { mirroredReply: { messageId, content: previous + content } };
+    });
+  },
+
   toggleSidebar: () => {
     set(state => ({ sidebarOpen: !state.sidebarOpen }));
   },
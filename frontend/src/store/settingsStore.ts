@@ -1,5 +1,5 @@
 import { create } from 'zustand';
-import type { OllamaStatus, OllamaModel, DeviceStats } from '../types';
+import type { OllamaStatus, OllamaModel, DeviceStats, DeviceSample } from '../types';
 import * as api from '../api/ollama';
 
 interface SettingsState {
@@ -17,6 +17,7 @@ interface SettingsState {
   fetchStatus: () => Promise<void>;
   fetchModels: () => Promise<void>;
   fetchDeviceStats: () => Promise<void>;
+  setDeviceSample: (sample: DeviceSample) => void;
   switchModel: (name: string) => Promise<void>;
   deleteModel: (name: string) => Promise<void>;
   pullModel: (name: string) => void;
@@ -69,6 +70,19 @@ export const useSettingsStore = create<SettingsState>((set, get) => ({
     }
   },
 
+  setDeviceSample: (sample: DeviceSample) => {
+    set({
+      deviceStats: {
+        online: sample.online > 0,
+        hasDeviceStats: sample.cpu !== null || sample.temperature !== null || sample.memoryUsed !== null,
+        cpu: sample.cpu ?? -1,
+        temperature: sample.temperature ?? -1,
+        memoryUsed: sample.memoryUsed ?? -1,
+        memoryTotal: sample.memoryTotal ?? -1,
+      },
+    });
+  },
+
   switchModel: async (name: string) => {
     try {
       await api.switchOllamaModel(name);
@@ -12,6 +12,22 @@ export interface Message {
   role: 'user' | 'assistant' | 'system';
   content: string;
   createdAt: string;
+  truncated?: boolean;
+  stats?: GenerationStats;
+}
+
+// How an assistant reply was generated; Ollama's counts and times are null for cached replies
+export interface GenerationStats {
+  model: string;
+  backend: string | null;
+  promptTokens: number | null;
+  completionTokens: number | null;
+  firstTokenMillis: number | null;
+  totalMillis: number;
+  loadMillis: number | null;
+  promptEvalMillis: number | null;
+  evalMillis: number | null;
+  tokensPerSecond: number | null;
 }
 
 export interface ConversationWithMessages {
@@ -19,19 +35,72 @@ export interface ConversationWithMessages {
   messages: Message[];
 }
 
+// Search result; snippet wraps matched words in <mark> and is null for title-only matches
+export interface SearchHit {
+  conversation: Conversation;
+  score: number;
+  snippet: string | null;
+  messageIds: string[];
+}
+
+// Keyset-paginated list; nextCursor is null on the last page
+export interface CursorPage<T> {
+  items: T[];
+  nextCursor: string | null;
+}
+
+export interface ImportResult {
+  conversations: number;
+  skipped: number;
+  messages: number;
+}
+
+// Apply in order: drop everything on reset, then deleted, then store the rest by id
+export interface SyncPage {
+  conversations: Conversation[];
+  messages: Message[];
+  deleted: string[];
+  nextToken: string;
+  hasMore: boolean;
+  reset: boolean;
+}
+
 // SSE events from backend
 export interface MessageStartEvent {
   messageId: string;
   conversationId: string;
 }
 
+export interface QueuedEvent {
+  position: number;
+}
+
 export interface TokenEvent {
   content: string;
 }
 
+export interface SnapshotEvent {
+  messageId: string;
+  conversationId: string;
+  content: string;
+}
+
 export interface MessageEndEvent {
   messageId: string;
-  title: string | null;
+  truncated: boolean;
+  stats: GenerationStats | null;
+}
+
+export interface TitleEvent {
+  conversationId: string;
+  title: string;
+}
+
+// Live updates from GET /events
+export interface TokensEvent {
+  conversationId: string;
+  messageId: string;
+  content: string;
 }
 
 export interface ErrorEvent {
@@ -79,3 +148,23 @@ export interface DeviceStats {
   memoryUsed: number;
   memoryTotal: number;
 }
+
+// One sample from the device sampler, or a bucket average in history; null when not reported
+export interface DeviceSample {
+  at: string;
+  online: number;
+  cpu: number | null;
+  temperature: number | null;
+  temperatureMax: number | null;
+  memoryUsed: number | null;
+  memoryTotal: number | null;
+  tokensPerSecond: number | null;
+}
+
+export type DeviceHistoryRange = '1m' | '1h' | '24h';
+
+export interface DeviceHistory {
+  range: DeviceHistoryRange;
+  resolutionMillis: number;
+  samples: DeviceSample[];
+}
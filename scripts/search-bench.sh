@@ -0,0 +1,117 @@
+#!/bin/bash
+set -euo pipefail
+
+# Compares the old search query against the ranked one on a seeded corpus.
+# Runs against the compose postgres service in a throwaway schema; app data is untouched.
+#   CONVERSATIONS=5000 MESSAGES_PER_CONVERSATION=40 QUERY="raspberry memory" ./scripts/search-bench.sh
+
+CONVERSATIONS="${CONVERSATIONS:-2000}"
+MESSAGES_PER_CONVERSATION="${MESSAGES_PER_CONVERSATION:-50}"
+QUERY="${QUERY:-kernel memory}"
+RUNS="${RUNS:-5}"
+DB_NAME="${DB_NAME:-pinote}"
+DB_USER="${DB_USER:-pinote}"
+
+psql() {
+    docker compose exec -T postgres psql -U "${DB_USER}" -d "${DB_NAME}" -v ON_ERROR_STOP=1 -q "$@"
+}
+
+echo "=== Search benchmark ==="
+echo "Corpus: ${CONVERSATIONS} conversations x ${MESSAGES_PER_CONVERSATION} messages, query '${QUERY}'"
+echo ""
+
+echo "[1/3] Seeding corpus..."
+psql <<SQL
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+DROP SCHEMA IF EXISTS search_bench CASCADE;
+CREATE SCHEMA search_bench;
+SET search_path = search_bench, public;
+
+CREATE TABLE conversations (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    title VARCHAR(255) NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+CREATE TABLE messages (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    conversation_id UUID NOT NULL REFERENCES conversations(id),
+    content TEXT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    content_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('simple', content)) STORED
+);
+
+CREATE TEMP TABLE words AS
+SELECT unnest(string_to_array(
+    'raspberry kernel memory swap docker ollama model prompt token stream cache index query '
+    || 'python java spring reactor postgres network wifi sensor camera garden recipe travel music '
+    || 'budget invoice meeting schedule backup disk thermal fan voltage firmware update install', ' ')) AS w;
+
+INSERT INTO conversations (title, updated_at)
+SELECT 'Chat about ' || (SELECT string_agg(w, ' ') FROM (SELECT w FROM words ORDER BY random() + g * 0 LIMIT 3) t),
+       NOW() - (g || ' minutes')::interval
+FROM generate_series(1, ${CONVERSATIONS}) g;
+
+INSERT INTO messages (conversation_id, content, created_at)
+SELECT c.id,
+       (SELECT string_agg(w, ' ') FROM (SELECT w FROM words ORDER BY random() + n * 0 LIMIT 40) t),
+       c.updated_at - (n || ' seconds')::interval
+FROM conversations c, generate_series(1, ${MESSAGES_PER_CONVERSATION}) n;
+
+CREATE INDEX ON messages USING GIN (to_tsvector('simple', content));
+CREATE INDEX ON messages USING GIN (content_tsv);
+CREATE INDEX ON conversations USING GIN (title gin_trgm_ops);
+ANALYZE conversations;
+ANALYZE messages;
+SQL
+
+run() {
+    local label="$1" sql="$2" total=0 ms
+    for _ in $(seq 1 "${RUNS}"); do
+        ms=$(psql -t -A <<SQL | sed -n 's/^Execution Time: \([0-9.]*\) ms$/\1/p'
+SET search_path = search_bench, public;
+EXPLAIN (ANALYZE) ${sql}
+SQL
+        )
+        total=$(awk -v a="${total}" -v b="${ms}" 'BEGIN { print a + b }')
+    done
+    printf '%-8s avg %8.2f ms over %d runs\n' "${label}" "$(awk -v a="${total}" -v n="${RUNS}" 'BEGIN { print a / n }')" "${RUNS}"
+}
+
+echo "[2/3] Running queries..."
+run "before" "
+SELECT DISTINCT c.* FROM conversations c
+JOIN messages m ON m.conversation_id = c.id
+WHERE to_tsvector('simple', m.content) @@ plainto_tsquery('simple', '${QUERY}')
+   OR c.title ILIKE '%' || '${QUERY}' || '%'
+ORDER BY c.updated_at DESC
+LIMIT 20;"
+
+run "after" "
+WITH q AS (SELECT plainto_tsquery('simple', '${QUERY}') AS tsq),
+message_hits AS (
+    SELECT m.conversation_id, max(ts_rank_cd(m.content_tsv, q.tsq)) AS rank,
+           (array_agg(m.id ORDER BY ts_rank_cd(m.content_tsv, q.tsq) DESC, m.created_at DESC))[1:5] AS message_ids
+    FROM messages m, q WHERE m.content_tsv @@ q.tsq GROUP BY m.conversation_id
+),
+title_hits AS (
+    SELECT id AS conversation_id, similarity(title, '${QUERY}') AS similarity
+    FROM conversations WHERE title ILIKE '%' || '${QUERY}' || '%'
+),
+ranked AS (
+    SELECT c.*, (COALESCE(mh.rank, 0) + COALESCE(th.similarity, 0))::float8 AS score,
+           COALESCE(mh.message_ids, '{}') AS message_ids
+    FROM (SELECT conversation_id FROM message_hits UNION SELECT conversation_id FROM title_hits) hits
+    JOIN conversations c ON c.id = hits.conversation_id
+    LEFT JOIN message_hits mh ON mh.conversation_id = c.id
+    LEFT JOIN title_hits th ON th.conversation_id = c.id
+),
+page AS (SELECT * FROM ranked ORDER BY score DESC, id DESC LIMIT 21)
+SELECT page.*, ts_headline('simple', m.content, q.tsq, 'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5')
+FROM page CROSS JOIN q LEFT JOIN messages m ON m.id = page.message_ids[1]
+ORDER BY page.score DESC, page.id DESC;"
+
+echo "[3/3] Cleaning up..."
+psql -c "DROP SCHEMA search_bench CASCADE;"
+
+echo ""
+echo "=== Benchmark complete ==="
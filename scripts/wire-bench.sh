@@ -0,0 +1,51 @@
+#!/bin/bash
+set -euo pipefail
+
+# Compares response size and time of JSON and CBOR, with and without gzip, on a running instance.
+# Run it on the Pi against localhost so the time is mostly the server's encoding, not the network.
+#   BASE_URL=http://localhost:8080/api RUNS=20 ./scripts/wire-bench.sh
+
+BASE_URL="${BASE_URL:-http://localhost:8080/api}"
+RUNS="${RUNS:-10}"
+
+echo "=== Wire format benchmark ==="
+echo "Target: ${BASE_URL}, ${RUNS} runs per case"
+echo ""
+
+# The conversation with the most messages among the latest 50
+CONVERSATION=$(curl -sf -H 'Accept: application/json' "${BASE_URL}/conversations?size=50" \
+    | tr '{' '\n' | sed -n 's/.*"id":"\([^"]*\)".*"messageCount":\([0-9]*\).*/\2 \1/p' \
+    | sort -rn | head -1 | cut -d' ' -f2)
+if [ -z "${CONVERSATION}" ]; then
+    echo "No conversations to read; create or import some first."
+    exit 1
+fi
+
+run() {
+    local label="$1" path="$2" accept="$3" encoding="$4" bytes=0 total=0 out
+    for _ in $(seq 1 "${RUNS}"); do
+        out=$(curl -s -o /dev/null -w '%{size_download} %{time_total}' \
+            -H "Accept: ${accept}" -H "Accept-Encoding: ${encoding}" "${BASE_URL}${path}")
+        bytes="${out% *}"
+        total=$(awk -v a="${total}" -v b="${out#* }" 'BEGIN { print a + b }')
+    done
+    printf '%-10s %-22s %-8s %10d bytes %8.2f ms\n' "${label}" "${accept}" "${encoding}" "${bytes}" \
+        "$(awk -v a="${total}" -v n="${RUNS}" 'BEGIN { print a * 1000 / n }')"
+}
+
+for target in "list:/conversations?size=100" \
+              "full:/conversations/${CONVERSATION}" \
+              "page:/conversations/${CONVERSATION}/messages?size=50" \
+              "sync:/sync?size=200"; do
+    for accept in application/json application/cbor; do
+        for encoding in identity gzip; do
+            run "${target%%:*}" "${target#*:}" "${accept}" "${encoding}"
+        done
+    done
+done
+for accept in application/x-ndjson application/cbor-seq; do
+    run "export" "/conversations/${CONVERSATION}/export" "${accept}" identity
+done
+
+echo ""
+echo "=== Benchmark complete ==="